@@ -24,6 +24,24 @@ class Argument extends LeafPattern {
 			}
 		}
 
-		return new SingleMatchResult(null, null);
+		return SingleMatchResult.NONE;
+	}
+
+	@Override
+	protected int singleMatch(final List<LeafPattern> argv, final long left) {
+		for (long l = left; l != 0; l &= l - 1) {
+			final int n = Long.numberOfTrailingZeros(l);
+
+			if (argv.get(n).getClass() == Argument.class) {
+				return n;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	protected LeafPattern withValue(final Object value) {
+		return new Argument(getName(), value);
 	}
 }
\ No newline at end of file
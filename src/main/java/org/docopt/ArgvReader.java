@@ -0,0 +1,253 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads command lines into leaves like {@link Docopt}'s reader does, but
+ * reuses the leaves of the previous command line, so that nothing is
+ * allocated once enough leaves have been created.
+ * <p>
+ * Only command lines of fewer than 64 leaves, whose options are all described
+ * and whose option arguments are separate arguments, are read. For the others
+ * {@link #read} returns {@code false}, and they are left to the general
+ * reader, which also reports their errors.
+ * <p>
+ * A reader is not safe for use by multiple threads.
+ */
+final class ArgvReader {
+
+	private final List<Option> options;
+
+	/**
+	 * The copies of each option, by position in {@link #options}.
+	 */
+	private final List<List<Option>> copies;
+
+	/**
+	 * The number of copies of each option in use for the current command
+	 * line.
+	 */
+	private final int[] used;
+
+	private final List<Argument> arguments = new ArrayList<Argument>();
+
+	private int usedArguments = 0;
+
+	private final List<LeafPattern> leaves = new ArrayList<LeafPattern>();
+
+	public ArgvReader(final List<Option> options) {
+		this.options = options;
+		this.copies = new ArrayList<List<Option>>(options.size());
+		this.used = new int[options.size()];
+
+		for (int i = 0; i < options.size(); i++) {
+			copies.add(new ArrayList<Option>());
+		}
+	}
+
+	/**
+	 * Returns the leaves of the command line last read, which are valid until
+	 * the next one is read.
+	 */
+	public List<LeafPattern> getLeaves() {
+		return leaves;
+	}
+
+	/**
+	 * Reads {@code argv} into the leaves returned by {@link #getLeaves}.
+	 *
+	 * @return {@code false} if {@code argv} must be read by the general reader
+	 */
+	public boolean read(final List<String> argv, final boolean optionsFirst) {
+		leaves.clear();
+		Arrays.fill(used, 0);
+		usedArguments = 0;
+
+		int k = 0;
+
+		while (k < argv.size()) {
+			final String token = argv.get(k);
+
+			if ("--".equals(token)) {
+				return arguments(argv, k);
+			}
+
+			if (token.startsWith("--")) {
+				final int i = findLong(token);
+
+				if (i == -1) {
+					return false;
+				}
+
+				k = option(i, argv, k + 1);
+			}
+			else if (token.startsWith("-") && !"-".equals(token)) {
+				k++;
+
+				for (int c = 1; c < token.length(); c++) {
+					final int i = findShort(token.charAt(c));
+
+					// An argument attached to the option is a substring.
+					if (i == -1
+							|| (options.get(i).getArgCount() != 0 && c < token
+									.length() - 1)) {
+						return false;
+					}
+
+					k = option(i, argv, k);
+
+					if (k == -1) {
+						return false;
+					}
+				}
+			}
+			else if (optionsFirst) {
+				return arguments(argv, k);
+			}
+			else {
+				argument(token);
+				k++;
+			}
+
+			if (k == -1 || leaves.size() >= Long.SIZE) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the elements of {@code argv} from {@code k} on as positional
+	 * arguments.
+	 */
+	private boolean arguments(final List<String> argv, final int k) {
+		for (int j = k; j < argv.size(); j++) {
+			argument(argv.get(j));
+		}
+
+		return leaves.size() < Long.SIZE;
+	}
+
+	private void argument(final String value) {
+		final Argument u;
+
+		if (usedArguments < arguments.size()) {
+			u = arguments.get(usedArguments);
+			u.setValue(value);
+		}
+		else {
+			u = new Argument(null, value);
+			arguments.add(u);
+		}
+
+		usedArguments++;
+		leaves.add(u);
+	}
+
+	/**
+	 * Adds a copy of the option at {@code i}, taking its argument, if any,
+	 * from {@code argv} at {@code k}.
+	 *
+	 * @return the position in {@code argv} after the option, or {@code -1} if
+	 *         its argument is missing
+	 */
+	private int option(final int i, final List<String> argv, int k) {
+		final Option o = options.get(i);
+		final Object value;
+
+		if (o.getArgCount() == 0) {
+			value = Boolean.TRUE;
+		}
+		else {
+			if (k == argv.size() || "--".equals(argv.get(k))) {
+				return -1;
+			}
+
+			value = argv.get(k++);
+		}
+
+		final List<Option> u = copies.get(i);
+		final Option copy;
+
+		if (used[i] < u.size()) {
+			copy = u.get(used[i]);
+		}
+		else {
+			copy = new Option(o.getShort(), o.getLong(), o.getArgCount(), null);
+			u.add(copy);
+		}
+
+		used[i]++;
+		copy.setValue(value);
+		leaves.add(copy);
+
+		return k;
+	}
+
+	/**
+	 * Returns the position of the option that {@code token} names, exactly
+	 * or as a unique prefix, or {@code -1} if there is none, it is ambiguous
+	 * or {@code token} has an attached argument.
+	 */
+	private int findLong(final String token) {
+		if (token.indexOf('=') != -1) {
+			return -1;
+		}
+
+		int u = -1;
+
+		for (int i = 0; i < options.size(); i++) {
+			if (token.equals(options.get(i).getLong())) {
+				if (u != -1) {
+					return -1;
+				}
+
+				u = i;
+			}
+		}
+
+		if (u != -1) {
+			return u;
+		}
+
+		for (int i = 0; i < options.size(); i++) {
+			final String $long = options.get(i).getLong();
+
+			if ($long != null && $long.startsWith(token)) {
+				if (u != -1) {
+					return -1;
+				}
+
+				u = i;
+			}
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the position of the option whose short name is {@code c}, or
+	 * {@code -1} if there is none or it is ambiguous.
+	 */
+	private int findShort(final char c) {
+		int u = -1;
+
+		for (int i = 0; i < options.size(); i++) {
+			final String $short = options.get(i).getShort();
+
+			if ($short != null && $short.length() == 2
+					&& $short.charAt(1) == c) {
+				if (u != -1) {
+					return -1;
+				}
+
+				u = i;
+			}
+		}
+
+		return u;
+	}
+}
@@ -0,0 +1,136 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A BK-tree of words, which finds the words within a given edit distance of a
+ * query without comparing the query to every word. Each child of a node is
+ * keyed by its distance to the node, so by the triangle inequality only the
+ * children whose key is within the limit of the distance to the query need to
+ * be searched.
+ * <p>
+ * A tree is not modified after construction, so it may be shared by
+ * concurrent searches.
+ */
+final class BkTree {
+
+	private static final class Node {
+
+		private final String word;
+
+		private final Map<Integer, Node> children = new HashMap<Integer, Node>();
+
+		public Node(final String word) {
+			this.word = word;
+		}
+	}
+
+	/**
+	 * Returns the Levenshtein distance between {@code a} and {@code b}.
+	 */
+	static int distance(final String a, final String b) {
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+
+			for (int j = 1; j <= b.length(); j++) {
+				final int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+
+				current[j] = Math.min(Math.min(current[j - 1] + 1,
+						previous[j] + 1), previous[j - 1] + cost);
+			}
+
+			final int[] u = previous;
+			previous = current;
+			current = u;
+		}
+
+		return previous[b.length()];
+	}
+
+	private Node root = null;
+
+	public BkTree(final Iterable<String> words) {
+		for (final String word : words) {
+			add(word);
+		}
+	}
+
+	private void add(final String word) {
+		if (root == null) {
+			root = new Node(word);
+			return;
+		}
+
+		Node node = root;
+
+		for (;;) {
+			final int d = distance(word, node.word);
+
+			if (d == 0) {
+				return;
+			}
+
+			final Node child = node.children.get(d);
+
+			if (child == null) {
+				node.children.put(d, new Node(word));
+				return;
+			}
+
+			node = child;
+		}
+	}
+
+	/**
+	 * Returns the words closest to {@code query}, if they are within
+	 * {@code limit} edits of it, in alphabetical order.
+	 */
+	public List<String> closest(final String query, final int limit) {
+		final List<String> u = new ArrayList<String>();
+
+		if (root == null) {
+			return u;
+		}
+
+		final List<Node> pending = new ArrayList<Node>();
+		pending.add(root);
+
+		int best = limit;
+
+		while (!pending.isEmpty()) {
+			final Node node = pending.remove(pending.size() - 1);
+			final int d = distance(query, node.word);
+
+			if (d < best) {
+				best = d;
+				u.clear();
+			}
+
+			if (d == best) {
+				u.add(node.word);
+			}
+
+			for (final Map.Entry<Integer, Node> e : node.children.entrySet()) {
+				// Words closer than the best so far are within best of the
+				// query, so their distance to the node is within best of d.
+				if (Math.abs(e.getKey() - d) <= best) {
+					pending.add(e.getValue());
+				}
+			}
+		}
+
+		Collections.sort(u);
+		return u;
+	}
+}
@@ -26,6 +26,25 @@ final class Command extends Argument {
 			}
 		}
 
-		return new SingleMatchResult(null, null);
+		return SingleMatchResult.NONE;
+	}
+
+	@Override
+	protected int singleMatch(final List<LeafPattern> argv, final long left) {
+		for (long l = left; l != 0; l &= l - 1) {
+			final int n = Long.numberOfTrailingZeros(l);
+			final LeafPattern pattern = argv.get(n);
+
+			if (pattern.getClass() == Argument.class) {
+				return getName().equals(pattern.getValue()) ? n : -1;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	protected LeafPattern withValue(final Object value) {
+		return new Command(getName(), value);
 	}
 }
\ No newline at end of file
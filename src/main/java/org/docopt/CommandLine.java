@@ -0,0 +1,127 @@
+package org.docopt;
+
+import static org.docopt.Python.list;
+
+import java.util.List;
+
+/**
+ * Splits a command line into arguments the way a POSIX shell does, without
+ * expansions: arguments are separated by whitespace, characters between
+ * single quotes are taken literally, and a backslash escapes the next
+ * character, except between single quotes and, between double quotes, before
+ * characters other than {@code $`"\} and newline. An unterminated quote
+ * extends to the end of the line.
+ */
+final class CommandLine {
+
+	/**
+	 * Splits a command line fed one character at a time, so that arguments
+	 * can be taken as soon as they end.
+	 */
+	static final class Splitter {
+
+		private final StringBuilder sb = new StringBuilder();
+
+		// Whether the current argument exists even if it is empty, e.g. "".
+		private boolean started = false;
+
+		private char quote = 0;
+
+		// Whether the previous character was a backslash that escapes this
+		// one.
+		private boolean escape = false;
+
+		/**
+		 * Feeds the next character of the command line, adding the argument
+		 * it ends, if any, to {@code argv}.
+		 */
+		public void feed(final char c, final List<String> argv) {
+			if (escape) {
+				escape = false;
+
+				if (quote == '"' && "$`\"\\\n".indexOf(c) == -1) {
+					sb.append('\\');
+				}
+				else if (c == '\n') {
+					// A line continuation.
+					return;
+				}
+
+				sb.append(c);
+				started = true;
+			}
+			else if (quote == '\'') {
+				if (c == '\'') {
+					quote = 0;
+				}
+				else {
+					sb.append(c);
+				}
+			}
+			else if (c == '\\') {
+				escape = true;
+			}
+			else if (quote == '"') {
+				if (c == '"') {
+					quote = 0;
+				}
+				else {
+					sb.append(c);
+				}
+			}
+			else if (c == '\'' || c == '"') {
+				quote = c;
+				started = true;
+			}
+			else if (Character.isWhitespace(c)) {
+				if (started) {
+					argv.add(sb.toString());
+					sb.setLength(0);
+					started = false;
+				}
+			}
+			else {
+				sb.append(c);
+				started = true;
+			}
+		}
+
+		/**
+		 * Ends the command line, adding its last argument, if any, to
+		 * {@code argv}.
+		 */
+		public void finish(final List<String> argv) {
+			if (escape) {
+				// A trailing backslash is taken literally.
+				escape = false;
+				sb.append('\\');
+				started = true;
+			}
+
+			if (started) {
+				argv.add(sb.toString());
+			}
+
+			sb.setLength(0);
+			started = false;
+			quote = 0;
+		}
+	}
+
+	public static List<String> split(final String line) {
+		final List<String> argv = list();
+		final Splitter splitter = new Splitter();
+
+		for (int i = 0; i < line.length(); i++) {
+			splitter.feed(line.charAt(i), argv);
+		}
+
+		splitter.finish(argv);
+
+		return argv;
+	}
+
+	private CommandLine() {
+		// Prevent instantiation.
+	}
+}
@@ -0,0 +1,463 @@
+package org.docopt;
+
+import static org.docopt.Python.list;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Grammar} stored as a flat table of integers and a table of pooled
+ * strings instead of a tree of objects. It uses a fraction of the memory of
+ * the tree and is turned back into a grammar with {@link #inflate}.
+ * <p>
+ * The table has the following sections:
+ *
+ * <pre>
+ * table   ::= leaves options node ;
+ * leaves  ::= count ( leaf )* ;
+ * leaf    ::= type name short long argcount value ;
+ * value   ::= tag payload ;
+ * options ::= count ( leaf-index )* ;
+ * node    ::= LEAF leaf-index | REF offset | kind id count ( node )* ;
+ * </pre>
+ *
+ * Names are indices into the string table ({@code -1} for {@code null}). A
+ * leaf that occurs several times in the tree is stored once, so the inflated
+ * tree has the same shape and identities as the original. A branch that is
+ * equal to one stored before it (e.g&#46; the contents of several
+ * {@code [options]} shortcuts) is stored as the offset of the first one.
+ */
+final class CompactGrammar {
+
+	// Node kinds.
+
+	private static final int REQUIRED = 0;
+
+	private static final int OPTIONAL = 1;
+
+	private static final int OPTIONS_SHORTCUT = 2;
+
+	private static final int EITHER = 3;
+
+	private static final int ONE_OR_MORE = 4;
+
+	private static final int LEAF = 5;
+
+	private static final int REF = 6;
+
+	// Leaf types.
+
+	private static final int OPTION = 0;
+
+	private static final int ARGUMENT = 1;
+
+	private static final int COMMAND = 2;
+
+	// Value tags. The payload of INTEGER is the value, of STRING a string
+	// index, and of LIST the number of strings, whose indices follow.
+
+	private static final int NULL = 0;
+
+	private static final int FALSE = 1;
+
+	private static final int TRUE = 2;
+
+	private static final int INTEGER = 3;
+
+	private static final int STRING = 4;
+
+	private static final int LIST = 5;
+
+	/**
+	 * Builds the table and string table of a grammar.
+	 */
+	private static final class Writer {
+
+		private int[] table = new int[64];
+
+		private int size = 0;
+
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		private final Map<LeafPattern, Integer> leaves = new IdentityHashMap<LeafPattern, Integer>();
+
+		private final List<LeafPattern> order = list();
+
+		private final Map<String, Integer> branches = new HashMap<String, Integer>();
+
+		public void write(final int i) {
+			if (size == table.length) {
+				final int[] u = new int[size * 2];
+				System.arraycopy(table, 0, u, 0, size);
+				table = u;
+			}
+
+			table[size++] = i;
+		}
+
+		public void string(final String s) {
+			if (s == null) {
+				write(-1);
+				return;
+			}
+
+			Integer i = strings.get(s);
+
+			if (i == null) {
+				i = strings.size();
+				strings.put(s, i);
+			}
+
+			write(i);
+		}
+
+		/**
+		 * Assigns an index to {@code leaf} if it has none yet.
+		 */
+		public void collect(final LeafPattern leaf) {
+			if (!leaves.containsKey(leaf)) {
+				leaves.put(leaf, order.size());
+				order.add(leaf);
+			}
+		}
+
+		public void collect(final Pattern pattern) {
+			if (pattern instanceof LeafPattern) {
+				collect((LeafPattern) pattern);
+				return;
+			}
+
+			for (final Pattern child : ((BranchPattern) pattern).getChildren()) {
+				collect(child);
+			}
+		}
+
+		public void leaf(final LeafPattern leaf) {
+			if (leaf.getClass() == Option.class) {
+				final Option o = (Option) leaf;
+				write(OPTION);
+				string(null);
+				string(o.getShort());
+				string(o.getLong());
+				write(o.getArgCount());
+			}
+			else {
+				write((leaf.getClass() == Command.class) ? COMMAND : ARGUMENT);
+				string(leaf.getName());
+				string(null);
+				string(null);
+				write(0);
+			}
+
+			value(leaf.getValue());
+		}
+
+		public void value(final Object value) {
+			if (value == null) {
+				write(NULL);
+				write(0);
+			}
+			else if (Boolean.FALSE.equals(value)) {
+				write(FALSE);
+				write(0);
+			}
+			else if (Boolean.TRUE.equals(value)) {
+				write(TRUE);
+				write(0);
+			}
+			else if (value instanceof Integer) {
+				write(INTEGER);
+				write((Integer) value);
+			}
+			else if (value instanceof String) {
+				write(STRING);
+				string((String) value);
+			}
+			else if (value instanceof List) {
+				final List<?> u = (List<?>) value;
+				write(LIST);
+				write(u.size());
+
+				for (final Object s : u) {
+					string((String) s);
+				}
+			}
+			else {
+				throw new IllegalStateException("Unexpected value: " + value);
+			}
+		}
+
+		public void node(final Pattern pattern) {
+			if (pattern instanceof LeafPattern) {
+				write(LEAF);
+				write(leaves.get(pattern));
+				return;
+			}
+
+			// Equal branches consist of the same leaves, as the pattern has
+			// been fixed.
+			final String key = pattern.toString();
+			final Integer offset = branches.get(key);
+
+			if (offset != null) {
+				write(REF);
+				write(offset);
+				return;
+			}
+
+			branches.put(key, size);
+
+			final Class<?> type = pattern.getClass();
+
+			if (type == Required.class) {
+				write(REQUIRED);
+			}
+			else if (type == OptionsShortcut.class) {
+				write(OPTIONS_SHORTCUT);
+			}
+			else if (type == Optional.class) {
+				write(OPTIONAL);
+			}
+			else if (type == Either.class) {
+				write(EITHER);
+			}
+			else if (type == OneOrMore.class) {
+				write(ONE_OR_MORE);
+			}
+			else {
+				throw new IllegalStateException("Unexpected pattern: "
+						+ pattern);
+			}
+
+			final List<Pattern> children = ((BranchPattern) pattern)
+					.getChildren();
+
+			write(pattern.getId());
+			write(children.size());
+
+			for (final Pattern child : children) {
+				node(child);
+			}
+		}
+
+		public int[] getTable() {
+			final int[] u = new int[size];
+			System.arraycopy(table, 0, u, 0, size);
+			return u;
+		}
+
+		public String[] getStrings() {
+			final String[] u = new String[strings.size()];
+
+			for (final Map.Entry<String, Integer> e : strings.entrySet()) {
+				u[e.getValue()] = StringPool.intern(e.getKey());
+			}
+
+			return u;
+		}
+	}
+
+	/**
+	 * Reads a table sequentially.
+	 */
+	private static final class Reader {
+
+		private final int[] table;
+
+		private final String[] strings;
+
+		private int position = 0;
+
+		private LeafPattern[] leaves;
+
+		public Reader(final int[] table, final String[] strings) {
+			this.table = table;
+			this.strings = strings;
+		}
+
+		public int read() {
+			return table[position++];
+		}
+
+		public String string() {
+			final int i = read();
+			return (i == -1) ? null : strings[i];
+		}
+
+		public LeafPattern leaf() {
+			final int type = read();
+			final String name = string();
+			final String $short = string();
+			final String $long = string();
+			final int argCount = read();
+			final Object value = value();
+
+			switch (type) {
+			case OPTION:
+				return new Option($short, $long, argCount, value);
+			case ARGUMENT:
+				return new Argument(name, value);
+			case COMMAND:
+				return new Command(name, value);
+			default:
+				throw new IllegalStateException("Unexpected leaf type: " + type);
+			}
+		}
+
+		public Object value() {
+			final int tag = read();
+			final int payload = read();
+
+			switch (tag) {
+			case NULL:
+				return null;
+			case FALSE:
+				return false;
+			case TRUE:
+				return true;
+			case INTEGER:
+				return payload;
+			case STRING:
+				return strings[payload];
+			case LIST:
+				final List<Object> u = list();
+
+				for (int i = 0; i < payload; i++) {
+					u.add(string());
+				}
+
+				return u;
+			default:
+				throw new IllegalStateException("Unexpected value tag: " + tag);
+			}
+		}
+
+		public Pattern node() {
+			final int kind = read();
+
+			if (kind == LEAF) {
+				return leaves[read()];
+			}
+
+			if (kind == REF) {
+				final int offset = read();
+				final int u = position;
+
+				position = offset;
+
+				try {
+					return node();
+				}
+				finally {
+					position = u;
+				}
+			}
+
+			final int id = read();
+			final int count = read();
+			final List<Pattern> children = list();
+
+			for (int i = 0; i < count; i++) {
+				children.add(node());
+			}
+
+			final BranchPattern u;
+
+			switch (kind) {
+			case REQUIRED:
+				u = new Required(children);
+				break;
+			case OPTIONAL:
+				u = new Optional(children);
+				break;
+			case OPTIONS_SHORTCUT:
+				u = new OptionsShortcut();
+				u.getChildren().addAll(children);
+				break;
+			case EITHER:
+				u = new Either(children);
+				break;
+			case ONE_OR_MORE:
+				u = new OneOrMore(children);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected node kind: " + kind);
+			}
+
+			u.setId(id);
+			return u;
+		}
+
+		public Grammar grammar() {
+			leaves = new LeafPattern[read()];
+
+			for (int i = 0; i < leaves.length; i++) {
+				leaves[i] = leaf();
+			}
+
+			final List<Option> options = list();
+			final int count = read();
+
+			for (int i = 0; i < count; i++) {
+				options.add((Option) leaves[read()]);
+			}
+
+			return Grammar.compiled(options, (Required) node());
+		}
+	}
+
+	private final int[] table;
+
+	private final String[] strings;
+
+	/**
+	 * The number of usage lines, kept so that it can be read without
+	 * inflating.
+	 */
+	private final int lineCount;
+
+	public CompactGrammar(final Grammar grammar) {
+		final Writer w = new Writer();
+
+		for (final Option o : grammar.getOptions()) {
+			w.collect(o);
+		}
+
+		w.collect(grammar.getPattern());
+
+		w.write(w.order.size());
+
+		for (final LeafPattern leaf : w.order) {
+			w.leaf(leaf);
+		}
+
+		w.write(grammar.getOptions().size());
+
+		for (final Option o : grammar.getOptions()) {
+			w.write(w.leaves.get(o));
+		}
+
+		w.node(grammar.getPattern());
+
+		table = w.getTable();
+		strings = w.getStrings();
+		lineCount = grammar.getLineCount();
+	}
+
+	/**
+	 * Returns {@link Grammar#getLineCount} of the grammar that this object was
+	 * created from.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Rebuilds the grammar that this object was created from.
+	 */
+	public Grammar inflate() {
+		return new Reader(table, strings).grammar();
+	}
+}
@@ -6,22 +6,33 @@ import static org.docopt.Python.isUpper;
 import static org.docopt.Python.join;
 import static org.docopt.Python.list;
 import static org.docopt.Python.partition;
-import static org.docopt.Python.set;
 import static org.docopt.Python.split;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.docopt.Pattern.MatchResult;
-import org.docopt.Python.Re;
 
 // @formatter:off
 /**
@@ -473,67 +484,29 @@ public final class Docopt {
 		return parsed;
 	}
 
-	private static List<Option> parseDefaults(final String doc) {
+	private static List<Option> parseDefaults(final List<String> sections) {
 		final List<Option> defaults = list();
 
-		for (String s : parseSection("options:", doc)) {
+		for (String s : sections) {
 			// >>> u, u, s = s.partition(':') # get rid of "options:"
 			{
 				final String[] u = partition(s, ":");
 				s = u[2];
 			}
 
-			List<String> split;
-
-			// >>> split = re.split('\n *(-\S+?)', '\n' + s)[1:]
-			{
-				split = Re.split("\\n *(-\\S+?)", "\n" + s);
-				split.remove(0);
-			}
-
-			// >>> split = [s1 + s2 for s1, s2 in zip(split[::2], split[1::2])];
-			{
-				final List<String> u = list();
-
-				for (int i = 1; i < split.size(); i += 2) {
-					u.add(split.get(i - 1) + split.get(i));
-				}
-
-				split = u;
-			}
-
 			// @formatter:off
 			// >>> options = [Option.parse(s) for s in split if s.startswith('-')]
 			// >>> defaults += options
 			// @formatter:on
-			{
-				for (final String $s : split) {
-					if ($s.startsWith("-")) {
-						defaults.add(Option.parse($s));
-					}
-				}
+			// Every description starts with a hyphen.
+			for (final String $s : Lexer.optionDescriptions(s)) {
+				defaults.add(Option.parse($s));
 			}
 		}
 
 		return defaults;
 	}
 
-	private static List<String> parseSection(final String name,
-			final String source) {
-		// >>> return [s.strip() for s in pattern.findall(source)]
-		{
-			final List<String> u = Re.findAll("^([^\\n]*" + name +
-					"[^\\n]*\\n?(?:[ \\t].*?(?:\\n|$))*)", source,
-					Re.IGNORECASE | Re.MULTILINE);
-
-			for (int i = 0; i < u.size(); i++) {
-				u.set(i, u.get(i).trim());
-			}
-
-			return u;
-		}
-	}
-
 	private static String formalUsage(String section) {
 		// >>> u, u, section = section.partition(':')
 		{
@@ -585,7 +558,9 @@ public final class Docopt {
 			u = false;
 
 			if (help) {
-				for (final LeafPattern o : options) {
+				for (int i = 0; i < options.size(); i++) {
+					final LeafPattern o = options.get(i);
+
 					if ("-h".equals(o.getName()) | "--help".equals(o.getName())) {
 						if (bool(o.getValue())) {
 							u = true;
@@ -600,7 +575,7 @@ public final class Docopt {
 		// status.
 		if (u) {
 			throw new DocoptExitException(0, doc.replaceAll("^\\n+|\\n+$", ""),
-					false);
+					false, DocoptOutcome.Kind.HELP);
 		}
 
 		// @formatter:off
@@ -610,8 +585,8 @@ public final class Docopt {
 			u = false;
 
 			if (bool(version)) {
-				for (final LeafPattern o : options) {
-					if ("--version".equals(o.getName())) {
+				for (int i = 0; i < options.size(); i++) {
+					if ("--version".equals(options.get(i).getName())) {
 						u = true;
 						break;
 					}
@@ -622,33 +597,157 @@ public final class Docopt {
 		// Default --version behavior: print version and exit with success
 		// status.
 		if (u) {
-			throw new DocoptExitException(0, version, false);
+			throw new DocoptExitException(0, version, false,
+					DocoptOutcome.Kind.VERSION);
+		}
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The size of the buffers for reading channels of unknown size.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The last decoder used by each thread, which is reused while the
+	 * character encoding is the same.
+	 */
+	private static final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>();
+
+	private static CharsetDecoder decoder(final Charset charset) {
+		CharsetDecoder u = decoders.get();
+
+		if (u == null || !u.charset().equals(charset)) {
+			// Like InputStreamReader, replace what cannot be decoded.
+			u = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoders.set(u);
 		}
+
+		return u.reset();
+	}
+
+	/**
+	 * Reads and decodes {@code channel} to the end, without closing it.
+	 *
+	 * @param size
+	 *            the number of bytes expected, or {@code -1} if unknown
+	 * @param lenient
+	 *            {@code true} to return what has been read when an I/O error
+	 *            occurs, like {@link java.util.Scanner}
+	 */
+	static String read(final ReadableByteChannel channel,
+			final Charset charset, final long size, final boolean lenient)
+			throws IOException {
+		final CharsetDecoder decoder = decoder(charset);
+
+		final int n = (size < 0 || size >= Integer.MAX_VALUE) ? BUFFER_SIZE
+				: (int) size + 1;
+		final ByteBuffer in = ByteBuffer.allocate(n);
+		CharBuffer out = CharBuffer.allocate((int) (n * decoder
+				.averageCharsPerByte()) + 16);
+
+		boolean eof = false;
+
+		for (;;) {
+			if (!eof) {
+				try {
+					eof = (channel.read(in) == -1);
+				}
+				catch (final IOException e) {
+					if (!lenient) {
+						throw e;
+					}
+
+					eof = true;
+				}
+			}
+
+			in.flip();
+			final CoderResult result = decoder.decode(in, out, eof);
+			in.compact();
+
+			if (result.isOverflow()) {
+				out = grow(out);
+			}
+			else if (eof) {
+				break;
+			}
+		}
+
+		while (decoder.flush(out).isOverflow()) {
+			out = grow(out);
+		}
+
+		out.flip();
+		return out.toString();
 	}
 
-	static String read(final InputStream stream, final String charset) {
-		final Scanner scanner = new Scanner(stream, charset);
+	private static CharBuffer grow(final CharBuffer buffer) {
+		final CharBuffer u = CharBuffer.allocate(buffer.capacity() * 2);
+		buffer.flip();
+		u.put(buffer);
+		return u;
+	}
 
+	static String read(final InputStream stream, final Charset charset) {
 		try {
-			scanner.useDelimiter("\\A");
-			return scanner.hasNext() ? scanner.next() : "";
+			return read(Channels.newChannel(stream), charset, -1, true);
+		}
+		catch (final IOException e) {
+			// Not reachable, as reading is lenient.
+			throw new IllegalStateException(e);
 		}
 		finally {
-			scanner.close();
+			try {
+				stream.close();
+			}
+			catch (final IOException e) {
+				// Ignore, like Scanner.
+			}
 		}
 	}
 
 	static String read(final InputStream stream) {
-		return read(stream, "UTF-8");
+		return read(stream, UTF_8);
+	}
+
+	static String read(final File file, final Charset charset)
+			throws IOException {
+		final FileInputStream stream = new FileInputStream(file);
+
+		try {
+			final FileChannel channel = stream.getChannel();
+			return read(channel, charset, channel.size(), false);
+		}
+		finally {
+			stream.close();
+		}
 	}
 
 	private final String doc;
 
-	private final String usage;
+	private final int usageStart;
+
+	private final int usageEnd;
+
+	/**
+	 * The grammar, or {@code null} if it is stored in {@link #compact} form.
+	 * At least one of the two is set at any time: a change of form sets the
+	 * new one before clearing the old one, so a concurrent parse sees one of
+	 * them (see {@link #grammar()}).
+	 */
+	private volatile Grammar grammar;
 
-	private final List<Option> options;
+	private volatile CompactGrammar compact = null;
 
-	private final Required pattern;
+	/**
+	 * The grammar rebuilt from {@link #compact}, which is kept while memory
+	 * allows.
+	 */
+	private volatile Reference<Grammar> inflated = null;
 
 	private boolean help = true;
 
@@ -658,6 +757,28 @@ public final class Docopt {
 
 	private boolean exit = true;
 
+	private int memoSize = 0;
+
+	private Executor executor = null;
+
+	private int minAlternatives = 0;
+
+	private volatile ResultCache cache = null;
+
+	private ResponseFiles responseFiles = null;
+
+	private int maxArguments = 0;
+
+	private int maxArgumentLength = 0;
+
+	private long maxSteps = 0;
+
+	private long timeLimit = 0;
+
+	private volatile JsonEncoder json = null;
+
+	private LineOrder lineOrder = null;
+
 	private PrintStream out = System.out;
 
 	private PrintStream err = System.err;
@@ -674,7 +795,20 @@ public final class Docopt {
 	public Docopt(final String doc) {
 		this.doc = doc;
 
-		final List<String> usageSections = parseSection("usage:", doc);
+		final Lexer lexer = new Lexer(doc);
+		final String usage = usageSection(lexer);
+
+		usageStart = doc.indexOf(usage);
+		usageEnd = usageStart + usage.length();
+
+		final List<Option> options = parseDefaults(lexer.getOptionSections());
+		final Required pattern = parsePattern(formalUsage(usage), options);
+
+		grammar = new Grammar(options, pattern);
+	}
+
+	private static String usageSection(final Lexer lexer) {
+		final List<String> usageSections = lexer.getUsageSections();
 
 		if (usageSections.size() == 0) {
 			throw new DocoptLanguageError(
@@ -686,9 +820,74 @@ public final class Docopt {
 					"More than one \"usage:\" (case-insensitive).");
 		}
 
-		usage = usageSections.get(0);
-		options = parseDefaults(doc);
-		pattern = parsePattern(formalUsage(usage), options);
+		return usageSections.get(0);
+	}
+
+	/**
+	 * Estimates the cost of constructing and using a parser for a help
+	 * message, without constructing it. Unlike construction, the analysis
+	 * takes time linear in the size of the usage patterns, so it can be used
+	 * to find help messages that would be slow to construct.
+	 *
+	 * @param doc
+	 *            a POSIX-style help message
+	 * @return the estimate
+	 * @throws DocoptLanguageError
+	 *             if the help message is malformed
+	 */
+	public static DocoptComplexity analyze(final String doc) {
+		final Lexer lexer = new Lexer(doc);
+		final String usage = usageSection(lexer);
+
+		final List<Option> options = parseDefaults(lexer.getOptionSections());
+		final Required pattern = parsePattern(formalUsage(usage), options);
+
+		// Fixing the pattern does not change its structure, so it is skipped.
+		Grammar.fill(options, pattern);
+
+		return new DocoptComplexity(pattern);
+	}
+
+	/**
+	 * Estimates the cost of constructing and using a parser for a help
+	 * message like {@link #analyze(String)}, and rejects it if the number of
+	 * alternatives it would be expanded into exceeds {@code maxExpansion} or
+	 * the number of steps to match {@code arguments} arguments exceeds
+	 * {@code maxSteps}.
+	 *
+	 * @param doc
+	 *            a POSIX-style help message
+	 * @param maxExpansion
+	 *            the largest acceptable size of the expansion
+	 * @param maxSteps
+	 *            the largest acceptable number of steps
+	 * @param arguments
+	 *            the number of arguments to estimate the steps for
+	 * @return the estimate
+	 * @throws DocoptLanguageError
+	 *             if the help message is malformed
+	 * @throws DocoptComplexityException
+	 *             if the help message is too complex
+	 * @see DocoptComplexity#getExpansionSize
+	 * @see DocoptComplexity#estimateSteps
+	 */
+	public static DocoptComplexity analyze(final String doc,
+			final long maxExpansion, final long maxSteps, final int arguments) {
+		final DocoptComplexity u = analyze(doc);
+
+		if (u.getExpansionSize() > maxExpansion) {
+			throw new DocoptComplexityException(String.format(
+					"Usage patterns expand into more than %d alternatives: %s",
+					maxExpansion, u), u);
+		}
+
+		if (u.estimateSteps(arguments) > maxSteps) {
+			throw new DocoptComplexityException(String.format(
+					"Usage patterns exceed %d steps for %d arguments: %s",
+					maxSteps, arguments, u), u);
+		}
+
+		return u;
 	}
 
 	/**
@@ -703,7 +902,43 @@ public final class Docopt {
 	 * @see Docopt
 	 */
 	public Docopt(final InputStream stream, final Charset charset) {
-		this(read(stream, charset.displayName()));
+		this(read(stream, charset));
+	}
+
+	/**
+	 * Constructs an argument parser from a POSIX-style help message.
+	 *
+	 * @param file
+	 *            a file containing a POSIX-style help message
+	 * @param charset
+	 *            the character encoding of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws DocoptLanguageError
+	 *             if the help message is malformed
+	 * @see Docopt
+	 */
+	public Docopt(final File file, final Charset charset) throws IOException {
+		this(read(file, charset));
+	}
+
+	/**
+	 * Constructs an argument parser from a POSIX-style help message. The
+	 * channel is read to the end, but not closed.
+	 *
+	 * @param channel
+	 *            a blocking channel containing a POSIX-style help message
+	 * @param charset
+	 *            the character encoding of the channel
+	 * @throws IOException
+	 *             if the channel cannot be read
+	 * @throws DocoptLanguageError
+	 *             if the help message is malformed
+	 * @see Docopt
+	 */
+	public Docopt(final ReadableByteChannel channel, final Charset charset)
+			throws IOException {
+		this(read(channel, charset, -1, false));
 	}
 
 	/**
@@ -735,6 +970,7 @@ public final class Docopt {
 	 */
 	public Docopt withHelp(final boolean enabled) {
 		this.help = enabled;
+		clearCache();
 		return this;
 	}
 
@@ -748,6 +984,7 @@ public final class Docopt {
 	 */
 	public Docopt withVersion(final String version) {
 		this.version = version;
+		clearCache();
 		return this;
 	}
 
@@ -762,7 +999,8 @@ public final class Docopt {
 	 * @return this object
 	 */
 	public Docopt withVersion(final InputStream stream, final Charset charset) {
-		this.version = read(stream, charset.displayName());
+		this.version = read(stream, charset);
+		clearCache();
 		return this;
 	}
 
@@ -777,6 +1015,7 @@ public final class Docopt {
 	 */
 	public Docopt withVersion(final InputStream stream) {
 		this.version = read(stream);
+		clearCache();
 		return this;
 	}
 
@@ -793,6 +1032,7 @@ public final class Docopt {
 	 */
 	public Docopt withOptionsFirst(final boolean enabled) {
 		this.optionsFirst = enabled;
+		clearCache();
 		return this;
 	}
 
@@ -814,139 +1054,684 @@ public final class Docopt {
 		return this;
 	}
 
-	private Map<String, Object> doParse(final List<String> argv) {
-		final List<LeafPattern> $argv = parseArgv(
-				Tokens.withExitException(argv), list(options), optionsFirst);
-		final Set<Pattern> patternOptions = set(pattern.flat(Option.class));
-
-		for (final Pattern optionsShortcut : pattern
-				.flat(OptionsShortcut.class)) {
-// @formatter:off
-			// >>> options_shortcut.children = list(set(doc_options) - pattern_options			// @formatter:on
-			// @formatter:on
-			{
-				final List<Pattern> u = ((BranchPattern) optionsShortcut)
-						.getChildren();
-				u.clear();
-				u.addAll(set(options));
-				Pattern o = null;
-				for (final Iterator<Pattern> i = u.iterator(); i.hasNext();) {
-					o = i.next();
-					for (final Pattern x : patternOptions) {
-						if (o.equals(x)) {
-							i.remove();
-							// Make sure we don't try to remove the same option
-							// twice.
-							break;
-						}
-					}
-				}
-			}
+	/**
+	 * If {@code maxEntries} is positive, the parser will remember the outcome
+	 * of matching each sub-pattern against the remaining arguments for the
+	 * duration of a single {@link #parse}, so that a sub-pattern shared by
+	 * several usage patterns (e.g&#46; {@code [options]}) is matched only once
+	 * per state. At most {@code maxEntries} outcomes are remembered per parse.
+	 * <p>
+	 * This is useful for large usage sections and has no effect on the
+	 * result. Disabled by default.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of outcomes to remember; {@code 0} to
+	 *            disable
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries} is negative
+	 */
+	public Docopt withMemoization(final int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("maxEntries < 0");
 		}
 
-		extras(help, version, $argv, doc);
+		this.memoSize = maxEntries;
+		return this;
+	}
 
-		final MatchResult m = pattern.fix().match($argv);
+	/**
+	 * If {@code executor} is non-{@code null}, the parser will use it to match
+	 * mutually exclusive patterns concurrently whenever there are at least
+	 * {@code minAlternatives} of them, e.g&#46; the usage patterns of a
+	 * program with many commands. The calling thread waits for the result, so
+	 * {@link #parse} behaves exactly as if the patterns were matched one after
+	 * the other. Patterns that the executor has not started matching by then
+	 * are matched by the calling thread, so a busy executor delays a parse but
+	 * cannot block it.
+	 * <p>
+	 * This only pays off for very large usage sections. Disabled by default.
+	 *
+	 * @param executor
+	 *            the executor to use; {@code null} to disable
+	 * @param minAlternatives
+	 *            the least number of mutually exclusive patterns to match
+	 *            concurrently
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code minAlternatives} is less than {@code 1}
+	 */
+	public Docopt withExecutor(final Executor executor,
+			final int minAlternatives) {
+		if (minAlternatives < 1) {
+			throw new IllegalArgumentException("minAlternatives < 1");
+		}
 
-		if (m.matched() && m.getLeft().isEmpty()) {
-			// @formatter:off
-			// >>> return Dict((a.name, a.value) for a in (pattern.flat() + collected))
-			// @formatter:on
-			final Map<String, Object> u = new HashMap<String, Object>();
+		this.executor = executor;
+		this.minAlternatives = minAlternatives;
+		return this;
+	}
 
-			for (final Pattern p : pattern.flat()) {
-				// TODO: Does flat always return LeafPattern objects?
-				if (!(p instanceof LeafPattern)) {
-					throw new IllegalStateException();
-				}
+	/**
+	 * If {@code enabled} is {@code true}, the parser will store the parsed
+	 * usage pattern in a compact form, which takes much less memory, and
+	 * rebuild it when it is needed. The rebuilt pattern is kept, in addition
+	 * to the compact form, until memory runs low.
+	 * <p>
+	 * The saving therefore applies only to idle parsers, which have not
+	 * parsed anything since memory last ran low: a parser that is in use
+	 * takes somewhat more memory than without this. This is useful for
+	 * applications that keep many parsers, most of which are seldom used, and
+	 * has no effect on the result.
+	 * <p>
+	 * Disabled by default.
+	 *
+	 * @param enabled
+	 *            {@code true} to enable; {@code false} to disable
+	 * @return this object
+	 */
+	public Docopt withCompactGrammar(final boolean enabled) {
+		if (enabled && compact == null) {
+			compact = new CompactGrammar(grammar);
+			grammar = null;
+		}
+		else if (!enabled && compact != null) {
+			grammar = grammar();
+			compact = null;
+			inflated = null;
+		}
 
-				final LeafPattern lp = (LeafPattern) p;
+		return this;
+	}
 
-				u.put(lp.getName(), lp.getValue());
-			}
+	/**
+	 * If {@code maxEntries} is positive, the parser will remember the outcome
+	 * of {@link #parse} for the last {@code maxEntries} distinct lists of
+	 * arguments, and return it without parsing when the same arguments are
+	 * parsed again. Outcomes that exit, e.g&#46; because of {@code --help} or
+	 * a usage error, are remembered too. Equivalent to
+	 * {@code withCache(maxEntries, Long.MAX_VALUE)}.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of outcomes to remember; {@code 0} to
+	 *            disable
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries} is negative
+	 * @see #withCache(int, long)
+	 */
+	public Docopt withCache(final int maxEntries) {
+		return withCache(maxEntries, Long.MAX_VALUE);
+	}
 
-			for (final LeafPattern p : m.getCollected()) {
-				u.put(p.getName(), p.getValue());
-			}
+	/**
+	 * If {@code maxEntries} and {@code maxWeight} are positive, the parser
+	 * will remember the outcome of {@link #parse} for recently parsed lists of
+	 * arguments, and return it without parsing when the same arguments are
+	 * parsed again. Outcomes that exit, e.g&#46; because of {@code --help} or
+	 * a usage error, are remembered too. This is useful for applications that
+	 * parse the same arguments over and over.
+	 * <p>
+	 * At most {@code maxEntries} outcomes are remembered, whose total weight
+	 * is at most {@code maxWeight}, where the weight of an outcome is the
+	 * number of characters in its arguments plus one for each argument. The
+	 * least recently used outcomes are forgotten first.
+	 * <p>
+	 * While the cache is enabled, {@link #parse} returns unmodifiable maps,
+	 * which are shared by all callers that parse the same arguments. The cache
+	 * may be used by several threads at the same time, and is cleared when
+	 * the parser is reconfigured in a way that changes the outcome. Disabled
+	 * by default.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of outcomes to remember; {@code 0} to
+	 *            disable
+	 * @param maxWeight
+	 *            the maximum total weight of the outcomes to remember;
+	 *            {@code 0} to disable
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries} or {@code maxWeight} is negative
+	 * @see #getCacheStats
+	 */
+	public Docopt withCache(final int maxEntries, final long maxWeight) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("maxEntries < 0");
+		}
 
-			return u;
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("maxWeight < 0");
 		}
 
-		// Arguments did not match any usage pattern. Print usage and exit with
-		// error status.
-		throw new DocoptExitException(1, null, true);
+		this.cache = (maxEntries == 0 || maxWeight == 0) ? null
+				: new ResultCache(maxEntries, maxWeight);
+		return this;
 	}
 
 	/**
-	 * Parses {@code argv} based on command-line interface described by the
-	 * argument to the constructor.
+	 * If {@code maxDepth} is positive, arguments of the form {@code @file}
+	 * are replaced by the arguments in {@code file} before parsing, which
+	 * allows command lines longer than the operating system does. The file is
+	 * read as UTF-8 and split into arguments like a POSIX shell does, without
+	 * expansions. Arguments after {@code --} are not replaced.
 	 * <p>
-	 * This method will attempt to exit the invoking application if:
-	 * <ul>
-	 * <li>the arguments cannot be parsed
-	 * <li>the default {@code --help} behavior is invoked
-	 * <li>the default {@code --version} behavior is invoked
-	 * </ul>
+	 * A response file may name further response files, nested at most
+	 * {@code maxDepth} deep, and at most {@code maxBytes} bytes are read for
+	 * one command line. If a response file cannot be read or a limit is
+	 * exceeded, the arguments cannot be parsed. Disabled by default.
 	 * <p>
-	 * In any of these cases, the parser will either terminate the JVM or throw
-	 * a {@link DocoptExitException}, depending on configuration via
-	 * {@link #withExit}.
+	 * Any file the process can read may be named, and its contents become
+	 * arguments that may appear in error messages. For command lines from
+	 * untrusted sources, use
+	 * {@link #withResponseFiles(int, long, File)} with a base directory.
 	 *
-	 * @param argv
-	 *            the command line arguments
-	 * @return A {@code Map}, where keys are names of command-line elements,
-	 *         such as "--verbose" and "&lt;path&gt;", and values are the parsed
-	 *         values of those elements.
-	 * @throws DocoptExitException
-	 *             if the application should exit and JVM termination has been
-	 *             disabled via {@link #withExit}
+	 * @param maxDepth
+	 *            the maximum nesting of response files; {@code 0} to disable
+	 * @param maxBytes
+	 *            the maximum total size of the response files of a command
+	 *            line
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxDepth} or {@code maxBytes} is negative
 	 */
-	public Map<String, Object> parse(final List<String> argv)
-			throws DocoptExitException {
-		try {
-			return doParse(argv);
+	public Docopt withResponseFiles(final int maxDepth, final long maxBytes) {
+		return withResponseFiles(maxDepth, maxBytes, null);
+	}
+
+	/**
+	 * Like {@link #withResponseFiles(int, long)}, but only reads response
+	 * files inside {@code baseDirectory}, or in a directory below it. Names
+	 * are resolved as usual, and then compared after resolving {@code ..}
+	 * and symbolic links; if a response file is outside the directory, the
+	 * arguments cannot be parsed.
+	 * <p>
+	 * Without a base directory, an {@code @file} argument reads any file the
+	 * process can read, such as {@code @/etc/passwd}, and its contents become
+	 * arguments that may appear in error messages. Pass a directory whenever
+	 * the command line comes from an untrusted source.
+	 *
+	 * @param maxDepth
+	 *            the maximum nesting of response files; {@code 0} to disable
+	 * @param maxBytes
+	 *            the maximum total size of the response files of a command
+	 *            line
+	 * @param baseDirectory
+	 *            the directory that contains every response file, or
+	 *            {@code null} for any file
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxDepth} or {@code maxBytes} is negative
+	 */
+	public Docopt withResponseFiles(final int maxDepth, final long maxBytes,
+			final File baseDirectory) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("maxDepth < 0");
 		}
-		catch (final DocoptExitException e) {
-			if (!exit) {
-				throw e;
-			}
 
-			@SuppressWarnings("resource")
-			final PrintStream ps = (e.getExitCode() == 0) ? out : err;
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes < 0");
+		}
 
-			if (ps != null) {
-				final String message = e.getMessage();
+		this.responseFiles = (maxDepth == 0) ? null : new ResponseFiles(
+				maxDepth, maxBytes, baseDirectory);
+		clearCache();
+		return this;
+	}
 
-				if (message != null) {
-					ps.println(message);
-				}
+	/**
+	 * If {@code maxArguments} or {@code maxLength} is positive, command lines
+	 * with more than {@code maxArguments} arguments, or with an argument of
+	 * more than {@code maxLength} characters, are not parsed. Parsing them
+	 * ends with a {@link DocoptExitException} of kind
+	 * {@link DocoptOutcome.Kind#LIMIT_EXCEEDED}. The limits apply after
+	 * response files are expanded. Disabled by default.
+	 *
+	 * @param maxArguments
+	 *            the maximum number of arguments; {@code 0} for no limit
+	 * @param maxLength
+	 *            the maximum length of an argument; {@code 0} for no limit
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxArguments} or {@code maxLength} is negative
+	 */
+	public Docopt withInputLimits(final int maxArguments, final int maxLength) {
+		if (maxArguments < 0) {
+			throw new IllegalArgumentException("maxArguments < 0");
+		}
 
-				if (e.getPrintUsage()) {
-					ps.println(usage);
-				}
-			}
+		if (maxLength < 0) {
+			throw new IllegalArgumentException("maxLength < 0");
+		}
 
-			System.exit(e.getExitCode());
+		this.maxArguments = maxArguments;
+		this.maxArgumentLength = maxLength;
+		clearCache();
+		return this;
+	}
 
-			// Not reachable.
-			throw new IllegalStateException();
+	/**
+	 * If {@code maxSteps} is positive, matching a command line against the
+	 * usage patterns is stopped after {@code maxSteps} sub-patterns have been
+	 * matched, which bounds the time spent on grammars that backtrack a lot.
+	 * Parsing then ends with a {@link DocoptExitException} of kind
+	 * {@link DocoptOutcome.Kind#LIMIT_EXCEEDED}. When alternatives are matched
+	 * concurrently (see {@link #withExecutor}), each batch has its own limit.
+	 * Disabled by default.
+	 *
+	 * @param maxSteps
+	 *            the maximum number of sub-patterns to match per command line;
+	 *            {@code 0} for no limit
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code maxSteps} is negative
+	 */
+	public Docopt withStepLimit(final long maxSteps) {
+		if (maxSteps < 0) {
+			throw new IllegalArgumentException("maxSteps < 0");
 		}
+
+		this.maxSteps = maxSteps;
+		clearCache();
+		return this;
 	}
 
 	/**
-	 * Parses {@code argv} based on command-line interface described by the
-	 * argument to the constructor.
-	 * <p>
-	 * This method will attempt to exit the invoking application if:
-	 * <ul>
-	 * <li>the arguments cannot be parsed
-	 * <li>the default {@code --help} behavior is invoked
-	 * <li>the default {@code --version} behavior is invoked
-	 * </ul>
-	 * <p>
-	 * In any of these cases, the parser will either terminate the JVM or throw
-	 * a {@link DocoptExitException}, depending on configuration via
-	 * {@link #withExit}.
+	 * If {@code timeout} is positive, matching a command line against the
+	 * usage patterns is stopped once it has taken longer than
+	 * {@code timeout}. Parsing then ends with a {@link DocoptExitException}
+	 * of kind {@link DocoptOutcome.Kind#LIMIT_EXCEEDED}. Such outcomes are
+	 * never cached. Disabled by default.
+	 *
+	 * @param timeout
+	 *            the maximum time to match a command line; {@code 0} for no
+	 *            limit
+	 * @param unit
+	 *            the unit of {@code timeout}
+	 * @return this object
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is negative
+	 */
+	public Docopt withTimeLimit(final long timeout, final TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout < 0");
+		}
+
+		this.timeLimit = unit.toNanos(timeout);
+		clearCache();
+		return this;
+	}
+
+	/**
+	 * If {@code enabled}, the usage lines are tried in an order adapted to
+	 * how often each one matches, most frequent first, which is updated as
+	 * command lines are parsed. Once a line matches every argument, the lines
+	 * after it in the help message are skipped, and the lines before it are
+	 * only checked for whether they also match every argument, as the first
+	 * such line wins; this check collects nothing for command lines of fewer
+	 * than 64 arguments. The parsed arguments are the same as without
+	 * adapting, but a step limit (see {@link #withStepLimit}) may be reached
+	 * sooner or later. It has no effect on a single usage line, or when
+	 * alternatives are matched concurrently (see {@link #withExecutor}).
+	 * Disabled by default.
+	 *
+	 * @param enabled
+	 *            {@code true} to adapt the order of the usage lines
+	 * @return this object
+	 */
+	public Docopt withAdaptiveOrdering(final boolean enabled) {
+		// The number of lines is read without inflating a compact grammar.
+		final CompactGrammar c = compact;
+		final int lines = (c != null) ? c.getLineCount() : grammar()
+				.getLineCount();
+
+		lineOrder = (enabled && lines != 0) ? new LineOrder(lines) : null;
+		return this;
+	}
+
+	/**
+	 * Estimates the cost of using this parser.
+	 *
+	 * @return the estimate
+	 * @see #analyze(String)
+	 */
+	public DocoptComplexity getComplexity() {
+		return new DocoptComplexity(grammar().getPattern());
+	}
+
+	/**
+	 * Writes a result of {@link #parse} as a JSON object, e.g.
+	 * <code>{"--all": true, "&lt;name&gt;": ["10", "20"]}</code>, with the
+	 * entries in the order of {@code result}. The encoding of every name is
+	 * computed once per parser.
+	 *
+	 * @param result
+	 *            the parsed arguments, whose values are {@code Boolean},
+	 *            {@code Integer}, {@code String}, {@code List} of
+	 *            {@code String} or {@code null}
+	 * @param out
+	 *            the destination
+	 * @throws IOException
+	 *             if {@code out} throws
+	 * @throws IllegalArgumentException
+	 *             if a value cannot be encoded
+	 */
+	public void writeJson(final Map<String, ?> result, final Appendable out)
+			throws IOException {
+		json().write(result, out);
+	}
+
+	/**
+	 * Writes a result of {@link #parse} as a JSON object like
+	 * {@link #writeJson(Map, Appendable)}, encoded as UTF-8 into {@code out}
+	 * starting at its position, so that a single buffer can be reused for
+	 * any number of results.
+	 *
+	 * @param result
+	 *            the parsed arguments
+	 * @param out
+	 *            the destination
+	 * @throws java.nio.BufferOverflowException
+	 *             if {@code out} has too little space remaining, in which
+	 *             case its position is undefined
+	 * @throws IllegalArgumentException
+	 *             if a value cannot be encoded
+	 */
+	public void writeJson(final Map<String, ?> result, final ByteBuffer out) {
+		json().write(result, out);
+	}
+
+	private JsonEncoder json() {
+		JsonEncoder u = json;
+
+		if (u == null) {
+			// Concurrent callers may build equal encoders; either is kept.
+			u = new JsonEncoder(grammar());
+			json = u;
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the statistics of the cache enabled via {@link #withCache}.
+	 *
+	 * @return a snapshot of the statistics, or {@code null} if the cache is
+	 *         disabled
+	 */
+	public DocoptCacheStats getCacheStats() {
+		final ResultCache cache = this.cache;
+		return (cache == null) ? null : cache.getStats();
+	}
+
+	private void clearCache() {
+		final ResultCache cache = this.cache;
+
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	private Grammar grammar() {
+		while (true) {
+			final CompactGrammar c = compact;
+
+			if (c != null) {
+				final Reference<Grammar> ref = inflated;
+				Grammar u = (ref == null) ? null : ref.get();
+
+				if (u == null) {
+					u = c.inflate();
+					inflated = new SoftReference<Grammar>(u);
+				}
+
+				return u;
+			}
+
+			final Grammar g = grammar;
+
+			if (g != null) {
+				return g;
+			}
+
+			// The grammar was compacted between the two reads, so compact is
+			// set now.
+		}
+	}
+
+	/**
+	 * Expands the response files of {@code argv}, if enabled, and parses it
+	 * into leaves, throwing a {@link DocoptExitException} if it is malformed
+	 * or invokes the default {@code --help} or {@code --version} behavior.
+	 */
+	private List<LeafPattern> leaves(final Grammar grammar,
+			final List<String> argv) {
+		final ResponseFiles responseFiles = this.responseFiles;
+		final List<String> expanded = (responseFiles == null) ? argv
+				: responseFiles.expand(argv);
+
+		checkInputLimits(expanded);
+
+		final List<LeafPattern> $argv = parseArgv(
+				Tokens.withExitException(expanded), list(grammar.getOptions()),
+				optionsFirst);
+
+		extras(help, version, $argv, doc);
+
+		return $argv;
+	}
+
+	/**
+	 * Throws a {@link DocoptExitException} of kind
+	 * {@link DocoptOutcome.Kind#LIMIT_EXCEEDED} if {@code argv} exceeds the
+	 * limits set via {@link #withInputLimits}.
+	 */
+	private void checkInputLimits(final List<String> argv) {
+		if (maxArguments != 0 && argv.size() > maxArguments) {
+			throw new DocoptExitException(1, String.format(
+					"more than %d arguments", maxArguments), false,
+					DocoptOutcome.Kind.LIMIT_EXCEEDED);
+		}
+
+		if (maxArgumentLength != 0) {
+			for (int i = 0; i < argv.size(); i++) {
+				if (argv.get(i).length() > maxArgumentLength) {
+					throw new DocoptExitException(1, String.format(
+							"argument longer than %d characters",
+							maxArgumentLength), false,
+							DocoptOutcome.Kind.LIMIT_EXCEEDED);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Matches {@code argv} against {@code grammar}, collecting only the
+	 * leaves named in {@code names} unless it is {@code null}. The caller
+	 * passes the grammar that it reads the result with, as a compact grammar
+	 * may be rebuilt between two calls to {@link #grammar()}.
+	 */
+	private MatchResult doMatch(final Grammar grammar,
+			final List<String> argv, final Set<String> names) {
+		final List<LeafPattern> $argv = leaves(grammar, argv);
+
+		final MatchContext context = new MatchContext($argv, memoSize,
+				executor, minAlternatives, names);
+		final MatchResult m;
+
+		try {
+			context.limit(maxSteps, timeLimit);
+			context.skip(grammar.getLines(), grammar.skipped($argv, context));
+			context.order(lineOrder);
+			m = grammar.getPattern().match($argv, null, context);
+		}
+		finally {
+			context.release();
+		}
+
+		if (m.matched() && m.getLeft().isEmpty()) {
+			return m;
+		}
+
+		// Arguments did not match any usage pattern. Print usage and exit with
+		// error status. The suggestions are only computed if requested.
+		throw new DocoptExitException(1, null, true,
+				DocoptOutcome.Kind.USAGE_ERROR, new Suggestions(grammar, $argv));
+	}
+
+	private Map<String, Object> doParse(final List<String> argv) {
+		final Grammar grammar = grammar();
+		final MatchResult m = doMatch(grammar, argv, null);
+
+		// @formatter:off
+		// >>> return Dict((a.name, a.value) for a in (pattern.flat() + collected))
+		// @formatter:on
+		// The defaults are shared and only the collected values are stored.
+		return new OverlayResult(grammar, m.getCollected());
+	}
+
+	/**
+	 * Parses {@code argv}, or returns the outcome remembered for it if the
+	 * cache is enabled.
+	 */
+	private Map<String, Object> cachedParse(final List<String> argv) {
+		final ResultCache cache = this.cache;
+
+		// The contents of response files may change, so their outcomes are
+		// not remembered.
+		if (cache == null
+				|| (responseFiles != null && ResponseFiles.expands(argv))) {
+			return doParse(argv);
+		}
+
+		ResultCache.Outcome u = cache.get(argv);
+
+		if (u == null) {
+			try {
+				u = new ResultCache.Outcome(doParse(argv));
+			}
+			catch (final DocoptExitException e) {
+				// Whether a limit is exceeded may depend on timing.
+				if (e.getKind() == DocoptOutcome.Kind.LIMIT_EXCEEDED) {
+					throw e;
+				}
+
+				u = new ResultCache.Outcome(e);
+			}
+
+			cache.put(argv, u);
+		}
+
+		return u.get();
+	}
+
+	/**
+	 * Parses {@code argv} like {@link #parse(List)}, but returns what would
+	 * have been printed instead of exiting.
+	 */
+	DocoptOutcome outcome(final List<String> argv) {
+		try {
+			return new DocoptOutcome(DocoptOutcome.Kind.RESULT, argv,
+					cachedParse(argv), null, 0);
+		}
+		catch (final DocoptExitException e) {
+			final StringBuilder sb = new StringBuilder();
+
+			if (e.getMessage() != null) {
+				sb.append(e.getMessage());
+			}
+
+			if (e.getPrintUsage()) {
+				if (sb.length() > 0) {
+					sb.append('\n');
+				}
+
+				sb.append(doc, usageStart, usageEnd);
+			}
+
+			return new DocoptOutcome(e.getKind(), argv, null, sb.toString(),
+					e.getExitCode());
+		}
+	}
+
+	/**
+	 * Handles a {@link DocoptExitException} thrown while parsing: either
+	 * rethrows it or prints its message and terminates the JVM, depending on
+	 * configuration via {@link #withExit}.
+	 */
+	private IllegalStateException exit(final DocoptExitException e) {
+		if (!exit) {
+			throw e;
+		}
+
+		@SuppressWarnings("resource")
+		final PrintStream ps = (e.getExitCode() == 0) ? out : err;
+
+		if (ps != null) {
+			final String message = e.getMessage();
+
+			if (message != null) {
+				ps.println(message);
+			}
+
+			if (e.getPrintUsage()) {
+				ps.println(doc.substring(usageStart, usageEnd));
+			}
+		}
+
+		System.exit(e.getExitCode());
+
+		// Not reachable.
+		return new IllegalStateException();
+	}
+
+	/**
+	 * Parses {@code argv} based on command-line interface described by the
+	 * argument to the constructor.
+	 * <p>
+	 * This method will attempt to exit the invoking application if:
+	 * <ul>
+	 * <li>the arguments cannot be parsed
+	 * <li>the default {@code --help} behavior is invoked
+	 * <li>the default {@code --version} behavior is invoked
+	 * </ul>
+	 * <p>
+	 * In any of these cases, the parser will either terminate the JVM or throw
+	 * a {@link DocoptExitException}, depending on configuration via
+	 * {@link #withExit}.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @return A {@code Map}, where keys are names of command-line elements,
+	 *         such as "--verbose" and "&lt;path&gt;", and values are the parsed
+	 *         values of those elements.
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 */
+	public Map<String, Object> parse(final List<String> argv)
+			throws DocoptExitException {
+		try {
+			return cachedParse(argv);
+		}
+		catch (final DocoptExitException e) {
+			throw exit(e);
+		}
+	}
+
+	/**
+	 * Parses {@code argv} based on command-line interface described by the
+	 * argument to the constructor.
+	 * <p>
+	 * This method will attempt to exit the invoking application if:
+	 * <ul>
+	 * <li>the arguments cannot be parsed
+	 * <li>the default {@code --help} behavior is invoked
+	 * <li>the default {@code --version} behavior is invoked
+	 * </ul>
+	 * <p>
+	 * In any of these cases, the parser will either terminate the JVM or throw
+	 * a {@link DocoptExitException}, depending on configuration via
+	 * {@link #withExit}.
 	 *
 	 * @param argv
 	 *            the command line arguments
@@ -961,6 +1746,325 @@ public final class Docopt {
 		return parse(Arrays.asList(argv));
 	}
 
+	/**
+	 * Parses {@code argv} like {@link #parse(List)}, but returns only the
+	 * values of the command-line elements named in {@code keys}. The other
+	 * elements are matched but not collected, so their values are never
+	 * computed. The result cache is not used.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @param keys
+	 *            the names of the command-line elements to return, such as
+	 *            "--verbose" and "&lt;path&gt;"
+	 * @return A {@code Map} from each of {@code keys}, in order, to the
+	 *         parsed value of that element.
+	 * @throws IllegalArgumentException
+	 *             if one of {@code keys} is not the name of a command-line
+	 *             element
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 * @see #parse(List)
+	 */
+	public Map<String, Object> parse(final List<String> argv,
+			final String... keys) throws DocoptExitException {
+		final Grammar grammar = grammar();
+		final Map<String, Object> u = new LinkedHashMap<String, Object>();
+
+		for (final String key : keys) {
+			final int i = grammar.indexOf(key);
+
+			if (i == -1) {
+				throw new IllegalArgumentException("unknown key: " + key);
+			}
+
+			final Object value = grammar.getDefault(i);
+			u.put(key, (value instanceof List) ? grammar.copyListDefault(i)
+					: value);
+		}
+
+		final MatchResult m;
+
+		try {
+			m = doMatch(grammar, argv, u.keySet());
+		}
+		catch (final DocoptExitException e) {
+			throw exit(e);
+		}
+
+		// Only the requested leaves were collected; the last one wins.
+		for (final LeafPattern p : m.getCollected()) {
+			u.put(p.getName(), p.getValue());
+		}
+
+		return u;
+	}
+
+	/**
+	 * Checks whether {@code argv} would be parsed, without building a result.
+	 * Unlike {@link #parse}, this method never prints anything, exits or
+	 * throws a {@link DocoptExitException}; it returns the kind of outcome
+	 * that {@code parse} would have instead.
+	 * <p>
+	 * Only the positions of the arguments that are left are tracked while
+	 * matching, so nothing is collected or copied. Command lines of 64 or
+	 * more arguments, and parsers with memoization or matching limits
+	 * enabled, are matched like {@code parse} does.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @return {@link DocoptOutcome.Kind#RESULT} if {@code argv} would be
+	 *         parsed, or the reason it would not
+	 */
+	public DocoptOutcome.Kind validate(final List<String> argv) {
+		try {
+			final Grammar grammar = grammar();
+			final List<LeafPattern> $argv = leaves(grammar, argv);
+			final boolean valid;
+
+			if ($argv.size() < Long.SIZE && memoSize == 0 && maxSteps == 0
+					&& timeLimit == 0) {
+				valid = grammar.getPattern().validate($argv,
+						(1L << $argv.size()) - 1) == 0;
+			}
+			else {
+				final MatchContext context = new MatchContext($argv,
+						memoSize, executor, minAlternatives, null);
+				final MatchResult m;
+
+				try {
+					context.limit(maxSteps, timeLimit);
+					m = grammar.getPattern().match($argv, null, context);
+				}
+				finally {
+					context.release();
+				}
+
+				valid = m.matched() && m.getLeft().isEmpty();
+			}
+
+			return valid ? DocoptOutcome.Kind.RESULT
+					: DocoptOutcome.Kind.USAGE_ERROR;
+		}
+		catch (final DocoptExitException e) {
+			return e.getKind();
+		}
+	}
+
+	/**
+	 * Checks whether {@code argv} would be parsed, without building a result.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @return {@link DocoptOutcome.Kind#RESULT} if {@code argv} would be
+	 *         parsed, or the reason it would not
+	 * @see #validate(List)
+	 */
+	public DocoptOutcome.Kind validate(final String... argv) {
+		return validate(Arrays.asList(argv));
+	}
+
+	/**
+	 * Creates a holder that can be passed to {@link #parseInto} any number of
+	 * times. Until it is first filled, the holder contains the default value of
+	 * every command-line element.
+	 *
+	 * @return a new result holder for this parser
+	 * @see #parseInto
+	 */
+	public DocoptResult newResult() {
+		return new DocoptResult(this, grammar());
+	}
+
+	/**
+	 * Parses {@code argv} like {@link #parse(List)}, but stores the parsed
+	 * values in {@code result} instead of a new {@code Map}. Any values from a
+	 * previous call are overwritten.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @param result
+	 *            a holder created by {@link #newResult} on this object
+	 * @return {@code result}
+	 * @throws IllegalArgumentException
+	 *             if {@code result} was not created by this object
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 * @see #parse(List)
+	 */
+	public DocoptResult parseInto(final List<String> argv,
+			final DocoptResult result) throws DocoptExitException {
+		if (result.getOwner() != this) {
+			throw new IllegalArgumentException(
+					"result was not created by this parser");
+		}
+
+		try {
+			if (!parseSimple(argv, result)) {
+				result.fill(doMatch(result.getGrammar(), argv, null)
+						.getCollected());
+			}
+
+			return result;
+		}
+		catch (final DocoptExitException e) {
+			throw exit(e);
+		}
+	}
+
+	/**
+	 * Parses {@code argv} into {@code result} with the leaves and the grammar
+	 * that it keeps, if {@code argv} can be read by its {@link ArgvReader}
+	 * and matches. Once the leaves have been created, this allocates nothing.
+	 *
+	 * @return {@code false} if {@code argv} must be parsed by
+	 *         {@link #doMatch}, which also reports why it does not match
+	 */
+	private boolean parseSimple(final List<String> argv,
+			final DocoptResult result) {
+		if (memoSize != 0 || maxSteps != 0 || timeLimit != 0
+				|| lineOrder != null || argv.size() >= Long.SIZE
+				|| (responseFiles != null && ResponseFiles.expands(argv))) {
+			return false;
+		}
+
+		checkInputLimits(argv);
+
+		final ArgvReader reader = result.getReader();
+
+		if (!reader.read(argv, optionsFirst)) {
+			return false;
+		}
+
+		final List<LeafPattern> $argv = reader.getLeaves();
+		final Pattern pattern = result.getGrammar().getPattern();
+		final long all = (1L << $argv.size()) - 1;
+
+		extras(help, version, $argv, doc);
+
+		if (pattern.validate($argv, all) != 0) {
+			return false;
+		}
+
+		result.reset();
+		pattern.record($argv, all, result);
+		return true;
+	}
+
+	/**
+	 * Parses {@code argv} like {@link #parse(String...)}, but stores the parsed
+	 * values in {@code result} instead of a new {@code Map}. Any values from a
+	 * previous call are overwritten.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @param result
+	 *            a holder created by {@link #newResult} on this object
+	 * @return {@code result}
+	 * @throws IllegalArgumentException
+	 *             if {@code result} was not created by this object
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 * @see #parse(String...)
+	 */
+	public DocoptResult parseInto(final String[] argv,
+			final DocoptResult result) {
+		return parseInto(Arrays.asList(argv), result);
+	}
+
+	/**
+	 * Parses {@code argv} like {@link #parse(List)}, but passes the parsed
+	 * value of each command-line element to {@code handler} instead of
+	 * returning a {@code Map}. The values are reported straight from the
+	 * outcome of matching, without building an intermediate map. The result
+	 * cache is not used.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @param handler
+	 *            the receiver of the parsed values
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 * @see DocoptHandler
+	 */
+	public void parseInto(final List<String> argv, final DocoptHandler handler)
+			throws DocoptExitException {
+		final Grammar grammar = grammar();
+		final MatchResult m;
+
+		try {
+			m = doMatch(grammar, argv, null);
+		}
+		catch (final DocoptExitException e) {
+			throw exit(e);
+		}
+
+		final List<LeafPattern> collected = m.getCollected();
+
+		// The position in collected of the last leaf of each name, or -1.
+		final int[] last = new int[grammar.size()];
+		Arrays.fill(last, -1);
+
+		for (int k = 0; k < collected.size(); k++) {
+			final int i = grammar.indexOf(collected.get(k).getName());
+
+			if (i == -1) {
+				throw new IllegalStateException();
+			}
+
+			last[i] = k;
+		}
+
+		for (int i = 0; i < last.length; i++) {
+			final String name = grammar.getName(i);
+
+			if (last[i] == -1) {
+				final Object value = grammar.getDefault(i);
+				handler.onDefault(name, (value instanceof List) ? grammar
+						.copyListDefault(i) : value);
+				continue;
+			}
+
+			final LeafPattern p = collected.get(last[i]);
+			final Object value = p.getValue();
+
+			if (value instanceof Integer) {
+				handler.onCount(name, (Integer) value);
+			}
+			else if (p instanceof Command) {
+				handler.onCommand(name);
+			}
+			else if (p instanceof Option) {
+				handler.onOption(name, value);
+			}
+			else {
+				handler.onArgument(name, value);
+			}
+		}
+	}
+
+	/**
+	 * Parses {@code argv} like {@link #parse(String...)}, but passes the
+	 * parsed value of each command-line element to {@code handler} instead of
+	 * returning a {@code Map}.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @param handler
+	 *            the receiver of the parsed values
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link #withExit}
+	 * @see #parseInto(List, DocoptHandler)
+	 */
+	public void parseInto(final String[] argv, final DocoptHandler handler) {
+		parseInto(Arrays.asList(argv), handler);
+	}
+
 	Docopt withStdOut(final PrintStream out) {
 		this.out = out;
 		return this;
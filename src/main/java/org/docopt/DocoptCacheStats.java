@@ -0,0 +1,82 @@
+package org.docopt;
+
+/**
+ * A snapshot of the statistics of the result cache of a parser.
+ *
+ * @see Docopt#withCache
+ * @see Docopt#getCacheStats
+ */
+public final class DocoptCacheStats {
+
+	private final long hits;
+
+	private final long misses;
+
+	private final long evictions;
+
+	private final int size;
+
+	private final long weight;
+
+	DocoptCacheStats(final long hits, final long misses, final long evictions,
+			final int size, final long weight) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the number of parses answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of parses not answered from the cache.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries removed to stay within the bounds of the
+	 * cache.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries in the cache.
+	 *
+	 * @return the number of entries
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the total weight of the entries in the cache.
+	 *
+	 * @return the total weight
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"DocoptCacheStats(hits=%d, misses=%d, evictions=%d, size=%d, weight=%d)",
+				hits, misses, evictions, size, weight);
+	}
+}
@@ -0,0 +1,360 @@
+package org.docopt;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An estimate of the cost of a grammar, computed from the structure of its
+ * usage patterns without parsing any arguments.
+ * <p>
+ * Matching never backtracks into an alternative once chosen, so its cost is
+ * polynomial in the number of arguments, with a degree given by how deeply
+ * repeated elements ({@code ...}) are nested. Constructing a parser, however,
+ * expands the usage patterns into alternatives of plain sequences, whose
+ * number can grow exponentially with the number of optional groups that
+ * contain alternatives.
+ *
+ * @see Docopt#analyze(String)
+ * @see Docopt#getComplexity
+ */
+public final class DocoptComplexity {
+
+	/**
+	 * The first positional element of an alternative when it is an argument
+	 * rather than a command.
+	 */
+	private static final String ANY_ARGUMENT = "<>";
+
+	/**
+	 * The commands and arguments that can be the first positional element
+	 * matched by a pattern, and whether it can match without any.
+	 */
+	private static final class First {
+
+		private final Set<String> elements = new HashSet<String>();
+
+		private boolean optional = true;
+
+		public boolean overlaps(final First other) {
+			if (optional && other.optional) {
+				return true;
+			}
+
+			if ((elements.contains(ANY_ARGUMENT) && !other.elements.isEmpty())
+					|| (other.elements.contains(ANY_ARGUMENT) && !elements
+							.isEmpty())) {
+				return true;
+			}
+
+			for (final String e : elements) {
+				if (other.elements.contains(e)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * The counts gathered by walking a pattern tree.
+	 */
+	private static final class Walk {
+
+		private int size = 0;
+
+		private int repeatedAlternatives = 0;
+
+		private int overlappingAlternatives = 0;
+
+		/**
+		 * Counts the nodes of {@code pattern}, which has {@code repeated}
+		 * repeated ancestors, by their number of repeated ancestors.
+		 */
+		public void count(final Pattern pattern, final int repeated,
+				final int[] nodes) {
+			size++;
+			nodes[repeated]++;
+
+			if (!(pattern instanceof BranchPattern)) {
+				return;
+			}
+
+			final List<Pattern> children = ((BranchPattern) pattern)
+					.getChildren();
+
+			if (repeated > 0 && pattern.getClass() == Either.class) {
+				repeatedAlternatives += children.size();
+			}
+
+			final int r = (pattern.getClass() == OneOrMore.class) ? repeated + 1
+					: repeated;
+
+			for (final Pattern child : children) {
+				count(child, r, nodes);
+			}
+		}
+
+		/**
+		 * Returns the first positional elements of {@code pattern}, counting
+		 * the pairs of overlapping alternatives of every {@link Either} within
+		 * it.
+		 */
+		public First first(final Pattern pattern) {
+			final First u = new First();
+			final Class<?> type = pattern.getClass();
+
+			if (type == Command.class) {
+				u.elements.add(((LeafPattern) pattern).getName());
+				u.optional = false;
+			}
+			else if (type == Argument.class) {
+				u.elements.add(ANY_ARGUMENT);
+				u.optional = false;
+			}
+			else if (type == Either.class) {
+				final List<Pattern> children = ((BranchPattern) pattern)
+						.getChildren();
+				final First[] alternatives = new First[children.size()];
+
+				u.optional = false;
+
+				for (int i = 0; i < alternatives.length; i++) {
+					alternatives[i] = first(children.get(i));
+					u.elements.addAll(alternatives[i].elements);
+					u.optional |= alternatives[i].optional;
+
+					for (int j = 0; j < i; j++) {
+						if (alternatives[i].overlaps(alternatives[j])) {
+							overlappingAlternatives++;
+						}
+					}
+				}
+			}
+			else if (pattern instanceof BranchPattern) {
+				// The elements up to the first one that is not optional.
+				boolean optional = true;
+
+				for (final Pattern child : ((BranchPattern) pattern)
+						.getChildren()) {
+					final First c = first(child);
+
+					if (optional) {
+						u.elements.addAll(c.elements);
+						optional = c.optional;
+					}
+				}
+
+				u.optional = optional || pattern instanceof Optional;
+			}
+
+			// Options can be given anywhere, so they are never first.
+			return u;
+		}
+	}
+
+	private final int usageLines;
+
+	private final int size;
+
+	private final int depth;
+
+	private final int repetitionDepth;
+
+	private final int repeatedAlternatives;
+
+	private final long expansionSize;
+
+	private final int overlappingAlternatives;
+
+	/**
+	 * The number of nodes at each number of repeated ancestors.
+	 */
+	private final int[] nodesByRepetition;
+
+	DocoptComplexity(final Required pattern) {
+		final List<Pattern> children = pattern.getChildren();
+
+		// Several usage lines are parsed into Required(Either(...)).
+		if (children.size() == 1
+				&& children.get(0).getClass() == Either.class) {
+			usageLines = ((Either) children.get(0)).getChildren().size();
+		}
+		else {
+			usageLines = 1;
+		}
+
+		final Walk walk = new Walk();
+		final int[] u = new int[depth(pattern, 0)];
+		depth = u.length;
+		walk.count(pattern, 0, u);
+		walk.first(pattern);
+
+		int r = u.length - 1;
+
+		while (r > 0 && u[r] == 0) {
+			r--;
+		}
+
+		repetitionDepth = r;
+		nodesByRepetition = new int[r + 1];
+		System.arraycopy(u, 0, nodesByRepetition, 0, r + 1);
+
+		size = walk.size;
+		repeatedAlternatives = walk.repeatedAlternatives;
+		overlappingAlternatives = walk.overlappingAlternatives;
+		expansionSize = expansion(pattern);
+	}
+
+	private static int depth(final Pattern pattern, final int d) {
+		int u = d + 1;
+
+		if (pattern instanceof BranchPattern) {
+			for (final Pattern child : ((BranchPattern) pattern).getChildren()) {
+				u = Math.max(u, depth(child, d + 1));
+			}
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the number of alternatives that {@code pattern} is expanded
+	 * into when constructing a parser, or {@link Long#MAX_VALUE} if it is at
+	 * least that many.
+	 */
+	private static long expansion(final Pattern pattern) {
+		if (!(pattern instanceof BranchPattern)) {
+			return 1;
+		}
+
+		final List<Pattern> children = ((BranchPattern) pattern).getChildren();
+		long u = (pattern.getClass() == Either.class) ? 0 : 1;
+
+		for (final Pattern child : children) {
+			final long c = expansion(child);
+
+			if (pattern.getClass() == Either.class) {
+				u = (u > Long.MAX_VALUE - c) ? Long.MAX_VALUE : u + c;
+			}
+			else {
+				u = multiply(u, c);
+			}
+		}
+
+		// (a...) is expanded like (a a).
+		return (pattern.getClass() == OneOrMore.class) ? multiply(u, u) : u;
+	}
+
+	private static long multiply(final long a, final long b) {
+		if (a == 0 || b == 0) {
+			return 0;
+		}
+
+		return (a > Long.MAX_VALUE / b) ? Long.MAX_VALUE : a * b;
+	}
+
+	/**
+	 * Returns the number of usage lines.
+	 *
+	 * @return the number of usage lines
+	 */
+	public int getUsageLines() {
+		return usageLines;
+	}
+
+	/**
+	 * Returns the number of elements and groups in the usage patterns.
+	 *
+	 * @return the number of nodes of the pattern tree
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the deepest nesting of groups in the usage patterns.
+	 *
+	 * @return the depth of the pattern tree
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the deepest nesting of repeated elements ({@code ...}), which
+	 * is the degree of the polynomial that bounds the cost of matching.
+	 *
+	 * @return the largest number of nested repetitions
+	 */
+	public int getRepetitionDepth() {
+		return repetitionDepth;
+	}
+
+	/**
+	 * Returns the number of alternatives ({@code |}) within repeated
+	 * elements, which are matched again for every repetition.
+	 *
+	 * @return the number of repeated alternatives
+	 */
+	public int getRepeatedAlternatives() {
+		return repeatedAlternatives;
+	}
+
+	/**
+	 * Returns the number of plain sequences that the usage patterns are
+	 * expanded into when constructing a parser. It grows exponentially with
+	 * the number of optional groups that contain alternatives.
+	 *
+	 * @return the size of the expansion, or {@link Long#MAX_VALUE} if it is at
+	 *         least that large
+	 */
+	public long getExpansionSize() {
+		return expansionSize;
+	}
+
+	/**
+	 * Returns the number of pairs of alternatives, including usage lines,
+	 * that can start with the same command or argument. Unlike alternatives
+	 * that start with different commands, both alternatives of such a pair
+	 * are matched in full.
+	 *
+	 * @return the number of overlapping pairs of alternatives
+	 */
+	public int getOverlappingAlternatives() {
+		return overlappingAlternatives;
+	}
+
+	/**
+	 * Estimates the largest number of elements and groups matched when
+	 * parsing {@code arguments} arguments: every node is matched at most once
+	 * more than there are arguments for each repetition that contains it.
+	 *
+	 * @param arguments
+	 *            the number of arguments
+	 * @return the estimated number of steps, or {@link Long#MAX_VALUE} if it
+	 *         is at least that large
+	 */
+	public long estimateSteps(final int arguments) {
+		long u = 0;
+		long factor = 1;
+
+		for (final int nodes : nodesByRepetition) {
+			final long c = multiply(nodes, factor);
+			u = (u > Long.MAX_VALUE - c) ? Long.MAX_VALUE : u + c;
+			factor = multiply(factor, arguments + 1L);
+		}
+
+		return u;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DocoptComplexity(usageLines=%d, size=%d, "
+				+ "depth=%d, repetitionDepth=%d, repeatedAlternatives=%d, "
+				+ "expansionSize=%d, overlappingAlternatives=%d)", usageLines,
+				size, depth, repetitionDepth, repeatedAlternatives,
+				expansionSize, overlappingAlternatives);
+	}
+}
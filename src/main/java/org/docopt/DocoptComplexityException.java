@@ -0,0 +1,28 @@
+package org.docopt;
+
+/**
+ * An exception thrown by {@link Docopt#analyze(String, long, long, int)} to
+ * indicate that a well-formed help message is too complex to accept.
+ */
+public final class DocoptComplexityException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient DocoptComplexity complexity;
+
+	DocoptComplexityException(final String message,
+			final DocoptComplexity complexity) {
+		super(message);
+		this.complexity = complexity;
+	}
+
+	/**
+	 * Returns the estimate that exceeded a limit.
+	 *
+	 * @return the estimate, or {@code null} if this exception was
+	 *         deserialized
+	 */
+	public DocoptComplexity getComplexity() {
+		return complexity;
+	}
+}
@@ -1,5 +1,9 @@
 package org.docopt;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
  * An exception thrown by {@link Docopt#parse} to indicate that the application
  * should exit. This could be normal (e.g. default {@code --help} behavior) or
@@ -13,11 +17,28 @@ public final class DocoptExitException extends RuntimeException {
 
 	private final boolean printUsage;
 
+	private final DocoptOutcome.Kind kind;
+
+	private final transient Suggestions suggestions;
+
 	DocoptExitException(final int exitCode, final String message,
-			final boolean printUsage) {
+			final boolean printUsage, final DocoptOutcome.Kind kind,
+			final Suggestions suggestions) {
 		super(message);
 		this.exitCode = exitCode;
 		this.printUsage = printUsage;
+		this.kind = kind;
+		this.suggestions = suggestions;
+	}
+
+	DocoptExitException(final int exitCode, final String message,
+			final boolean printUsage, final DocoptOutcome.Kind kind) {
+		this(exitCode, message, printUsage, kind, null);
+	}
+
+	DocoptExitException(final int exitCode, final String message,
+			final boolean printUsage) {
+		this(exitCode, message, printUsage, DocoptOutcome.Kind.USAGE_ERROR);
 	}
 
 	DocoptExitException(final int exitCode) {
@@ -37,4 +58,38 @@ public final class DocoptExitException extends RuntimeException {
 	boolean getPrintUsage() {
 		return printUsage;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the reason for the exit, e.g&#46;
+	 * {@link DocoptOutcome.Kind#USAGE_ERROR} if the arguments could not be
+	 * parsed or {@link DocoptOutcome.Kind#LIMIT_EXCEEDED} if parsing was
+	 * stopped at a limit.
+	 *
+	 * @return the kind of outcome
+	 */
+	public DocoptOutcome.Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the "did you mean" suggestions for the arguments that did not
+	 * match any usage pattern, keyed by argument: the closest long options
+	 * described by the help message for unknown long options, and the closest
+	 * commands for other unknown words. Arguments without a close enough
+	 * match are left out. The suggestions are computed when first requested.
+	 *
+	 * @return an unmodifiable map of the suggestions, which is empty if there
+	 *         are none
+	 */
+	public Map<String, List<String>> getSuggestions() {
+		if (suggestions == null) {
+			return Collections.emptyMap();
+		}
+
+		return suggestions.get();
+	}
+
+	Suggestions getSuggestionsSource() {
+		return suggestions;
+	}
+}
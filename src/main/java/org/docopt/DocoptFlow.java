@@ -0,0 +1,67 @@
+package org.docopt;
+
+/**
+ * Interfaces for reactive streams, with the same methods and semantics as
+ * those of {@code java.util.concurrent.Flow} and the Reactive Streams
+ * specification, which are not available on every platform supported by this
+ * library. On Java 9 and later, they can be bridged to {@code Flow} with
+ * trivial adapters.
+ *
+ * @see DocoptProcessor
+ */
+public final class DocoptFlow {
+
+	/**
+	 * A producer of items, like {@code Flow.Publisher}.
+	 *
+	 * @param <T>
+	 *            the type of items published
+	 */
+	public interface Publisher<T> {
+
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/**
+	 * A receiver of items, like {@code Flow.Subscriber}.
+	 *
+	 * @param <T>
+	 *            the type of items received
+	 */
+	public interface Subscriber<T> {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	/**
+	 * A link between a publisher and a subscriber, like
+	 * {@code Flow.Subscription}.
+	 */
+	public interface Subscription {
+
+		void request(long n);
+
+		void cancel();
+	}
+
+	/**
+	 * Both a subscriber and a publisher, like {@code Flow.Processor}.
+	 *
+	 * @param <T>
+	 *            the type of items received
+	 * @param <R>
+	 *            the type of items published
+	 */
+	public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+	}
+
+	private DocoptFlow() {
+		// Prevent instantiation.
+	}
+}
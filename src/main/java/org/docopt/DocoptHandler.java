@@ -0,0 +1,67 @@
+package org.docopt;
+
+/**
+ * A receiver of the parsed values of a command line, for
+ * {@link Docopt#parseInto(java.util.List, DocoptHandler)}.
+ * <p>
+ * Each command-line element of the parser is reported exactly once, in the
+ * same order for every parse: by one of the {@code on*} methods for a
+ * matched element, or by {@link #onDefault} for an element that was not
+ * matched.
+ */
+public interface DocoptHandler {
+
+	/**
+	 * Receives a command that was given once, e.g. "add".
+	 *
+	 * @param name
+	 *            the name of the command
+	 */
+	void onCommand(String name);
+
+	/**
+	 * Receives an option that was given, e.g. "--verbose" or "--speed".
+	 *
+	 * @param name
+	 *            the name of the option
+	 * @param value
+	 *            {@code true} for an option without an argument, otherwise the
+	 *            argument, or a {@code List} of the arguments for an option
+	 *            that can be repeated
+	 */
+	void onOption(String name, Object value);
+
+	/**
+	 * Receives a positional argument that was given, e.g. "&lt;path&gt;".
+	 *
+	 * @param name
+	 *            the name of the argument
+	 * @param value
+	 *            the value, or a {@code List} of the values for an argument
+	 *            that can be repeated
+	 */
+	void onArgument(String name, Object value);
+
+	/**
+	 * Receives a command or an option without an argument that can be
+	 * repeated, e.g. "-v" in "-vvv".
+	 *
+	 * @param name
+	 *            the name of the command or option
+	 * @param n
+	 *            the number of times it was given
+	 */
+	void onCount(String name, int n);
+
+	/**
+	 * Receives an element that was not given.
+	 *
+	 * @param name
+	 *            the name of the element
+	 * @param value
+	 *            the default value, e.g. {@code false}, {@code null},
+	 *            {@code 0}, the {@code [default: ...]} of an option, or a new
+	 *            empty {@code List}
+	 */
+	void onDefault(String name, Object value);
+}
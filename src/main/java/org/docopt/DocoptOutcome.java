@@ -0,0 +1,124 @@
+package org.docopt;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of parsing one command line without exiting: either the parsed
+ * arguments, or the text that {@link Docopt#parse} would have printed before
+ * exiting.
+ *
+ * @see DocoptProcessor
+ */
+public final class DocoptOutcome {
+
+	/**
+	 * The kinds of outcome.
+	 */
+	public enum Kind {
+
+		/**
+		 * The arguments were parsed.
+		 */
+		RESULT,
+
+		/**
+		 * The default {@code --help} behavior was invoked.
+		 */
+		HELP,
+
+		/**
+		 * The default {@code --version} behavior was invoked.
+		 */
+		VERSION,
+
+		/**
+		 * The arguments could not be parsed.
+		 */
+		USAGE_ERROR,
+
+		/**
+		 * Parsing was stopped because the arguments exceeded a limit set via
+		 * {@link Docopt#withInputLimits}, or matching them exceeded a limit
+		 * set via {@link Docopt#withStepLimit} or
+		 * {@link Docopt#withTimeLimit}.
+		 */
+		LIMIT_EXCEEDED
+	}
+
+	private final Kind kind;
+
+	private final List<String> argv;
+
+	private final Map<String, Object> result;
+
+	private final String message;
+
+	private final int exitCode;
+
+	DocoptOutcome(final Kind kind, final List<String> argv,
+			final Map<String, Object> result, final String message,
+			final int exitCode) {
+		this.kind = kind;
+		this.argv = argv;
+		this.result = result;
+		this.message = message;
+		this.exitCode = exitCode;
+	}
+
+	/**
+	 * Returns the kind of this outcome.
+	 *
+	 * @return the kind of this outcome
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the command line arguments that were parsed.
+	 *
+	 * @return the command line arguments
+	 */
+	public List<String> getArgv() {
+		return argv;
+	}
+
+	/**
+	 * Returns the parsed arguments, as returned by {@link Docopt#parse}.
+	 *
+	 * @return the parsed arguments if the kind is {@link Kind#RESULT};
+	 *         otherwise {@code null}
+	 */
+	public Map<String, Object> getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns the text that {@link Docopt#parse} would have printed: the help
+	 * message, the version, or the error message (if any) followed by the
+	 * usage section.
+	 *
+	 * @return the text to print if the kind is not {@link Kind#RESULT};
+	 *         otherwise {@code null}
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns the code that {@link Docopt#parse} would have exited with.
+	 *
+	 * @return the exit code if the kind is not {@link Kind#RESULT}; otherwise
+	 *         {@code 0}
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%s, %s)", kind, argv,
+				(kind == Kind.RESULT) ? result : message);
+	}
+}
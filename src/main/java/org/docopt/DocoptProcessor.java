@@ -0,0 +1,496 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.docopt.DocoptFlow.Subscriber;
+import org.docopt.DocoptFlow.Subscription;
+
+// @formatter:off
+/**
+ * A processor in a reactive stream that parses command lines and publishes a
+ * {@link DocoptOutcome} for each of them, in the order in which they were
+ * received.
+ * <p>
+ * The processor follows the Reactive Streams rules through the interfaces of
+ * {@link DocoptFlow}.
+ * <p>
+ * Command lines are parsed on an {@link Executor} in batches of up to
+ * {@code batchSize}, with at most {@code parallelism} batches in progress.
+ * The processor requests no more command lines from upstream than it can
+ * hold: {@code parallelism * batchSize}, including those being parsed and
+ * those parsed but not yet requested by the subscriber. Outcomes are only
+ * published on demand of the subscriber.
+ *
+ * <pre>
+ * DocoptProcessor&lt;String&gt; processor = DocoptProcessor.forCommandLines(
+ *     new Docopt(doc).withVersion("2.0"), executor, 4, 16);
+ * upstream.subscribe(processor);
+ * processor.subscribe(subscriber);
+ * </pre>
+ *
+ * The parser must not be reconfigured while it is used by the processor.
+ *
+ * @param <T>
+ *            the type of command lines received
+ */
+// @formatter:on
+public final class DocoptProcessor<T> implements
+		DocoptFlow.Processor<T, DocoptOutcome> {
+
+	/**
+	 * Turns a received item into command line arguments.
+	 */
+	private interface Converter<T> {
+
+		List<String> argv(T item);
+	}
+
+	private static final Converter<List<String>> ARGV = new Converter<List<String>>() {
+
+		@Override
+		public List<String> argv(final List<String> item) {
+			return item;
+		}
+	};
+
+	private static final Converter<String> COMMAND_LINE = new Converter<String>() {
+
+		@Override
+		public List<String> argv(final String item) {
+			return CommandLine.split(item);
+		}
+	};
+
+	/**
+	 * A received item and, once parsed, its outcome.
+	 */
+	private static final class Slot<T> {
+
+		private final T item;
+
+		private DocoptOutcome outcome = null;
+
+		public Slot(final T item) {
+			this.item = item;
+		}
+	}
+
+	/**
+	 * Creates a processor that parses lists of command line arguments, as
+	 * passed to {@link Docopt#parse(List)}.
+	 *
+	 * @param docopt
+	 *            the parser
+	 * @param executor
+	 *            the executor to parse on
+	 * @param parallelism
+	 *            the maximum number of batches parsed at the same time
+	 * @param batchSize
+	 *            the maximum number of command lines in a batch
+	 * @return a new processor
+	 * @throws IllegalArgumentException
+	 *             if {@code parallelism} or {@code batchSize} is less than
+	 *             {@code 1}
+	 */
+	public static DocoptProcessor<List<String>> forArgv(final Docopt docopt,
+			final Executor executor, final int parallelism,
+			final int batchSize) {
+		return new DocoptProcessor<List<String>>(docopt, ARGV, executor,
+				parallelism, batchSize);
+	}
+
+	/**
+	 * Creates a processor that parses command lines, which are split into
+	 * arguments the way a POSIX shell does, without expansions.
+	 *
+	 * @param docopt
+	 *            the parser
+	 * @param executor
+	 *            the executor to parse on
+	 * @param parallelism
+	 *            the maximum number of batches parsed at the same time
+	 * @param batchSize
+	 *            the maximum number of command lines in a batch
+	 * @return a new processor
+	 * @throws IllegalArgumentException
+	 *             if {@code parallelism} or {@code batchSize} is less than
+	 *             {@code 1}
+	 */
+	public static DocoptProcessor<String> forCommandLines(final Docopt docopt,
+			final Executor executor, final int parallelism,
+			final int batchSize) {
+		return new DocoptProcessor<String>(docopt, COMMAND_LINE, executor,
+				parallelism, batchSize);
+	}
+
+	private final Docopt docopt;
+
+	private final Converter<T> converter;
+
+	private final Executor executor;
+
+	private final int parallelism;
+
+	private final int batchSize;
+
+	private final Subscription subscription = new Subscription() {
+
+		@Override
+		public void request(final long n) {
+			synchronized (DocoptProcessor.this) {
+				if (n <= 0) {
+					fail(new IllegalArgumentException("n <= 0"));
+				}
+				else {
+					demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+				}
+			}
+
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			final Subscription u;
+
+			synchronized (DocoptProcessor.this) {
+				terminated = true;
+				order.clear();
+				pending.clear();
+				u = upstream;
+			}
+
+			if (u != null) {
+				u.cancel();
+			}
+		}
+	};
+
+	// The following are guarded by this object.
+
+	private Subscription upstream = null;
+
+	private Subscriber<? super DocoptOutcome> downstream = null;
+
+	/**
+	 * Whether {@code onSubscribe} of the downstream subscriber has returned.
+	 */
+	private boolean subscribed = false;
+
+	/**
+	 * The number of outcomes requested by the downstream subscriber.
+	 */
+	private long demand = 0;
+
+	/**
+	 * The number of items requested from upstream and not yet received.
+	 */
+	private long outstanding = 0;
+
+	/**
+	 * The received items that have not been published, in order.
+	 */
+	private final LinkedList<Slot<T>> order = new LinkedList<Slot<T>>();
+
+	/**
+	 * The received items that have not been passed to the executor, in
+	 * order.
+	 */
+	private final LinkedList<Slot<T>> pending = new LinkedList<Slot<T>>();
+
+	private int inFlight = 0;
+
+	private boolean upstreamDone = false;
+
+	private Throwable error = null;
+
+	/**
+	 * Whether {@code onComplete} or {@code onError} has been called on the
+	 * downstream subscriber, or it has cancelled.
+	 */
+	private boolean terminated = false;
+
+	private boolean draining = false;
+
+	private boolean missed = false;
+
+	private DocoptProcessor(final Docopt docopt, final Converter<T> converter,
+			final Executor executor, final int parallelism,
+			final int batchSize) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism < 1");
+		}
+
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize < 1");
+		}
+
+		this.docopt = docopt;
+		this.converter = converter;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super DocoptOutcome> subscriber) {
+		synchronized (this) {
+			if (downstream != null) {
+				subscriber.onSubscribe(new Subscription() {
+
+					@Override
+					public void request(final long n) {
+						// Nothing to do.
+					}
+
+					@Override
+					public void cancel() {
+						// Nothing to do.
+					}
+				});
+				subscriber.onError(new IllegalStateException(
+						"Only one subscriber is supported"));
+				return;
+			}
+
+			downstream = subscriber;
+		}
+
+		subscriber.onSubscribe(subscription);
+
+		synchronized (this) {
+			subscribed = true;
+		}
+
+		drain();
+	}
+
+	@Override
+	public void onSubscribe(final Subscription subscription) {
+		final boolean accepted;
+
+		synchronized (this) {
+			accepted = (upstream == null && !terminated);
+
+			if (accepted) {
+				upstream = subscription;
+			}
+		}
+
+		if (!accepted) {
+			subscription.cancel();
+			return;
+		}
+
+		drain();
+	}
+
+	@Override
+	public void onNext(final T item) {
+		if (item == null) {
+			throw new NullPointerException("item");
+		}
+
+		synchronized (this) {
+			if (terminated) {
+				return;
+			}
+
+			final Slot<T> slot = new Slot<T>(item);
+			order.add(slot);
+			pending.add(slot);
+			outstanding--;
+		}
+
+		drain();
+	}
+
+	@Override
+	public void onError(final Throwable throwable) {
+		synchronized (this) {
+			upstreamDone = true;
+			fail(throwable);
+		}
+
+		drain();
+	}
+
+	@Override
+	public void onComplete() {
+		synchronized (this) {
+			upstreamDone = true;
+		}
+
+		drain();
+	}
+
+	/**
+	 * Records the first error, which is passed downstream instead of any
+	 * outcomes not yet published.
+	 */
+	private void fail(final Throwable throwable) {
+		if (error == null) {
+			error = throwable;
+		}
+	}
+
+	private void run(final List<Slot<T>> batch) {
+		for (final Slot<T> slot : batch) {
+			DocoptOutcome outcome = null;
+			RuntimeException e = null;
+
+			try {
+				outcome = docopt.outcome(converter.argv(slot.item));
+			}
+			catch (final RuntimeException u) {
+				e = u;
+			}
+
+			synchronized (this) {
+				if (e != null) {
+					fail(e);
+				}
+
+				slot.outcome = outcome;
+			}
+		}
+
+		synchronized (this) {
+			inFlight--;
+		}
+
+		drain();
+	}
+
+	/**
+	 * Publishes the outcomes that are ready and requested, starts batches and
+	 * requests items from upstream. Only one thread drains at a time, and no
+	 * lock is held while calling the subscriber, the upstream subscription or
+	 * the executor.
+	 */
+	private void drain() {
+		synchronized (this) {
+			if (draining) {
+				missed = true;
+				return;
+			}
+
+			draining = true;
+		}
+
+		for (;;) {
+			final List<DocoptOutcome> outcomes = new ArrayList<DocoptOutcome>();
+			final List<List<Slot<T>>> batches = new ArrayList<List<Slot<T>>>();
+			final Subscriber<? super DocoptOutcome> subscriber;
+			final Subscription cancel;
+			Subscription request = null;
+			long n = 0;
+			Throwable error = null;
+			boolean complete = false;
+
+			synchronized (this) {
+				missed = false;
+
+				if (terminated || !subscribed) {
+					draining = false;
+					return;
+				}
+
+				subscriber = downstream;
+
+				if (this.error != null) {
+					terminated = true;
+					error = this.error;
+					order.clear();
+					pending.clear();
+				}
+				else {
+					while (demand > 0 && !order.isEmpty()
+							&& order.getFirst().outcome != null) {
+						outcomes.add(order.removeFirst().outcome);
+
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					}
+
+					while (inFlight < parallelism && !pending.isEmpty()) {
+						final List<Slot<T>> batch = new ArrayList<Slot<T>>();
+
+						while (batch.size() < batchSize && !pending.isEmpty()) {
+							batch.add(pending.removeFirst());
+						}
+
+						batches.add(batch);
+						inFlight++;
+					}
+
+					final long capacity = (long) parallelism * batchSize;
+
+					if (!upstreamDone && upstream != null
+							&& order.size() + outstanding < capacity) {
+						n = capacity - order.size() - outstanding;
+						outstanding += n;
+						request = upstream;
+					}
+
+					if (upstreamDone && order.isEmpty()) {
+						terminated = true;
+						complete = true;
+					}
+				}
+
+				cancel = (error != null && !upstreamDone) ? upstream : null;
+			}
+
+			for (final DocoptOutcome outcome : outcomes) {
+				subscriber.onNext(outcome);
+			}
+
+			for (final List<Slot<T>> batch : batches) {
+				try {
+					executor.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							DocoptProcessor.this.run(batch);
+						}
+					});
+				}
+				catch (final RejectedExecutionException e) {
+					synchronized (this) {
+						inFlight--;
+						fail(e);
+						missed = true;
+					}
+				}
+			}
+
+			if (request != null) {
+				request.request(n);
+			}
+
+			if (cancel != null) {
+				cancel.cancel();
+			}
+
+			if (error != null) {
+				subscriber.onError(error);
+			}
+			else if (complete) {
+				subscriber.onComplete();
+			}
+
+			synchronized (this) {
+				if (!missed) {
+					draining = false;
+					return;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// @formatter:off
+/**
+ * A collection of parsers, each registered under a command of one or more
+ * words, e.g&#46; {@code "deploy"} or {@code "remote add"}. A command line is
+ * dispatched to the parser registered under the longest command that its
+ * leading words match; the remaining words are parsed by that parser.
+ * <p>
+ * Commands are kept in a trie with one node per word. Lookups never lock, so
+ * any number of threads can dispatch and parse concurrently while parsers are
+ * registered and unregistered.
+ *
+ * <pre>
+ * DocoptRegistry registry = new DocoptRegistry();
+ * registry.register("deploy", new Docopt(DEPLOY_DOC).withExit(false));
+ * registry.register("remote add", new Docopt(REMOTE_ADD_DOC).withExit(false));
+ *
+ * // Parses ["origin", "https://example.org/"] with the second parser.
+ * registry.parse("remote", "add", "origin", "https://example.org/");
+ * </pre>
+ */
+// @formatter:on
+public final class DocoptRegistry {
+
+	/**
+	 * The result of {@link DocoptRegistry#dispatch}: a parser and the part of
+	 * the command line that it should parse.
+	 */
+	public static final class Dispatch {
+
+		private final List<String> command;
+
+		private final Docopt docopt;
+
+		private final List<String> argv;
+
+		Dispatch(final List<String> command, final Docopt docopt,
+				final List<String> argv) {
+			this.command = command;
+			this.docopt = docopt;
+			this.argv = argv;
+		}
+
+		/**
+		 * Returns the words of the command that was matched.
+		 *
+		 * @return the words of the command
+		 */
+		public List<String> getCommand() {
+			return command;
+		}
+
+		/**
+		 * Returns the parser registered under the command.
+		 *
+		 * @return the parser
+		 */
+		public Docopt getDocopt() {
+			return docopt;
+		}
+
+		/**
+		 * Returns the command line without the words of the command.
+		 *
+		 * @return the arguments to parse
+		 */
+		public List<String> getArgv() {
+			return argv;
+		}
+
+		/**
+		 * Parses the arguments with the parser. Equivalent to
+		 * {@code getDocopt().parse(getArgv())}.
+		 *
+		 * @return the result of {@link Docopt#parse(List)}
+		 * @throws DocoptExitException
+		 *             if the application should exit and JVM termination has
+		 *             been disabled via {@link Docopt#withExit}
+		 */
+		public Map<String, Object> parse() throws DocoptExitException {
+			return docopt.parse(argv);
+		}
+	}
+
+	/**
+	 * A node of the trie. Children are only added and removed while holding
+	 * the lock of the registry; readers see them through the concurrent map.
+	 */
+	private static final class Node {
+
+		private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+		private volatile Docopt docopt = null;
+	}
+
+	private final Node root = new Node();
+
+	private static String[] words(final String command) {
+		final String[] u = command.trim().split("\\s+");
+
+		if (u[0].isEmpty()) {
+			throw new IllegalArgumentException("command is empty");
+		}
+
+		return u;
+	}
+
+	/**
+	 * Registers {@code docopt} under {@code command}, replacing any parser
+	 * registered under the same command. Parses in progress are not affected.
+	 *
+	 * @param command
+	 *            one or more words separated by whitespace
+	 * @param docopt
+	 *            the parser for the command
+	 * @return the parser previously registered under {@code command}, or
+	 *         {@code null} if there was none
+	 * @throws IllegalArgumentException
+	 *             if {@code command} has no words
+	 * @throws NullPointerException
+	 *             if {@code docopt} is {@code null}
+	 */
+	public synchronized Docopt register(final String command,
+			final Docopt docopt) {
+		if (docopt == null) {
+			throw new NullPointerException("docopt");
+		}
+
+		Node node = root;
+
+		for (final String word : words(command)) {
+			Node child = node.children.get(word);
+
+			if (child == null) {
+				child = new Node();
+				node.children.put(word, child);
+			}
+
+			node = child;
+		}
+
+		final Docopt u = node.docopt;
+		node.docopt = docopt;
+		return u;
+	}
+
+	/**
+	 * Removes the parser registered under {@code command}. Parses in progress
+	 * are not affected.
+	 *
+	 * @param command
+	 *            one or more words separated by whitespace
+	 * @return the parser that was registered under {@code command}, or
+	 *         {@code null} if there was none
+	 * @throws IllegalArgumentException
+	 *             if {@code command} has no words
+	 */
+	public synchronized Docopt unregister(final String command) {
+		final String[] words = words(command);
+		final Node[] path = new Node[words.length + 1];
+
+		path[0] = root;
+
+		for (int i = 0; i < words.length; i++) {
+			path[i + 1] = path[i].children.get(words[i]);
+
+			if (path[i + 1] == null) {
+				return null;
+			}
+		}
+
+		final Docopt u = path[words.length].docopt;
+		path[words.length].docopt = null;
+
+		// Prune nodes that no longer lead to a parser. A concurrent lookup
+		// that already reached such a node simply finds no parser there.
+		for (int i = words.length; i > 0; i--) {
+			if (path[i].docopt != null || !path[i].children.isEmpty()) {
+				break;
+			}
+
+			path[i - 1].children.remove(words[i - 1]);
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the parser registered under exactly {@code command}.
+	 *
+	 * @param command
+	 *            one or more words separated by whitespace
+	 * @return the parser, or {@code null} if there is none
+	 * @throws IllegalArgumentException
+	 *             if {@code command} has no words
+	 */
+	public Docopt get(final String command) {
+		Node node = root;
+
+		for (final String word : words(command)) {
+			node = node.children.get(word);
+
+			if (node == null) {
+				return null;
+			}
+		}
+
+		return node.docopt;
+	}
+
+	/**
+	 * Finds the parser registered under the longest command that matches the
+	 * leading words of {@code argv}.
+	 *
+	 * @param argv
+	 *            the command line, starting with the words of the command
+	 * @return the parser and the rest of {@code argv}, or {@code null} if no
+	 *         registered command matches
+	 */
+	public Dispatch dispatch(final List<String> argv) {
+		Node node = root;
+		Docopt docopt = null;
+		int length = 0;
+
+		for (int i = 0; i < argv.size(); i++) {
+			node = node.children.get(argv.get(i));
+
+			if (node == null) {
+				break;
+			}
+
+			// Read the volatile field once, as it may be cleared concurrently.
+			final Docopt u = node.docopt;
+
+			if (u != null) {
+				docopt = u;
+				length = i + 1;
+			}
+		}
+
+		if (docopt == null) {
+			return null;
+		}
+
+		return new Dispatch(argv.subList(0, length), docopt, argv.subList(
+				length, argv.size()));
+	}
+
+	/**
+	 * Finds the parser registered under the longest command that matches the
+	 * leading words of {@code argv}.
+	 *
+	 * @param argv
+	 *            the command line, starting with the words of the command
+	 * @return the parser and the rest of {@code argv}, or {@code null} if no
+	 *         registered command matches
+	 */
+	public Dispatch dispatch(final String... argv) {
+		return dispatch(Arrays.asList(argv));
+	}
+
+	/**
+	 * Parses the rest of {@code argv} with the parser registered under the
+	 * longest command that matches its leading words.
+	 *
+	 * @param argv
+	 *            the command line, starting with the words of the command
+	 * @return the result of {@link Docopt#parse(List)}
+	 * @throws DocoptExitException
+	 *             if no registered command matches, or if the application
+	 *             should exit and JVM termination has been disabled via
+	 *             {@link Docopt#withExit}
+	 */
+	public Map<String, Object> parse(final List<String> argv)
+			throws DocoptExitException {
+		final Dispatch dispatch = dispatch(argv);
+
+		if (dispatch == null) {
+			throw new DocoptExitException(1, "Unknown command: " + argv,
+					false);
+		}
+
+		return dispatch.parse();
+	}
+
+	/**
+	 * Parses the rest of {@code argv} with the parser registered under the
+	 * longest command that matches its leading words.
+	 *
+	 * @param argv
+	 *            the command line, starting with the words of the command
+	 * @return the result of {@link Docopt#parse(List)}
+	 * @throws DocoptExitException
+	 *             if no registered command matches, or if the application
+	 *             should exit and JVM termination has been disabled via
+	 *             {@link Docopt#withExit}
+	 */
+	public Map<String, Object> parse(final String... argv) {
+		return parse(Arrays.asList(argv));
+	}
+}
@@ -0,0 +1,250 @@
+package org.docopt;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A reusable holder for the result of {@link Docopt#parseInto}.
+ * <p>
+ * A holder is created by {@link Docopt#newResult} and has one entry for every
+ * command-line element of that parser. Each call to {@code parseInto}
+ * overwrites the values of the previous call in place, so a single holder can
+ * be used for any number of parses without allocating a new {@code Map}. The
+ * lists of repeated elements are owned by the holder and are refilled in place
+ * as well.
+ * <p>
+ * The holder also keeps the leaves that command lines are read into. Once
+ * enough of them have been created, a parse of a command line of fewer than 64
+ * elements, whose options are all described and whose option arguments are
+ * separate arguments, allocates nothing, unless memoization, matching limits,
+ * response files or adaptive ordering are enabled. Other command lines are
+ * parsed like {@link Docopt#parse} does and only the result is saved.
+ * <p>
+ * The holder cannot be modified through the {@code Map} interface and is not
+ * safe for use by multiple threads.
+ *
+ * @see Docopt#newResult
+ * @see Docopt#parseInto
+ */
+public final class DocoptResult extends AbstractMap<String, Object> {
+
+	private final Docopt owner;
+
+	private final Grammar grammar;
+
+	private final Object[] values;
+
+	/**
+	 * The lists owned by this holder, by position in the leaf table, or
+	 * {@code null} for the leaves whose default is not a list.
+	 */
+	private final List<List<Object>> lists;
+
+	/**
+	 * Whether each leaf has been recorded by the current parse.
+	 */
+	private final boolean[] recorded;
+
+	private final ArgvReader reader;
+
+	private final Set<Entry<String, Object>> entrySet = new AbstractSet<Entry<String, Object>>() {
+
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return new Iterator<Entry<String, Object>>() {
+
+				private int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i < values.length;
+				}
+
+				@Override
+				public Entry<String, Object> next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+
+					final Entry<String, Object> e = new SimpleImmutableEntry<String, Object>(
+							grammar.getName(i), values[i]);
+					i++;
+					return e;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	};
+
+	DocoptResult(final Docopt owner, final Grammar grammar) {
+		this.owner = owner;
+		this.grammar = grammar;
+		this.values = new Object[grammar.size()];
+		this.lists = new ArrayList<List<Object>>(values.length);
+		this.recorded = new boolean[values.length];
+		this.reader = new ArgvReader(grammar.getOptions());
+
+		for (int i = 0; i < values.length; i++) {
+			lists.add((grammar.getDefault(i) instanceof List) ? new ArrayList<Object>()
+					: null);
+		}
+
+		reset();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return entrySet;
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return grammar.indexOf(key) != -1;
+	}
+
+	@Override
+	public Object get(final Object key) {
+		final int i = grammar.indexOf(key);
+		return (i == -1) ? null : values[i];
+	}
+
+	Docopt getOwner() {
+		return owner;
+	}
+
+	Grammar getGrammar() {
+		return grammar;
+	}
+
+	ArgvReader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Replaces the contents of this holder with the defaults of the grammar,
+	 * refilling the lists it owns.
+	 */
+	void reset() {
+		for (int i = 0; i < values.length; i++) {
+			final List<Object> list = lists.get(i);
+
+			if (list == null) {
+				values[i] = grammar.getDefault(i);
+			}
+			else {
+				list.clear();
+				addAll(list, (List<?>) grammar.getDefault(i));
+				values[i] = list;
+			}
+
+			recorded[i] = false;
+		}
+	}
+
+	/**
+	 * Replaces the contents of this holder with the defaults of the grammar
+	 * overwritten by the {@code collected} leaves.
+	 */
+	void fill(final List<LeafPattern> collected) {
+		reset();
+
+		for (int k = 0; k < collected.size(); k++) {
+			final LeafPattern p = collected.get(k);
+			final int i = grammar.indexOf(p.getName());
+
+			if (i == -1) {
+				throw new IllegalStateException();
+			}
+
+			final Object value = p.getValue();
+			final List<Object> list = lists.get(i);
+
+			if (list != null && value instanceof List) {
+				list.clear();
+				addAll(list, (List<?>) value);
+				values[i] = list;
+			}
+			else {
+				values[i] = value;
+			}
+		}
+	}
+
+	/**
+	 * Stores the value of {@code match}, an element of the command line that
+	 * {@code pattern} matched, like {@link LeafPattern#match} collects it:
+	 * counts and lists accumulate, and other values are replaced.
+	 */
+	void record(final LeafPattern pattern, final LeafPattern match) {
+		final int i = grammar.indexOf(pattern.getName());
+
+		if (i == -1) {
+			throw new IllegalStateException();
+		}
+
+		// A command is given by its name, and collected as true.
+		final Object value = (pattern.getClass() == Command.class) ? Boolean.TRUE
+				: match.getValue();
+		final Object current = values[i];
+		final List<Object> list = lists.get(i);
+
+		if (pattern.getValue() instanceof Integer) {
+			if (!recorded[i]) {
+				values[i] = 1;
+			}
+			else if (current instanceof Integer) {
+				values[i] = (Integer) current + 1;
+			}
+		}
+		else if (pattern.getValue() instanceof List && list != null) {
+			if (!recorded[i]) {
+				list.clear();
+				values[i] = list;
+			}
+			else if (current != list) {
+				return;
+			}
+
+			if (value instanceof List) {
+				addAll(list, (List<?>) value);
+			}
+			else {
+				list.add(value);
+			}
+		}
+		else {
+			values[i] = value;
+		}
+
+		recorded[i] = true;
+	}
+
+	/**
+	 * Adds the elements of {@code values} to {@code list} without the copy
+	 * that {@link List#addAll} makes.
+	 */
+	private static void addAll(final List<Object> list, final List<?> values) {
+		for (int i = 0; i < values.size(); i++) {
+			list.add(values.get(i));
+		}
+	}
+}
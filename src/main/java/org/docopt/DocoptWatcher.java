@@ -0,0 +1,282 @@
+package org.docopt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// @formatter:off
+/**
+ * Holds a parser for a help message stored in a file and replaces it whenever
+ * the file changes, so that the command-line interface of a long-running
+ * application can be changed without restarting it.
+ * <p>
+ * The file is checked by {@link #check}, which is called periodically once
+ * {@link #start} has been called. Each check reads the file and compares its
+ * contents with the help message in use, so that changes are found whatever
+ * happens to the modification time and length of the file. A file that is
+ * being written may be read in part, so a change is only taken once two
+ * consecutive checks read the same contents. A new parser is then
+ * constructed and published by a single atomic update: parses in progress
+ * finish with the old parser, and every call to {@link #get} or
+ * {@link #parse} that starts afterwards uses the new one. If the new help
+ * message cannot be read or is malformed, the old parser is kept and the
+ * error is passed to the {@link Listener}.
+ *
+ * <pre>
+ * DocoptWatcher watcher = new DocoptWatcher(file, charset, new DocoptWatcher.Listener() {
+ *
+ *   public Docopt configure(Docopt docopt) {
+ *     return docopt.withExit(false);
+ *   }
+ *
+ *   public void failed(File file, Throwable cause) {
+ *     log.warn("Keeping the previous help message of " + file, cause);
+ *   }
+ * }).start(executor, 1, TimeUnit.SECONDS);
+ *
+ * Map&lt;String, Object&gt; opts = watcher.parse(args);
+ * </pre>
+ */
+// @formatter:on
+public final class DocoptWatcher {
+
+	/**
+	 * Receives the parsers constructed by a {@link DocoptWatcher} and the
+	 * errors that prevented their construction. The methods are called by the
+	 * thread that calls {@link DocoptWatcher#check}, one at a time.
+	 */
+	public interface Listener {
+
+		/**
+		 * Configures a parser that has just been constructed from the file,
+		 * before it is published. This is the place to call the {@code with}
+		 * methods of {@link Docopt}, which must not be called once the parser
+		 * is in use.
+		 *
+		 * @param docopt
+		 *            the new parser
+		 * @return the parser to publish, usually {@code docopt}
+		 */
+		Docopt configure(Docopt docopt);
+
+		/**
+		 * Called when the file has changed but a parser could not be
+		 * constructed from it. The previous parser remains in use.
+		 *
+		 * @param file
+		 *            the file
+		 * @param cause
+		 *            the error reading the file or the error in the help
+		 *            message
+		 */
+		void failed(File file, Throwable cause);
+	}
+
+	private final File file;
+
+	private final Charset charset;
+
+	private final Listener listener;
+
+	private final AtomicReference<Docopt> docopt = new AtomicReference<Docopt>();
+
+	// The following are guarded by this object.
+
+	/**
+	 * The help message last loaded, whether or not a parser could be
+	 * constructed from it.
+	 */
+	private String loaded;
+
+	/**
+	 * The help message read by the previous check, if it differed from
+	 * {@link #loaded}, or {@code null}.
+	 */
+	private String pending = null;
+
+	/**
+	 * Whether the previous check could not read the file, so that the error
+	 * is reported only once.
+	 */
+	private boolean unreadable = false;
+
+	private ScheduledFuture<?> future = null;
+
+	/**
+	 * Constructs a parser from the help message in {@code file}.
+	 *
+	 * @param file
+	 *            the file containing a POSIX-style help message
+	 * @param charset
+	 *            the character encoding of the file
+	 * @param listener
+	 *            the listener for new parsers and errors
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws DocoptLanguageError
+	 *             if the help message is malformed
+	 */
+	public DocoptWatcher(final File file, final Charset charset,
+			final Listener listener) throws IOException {
+		this.file = file;
+		this.charset = charset;
+		this.listener = listener;
+
+		loaded = Docopt.read(file, charset);
+		docopt.set(load(loaded));
+	}
+
+	private Docopt load(final String doc) {
+		return listener.configure(new Docopt(doc));
+	}
+
+	/**
+	 * Replaces the parser if the contents of the file differ from the help
+	 * message in use, and are the same as at the previous check.
+	 *
+	 * @return {@code true} if the parser has been replaced
+	 */
+	public synchronized boolean check() {
+		final String doc;
+
+		try {
+			doc = Docopt.read(file, charset);
+		}
+		catch (final IOException e) {
+			if (!unreadable) {
+				unreadable = true;
+				listener.failed(file, e);
+			}
+
+			pending = null;
+			return false;
+		}
+
+		unreadable = false;
+
+		if (doc.equals(loaded)) {
+			pending = null;
+			return false;
+		}
+
+		if (!doc.equals(pending)) {
+			// Wait for the next check to read the same contents.
+			pending = doc;
+			return false;
+		}
+
+		// Remember the contents even if loading fails, so that the same
+		// error is reported only once.
+		loaded = doc;
+		pending = null;
+
+		final Docopt u;
+
+		try {
+			u = load(doc);
+		}
+		catch (final DocoptLanguageError e) {
+			listener.failed(file, e);
+			return false;
+		}
+
+		docopt.set(u);
+		return true;
+	}
+
+	/**
+	 * Calls {@link #check} every {@code period} on {@code executor} until
+	 * {@link #stop} is called. Unexpected exceptions thrown by the check are
+	 * passed to the listener and do not stop further checks.
+	 *
+	 * @param executor
+	 *            the executor to run the checks on
+	 * @param period
+	 *            the delay between the end of a check and the start of the
+	 *            next one
+	 * @param unit
+	 *            the unit of {@code period}
+	 * @return this object
+	 * @throws IllegalStateException
+	 *             if the checks have already been started
+	 */
+	public synchronized DocoptWatcher start(
+			final ScheduledExecutorService executor, final long period,
+			final TimeUnit unit) {
+		if (future != null) {
+			throw new IllegalStateException("already started");
+		}
+
+		future = executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					check();
+				}
+				catch (final RuntimeException e) {
+					listener.failed(file, e);
+				}
+			}
+		}, period, period, unit);
+
+		return this;
+	}
+
+	/**
+	 * Stops the periodic checks started by {@link #start}. The current parser
+	 * remains available.
+	 */
+	public synchronized void stop() {
+		if (future != null) {
+			future.cancel(false);
+			future = null;
+		}
+	}
+
+	/**
+	 * Returns the current parser. A caller that parses several times and
+	 * needs consistent results should call this once and keep the result.
+	 *
+	 * @return the current parser
+	 */
+	public Docopt get() {
+		return docopt.get();
+	}
+
+	/**
+	 * Parses {@code argv} with the current parser.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @return the result of {@link Docopt#parse(List)}
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link Docopt#withExit}
+	 */
+	public Map<String, Object> parse(final List<String> argv)
+			throws DocoptExitException {
+		return docopt.get().parse(argv);
+	}
+
+	/**
+	 * Parses {@code argv} with the current parser.
+	 *
+	 * @param argv
+	 *            the command line arguments
+	 * @return the result of {@link Docopt#parse(List)}
+	 * @throws DocoptExitException
+	 *             if the application should exit and JVM termination has been
+	 *             disabled via {@link Docopt#withExit}
+	 */
+	public Map<String, Object> parse(final String... argv) {
+		return parse(Arrays.asList(argv));
+	}
+}
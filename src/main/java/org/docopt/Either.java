@@ -2,48 +2,374 @@ package org.docopt;
 
 import static org.docopt.Python.list;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 final class Either extends BranchPattern {
 
+	/**
+	 * The number of batches per processor that the alternatives are split into
+	 * when they are matched concurrently.
+	 */
+	private static final int BATCHES_PER_PROCESSOR = 4;
+
 	public Either(final List<? extends Pattern> children) {
 		super(children);
 	}
 
 	@Override
 	protected MatchResult match(final List<LeafPattern> left,
-			List<LeafPattern> collected) {
+			List<LeafPattern> collected, final MatchContext context) {
 		if (collected == null) {
 			collected = list();
 		}
 
-		final List<MatchResult> outcomes = list();
+		final Executor executor = context.getExecutor(getChildren());
+		final int[] order = context.getOrder(this);
+
+		// >>> return min(outcomes, key=lambda outcome: len(outcome[1]))
+		final MatchResult outcome;
+
+		if (executor != null) {
+			outcome = match(left, collected, context, executor);
+		}
+		else if (order != null) {
+			outcome = match(order, left, collected, context);
+		}
+		else {
+			outcome = match(0, getChildren().size(), left, collected, context);
+		}
+
+		if (outcome != null) {
+			return outcome;
+		}
+
+		return new MatchResult(false, left, collected);
+	}
+
+	/**
+	 * Returns {@code outcome} if it is the first successful outcome or has
+	 * fewer elements left than {@code best}, like min, and otherwise
+	 * {@code best}.
+	 */
+	private static MatchResult min(final MatchResult best,
+			final MatchResult outcome) {
+		if (outcome == null) {
+			return best;
+		}
+
+		if (best == null
+				|| outcome.getLeft().size() < best.getLeft().size()) {
+			return outcome;
+		}
+
+		return best;
+	}
+
+	@Override
+	protected long validate(final List<LeafPattern> argv, final long left) {
+		final List<Pattern> children = getChildren();
+		long u = NO_MATCH;
+
+		// The first of the outcomes with the fewest elements left, like min.
+		for (int i = 0; i < children.size(); i++) {
+			final long l = children.get(i).validate(argv, left);
+
+			if (l != NO_MATCH
+					&& (u == NO_MATCH || Long.bitCount(l) < Long.bitCount(u))) {
+				u = l;
+			}
+		}
+
+		return u;
+	}
+
+	@Override
+	protected long record(final List<LeafPattern> argv, final long left,
+			final DocoptResult result) {
+		return getChildren().get(best(argv, left)).record(argv, left, result);
+	}
+
+	/**
+	 * Returns the position of the child whose outcome {@link #validate}
+	 * chooses, or {@code -1} if none matches.
+	 */
+	private int best(final List<LeafPattern> argv, final long left) {
+		final List<Pattern> children = getChildren();
+		int u = -1;
+		long best = NO_MATCH;
+
+		for (int i = 0; i < children.size(); i++) {
+			final long l = children.get(i).validate(argv, left);
+
+			if (l != NO_MATCH
+					&& (u == -1 || Long.bitCount(l) < Long.bitCount(best))) {
+				u = i;
+				best = l;
+			}
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the first of the successful outcomes of matching each child
+	 * from {@code first} to {@code last}, exclusive, with the fewest elements
+	 * left, or {@code null} if there is none. The outcomes are compared as
+	 * they are found rather than collected. The children that
+	 * {@code context} knows cannot match are skipped.
+	 */
+	private MatchResult match(final int first, final int last,
+			final List<LeafPattern> left, final List<LeafPattern> collected,
+			final MatchContext context) {
+		final List<Pattern> children = getChildren();
+		MatchResult u = null;
+
+		for (int i = first; i < last; i++) {
+			if (context.skips(this, i)) {
+				continue;
+			}
+
+			final MatchResult m = context.match(children.get(i), left,
+					collected);
 
-		for (final Pattern pattern : getChildren()) {
-			final MatchResult m = pattern.match(left, collected);
 			if (m.matched()) {
-				outcomes.add(m);
+				u = min(u, m);
 			}
 		}
 
-		if (!outcomes.isEmpty()) {
-			// >>> return min(outcomes, key=lambda outcome: len(outcome[1]))
-			{
-				return Collections.min(outcomes, new Comparator<MatchResult>() {
+		return u;
+	}
+
+	/**
+	 * Returns the same outcome as {@link #match(int, int, List, List,
+	 * MatchContext)}, trying the children in {@code order}. Once a child
+	 * leaves nothing, no child after it can have a better outcome, and a
+	 * child before it only if it too leaves nothing, so the others are
+	 * skipped, and those before it are only matched if
+	 * {@link MatchContext#mayConsumeAll} says they could.
+	 */
+	private MatchResult match(final int[] order, final List<LeafPattern> left,
+			final List<LeafPattern> collected, final MatchContext context) {
+		final List<Pattern> children = getChildren();
+		MatchResult u = null;
+		int best = -1;
 
-					@Override
-					public int compare(final MatchResult o1,
-							final MatchResult o2) {
-						final Integer s1 = Integer.valueOf(o1.getLeft().size());
-						final Integer s2 = Integer.valueOf(o2.getLeft().size());
-						return s1.compareTo(s2);
-					}
-				});
+		for (final int i : order) {
+			if (context.skips(this, i)) {
+				continue;
+			}
+
+			final boolean done = (u != null && u.getLeft().isEmpty());
+
+			if (done
+					&& (i > best || !context.mayConsumeAll(children.get(i),
+							left))) {
+				continue;
+			}
+
+			final MatchResult m = context.match(children.get(i), left,
+					collected);
+
+			if (!m.matched()) {
+				continue;
+			}
+
+			final int n = m.getLeft().size();
+
+			// The first of the outcomes with the fewest elements left.
+			if (u == null || n < u.getLeft().size()
+					|| (n == u.getLeft().size() && i < best)) {
+				u = m;
+				best = i;
 			}
 		}
 
-		return new MatchResult(false, left, collected);
+		if (u != null && u.getLeft().isEmpty()) {
+			context.won(best);
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the best outcome of matching each child, like
+	 * {@link #match(int, int, List, List, MatchContext)}, by matching batches
+	 * of children using {@code executor}. The calling thread matches the first
+	 * batch itself, and then any batch that the executor has not started yet,
+	 * so that the parse finishes even if the executor is busy or shut down.
+	 * The batches are in order, so the best of their outcomes, taken in order,
+	 * is the best of all.
+	 */
+	private MatchResult match(final List<LeafPattern> left,
+			final List<LeafPattern> collected, final MatchContext context,
+			final Executor executor) {
+		final List<Pattern> children = getChildren();
+
+		final int n = Math.min(children.size(), Runtime.getRuntime()
+				.availableProcessors() * BATCHES_PER_PROCESSOR);
+
+		final List<Batch> batches = list();
+
+		try {
+			for (int i = 1; i < n; i++) {
+				final Batch batch = new Batch(children.size() * i / n,
+						children.size() * (i + 1) / n, left, collected,
+						context.fork());
+
+				batches.add(batch);
+
+				try {
+					executor.execute(batch);
+				}
+				catch (final RejectedExecutionException e) {
+					// The calling thread runs it instead.
+				}
+			}
+
+			MatchResult outcome = match(0, children.size() / n, left,
+					collected, context.fork());
+
+			for (final Batch batch : batches) {
+				outcome = min(outcome, batch.get());
+			}
+
+			return outcome;
+		}
+		finally {
+			// If matching failed, e.g. because a limit was exceeded, the
+			// batches that are left must not match any more: they share the
+			// working storage of the context, which the next parse reuses.
+			for (final Batch batch : batches) {
+				batch.cancel();
+			}
+		}
+	}
+
+	/**
+	 * A batch of children that is matched by the first thread that runs it,
+	 * either a thread of the executor or the calling thread.
+	 */
+	private final class Batch implements Runnable {
+
+		private final int first;
+
+		private final int last;
+
+		private final List<LeafPattern> left;
+
+		private final List<LeafPattern> collected;
+
+		private final MatchContext context;
+
+		private boolean started = false;
+
+		private boolean done = false;
+
+		private MatchResult outcome = null;
+
+		private Throwable failure = null;
+
+		public Batch(final int first, final int last,
+				final List<LeafPattern> left, final List<LeafPattern> collected,
+				final MatchContext context) {
+			this.first = first;
+			this.last = last;
+			this.left = left;
+			this.collected = collected;
+			this.context = context;
+		}
+
+		/**
+		 * Matches the batch, unless it has already been started or cancelled.
+		 */
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (started) {
+					return;
+				}
+
+				started = true;
+			}
+
+			MatchResult u = null;
+			Throwable t = null;
+
+			try {
+				u = match(first, last, left, collected, context);
+			}
+			catch (final RuntimeException e) {
+				t = e;
+			}
+			catch (final Error e) {
+				t = e;
+			}
+
+			synchronized (this) {
+				outcome = u;
+				failure = t;
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Returns the outcome of the batch, matching it in the calling thread
+		 * if it has not been started, and otherwise waiting for it.
+		 */
+		public MatchResult get() {
+			run();
+
+			synchronized (this) {
+				await();
+
+				if (failure instanceof RuntimeException) {
+					throw (RuntimeException) failure;
+				}
+
+				if (failure instanceof Error) {
+					throw (Error) failure;
+				}
+
+				return outcome;
+			}
+		}
+
+		/**
+		 * Prevents the batch from being started, or waits for it to finish if
+		 * it has been.
+		 */
+		public synchronized void cancel() {
+			if (!started) {
+				started = true;
+				done = true;
+				return;
+			}
+
+			await();
+		}
+
+		/**
+		 * Waits for the batch to finish. Matching always terminates, so an
+		 * interrupt does not stop the wait, but is restored afterwards.
+		 */
+		private void await() {
+			boolean interrupted = false;
+
+			while (!done) {
+				try {
+					wait();
+				}
+				catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,479 @@
+package org.docopt;
+
+import static org.docopt.Python.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled form of a usage pattern: the fixed pattern tree, the option
+ * descriptions and a table of every leaf name with its default value.
+ * <p>
+ * A grammar is never modified after construction, so it may be shared by
+ * concurrent parses.
+ */
+final class Grammar {
+
+	private final List<Option> options;
+
+	private final Required pattern;
+
+	private final String[] names;
+
+	private final Object[] defaults;
+
+	private final Map<String, Integer> index;
+
+	/**
+	 * The positions in the leaf table of the defaults that are lists, which
+	 * must be copied for every result as the caller may modify them.
+	 */
+	private final int[] listDefaults;
+
+	/**
+	 * The usage lines, which are the alternatives of the top-level
+	 * {@link Either}, or {@code null} if there is only one.
+	 */
+	private final Either lines;
+
+	/**
+	 * The elements that each usage line cannot match without, as a set of
+	 * positions in the leaf table of its commands and options, plus
+	 * {@link #names}{@code .length} if it has a positional argument.
+	 */
+	private final long[][] requirements;
+
+	/**
+	 * The indices for suggestions, built when first needed.
+	 */
+	private volatile SuggestionIndex suggestionIndex = null;
+
+	/**
+	 * The long options and commands of a grammar, indexed for finding those
+	 * close to a misspelled word.
+	 */
+	private static final class SuggestionIndex {
+
+		private final Set<String> longOptions = new HashSet<String>();
+
+		private final BkTree longOptionIndex;
+
+		private final BkTree commandIndex;
+
+		public SuggestionIndex(final Grammar grammar) {
+			for (final Option o : grammar.options) {
+				if (o.getLong() != null) {
+					longOptions.add(o.getLong());
+				}
+			}
+
+			final Set<String> commands = new LinkedHashSet<String>();
+
+			for (final Pattern p : grammar.pattern.flat(Command.class)) {
+				commands.add(((LeafPattern) p).getName());
+			}
+
+			longOptionIndex = new BkTree(longOptions);
+			commandIndex = new BkTree(commands);
+		}
+	}
+
+	public Grammar(final List<Option> options, final Required pattern) {
+		this(options, pattern, false);
+	}
+
+	/**
+	 * @param compiled
+	 *            {@code true} if {@code pattern} is the pattern of an existing
+	 *            grammar, which has already been fixed and numbered
+	 */
+	private Grammar(final List<Option> options, final Required pattern,
+			final boolean compiled) {
+		this.options = options;
+		this.pattern = pattern;
+
+		if (!compiled) {
+			fix(options, pattern);
+		}
+
+		// >>> Dict((a.name, a.value) for a in pattern.flat())
+		{
+			final Map<String, Object> u = new LinkedHashMap<String, Object>();
+
+			for (final Pattern p : pattern.flat()) {
+				// TODO: Does flat always return LeafPattern objects?
+				if (!(p instanceof LeafPattern)) {
+					throw new IllegalStateException();
+				}
+
+				final LeafPattern lp = (LeafPattern) p;
+
+				u.put(lp.getName(), lp.getValue());
+			}
+
+			names = u.keySet().toArray(new String[u.size()]);
+			defaults = u.values().toArray();
+			index = new HashMap<String, Integer>();
+
+			int n = 0;
+
+			for (int i = 0; i < names.length; i++) {
+				index.put(names[i], i);
+
+				if (defaults[i] instanceof List) {
+					n++;
+				}
+			}
+
+			listDefaults = new int[n];
+
+			for (int i = 0, j = 0; i < names.length; i++) {
+				if (defaults[i] instanceof List) {
+					listDefaults[j++] = i;
+				}
+			}
+		}
+
+		// Several usage lines are parsed into Required(Either(...)).
+		{
+			final List<Pattern> children = pattern.getChildren();
+
+			if (children.size() == 1
+					&& children.get(0).getClass() == Either.class) {
+				lines = (Either) children.get(0);
+				requirements = new long[lines.getChildren().size()][];
+
+				for (int k = 0; k < requirements.length; k++) {
+					requirements[k] = requirements(lines.getChildren().get(k));
+				}
+			}
+			else {
+				lines = null;
+				requirements = null;
+			}
+		}
+
+		if (compiled) {
+			return;
+		}
+
+		// Leaves that count or collect values update what was collected
+		// before them, so only sub-patterns without such leaves can be
+		// memoized.
+		{
+			final Set<String> repeating = new HashSet<String>();
+
+			for (int i = 0; i < defaults.length; i++) {
+				if (defaults[i] instanceof Integer
+						|| defaults[i] instanceof List) {
+					repeating.add(names[i]);
+				}
+			}
+
+			number(pattern, repeating, new HashMap<String, Integer>());
+		}
+	}
+
+	/**
+	 * Returns the elements that {@code pattern} cannot match without, as a
+	 * set of positions like those of {@link #requirements}. Only commands,
+	 * options and positional arguments that are required by every way of
+	 * matching are included, so the set may be smaller than it could be, but
+	 * never larger.
+	 */
+	private long[] requirements(final Pattern pattern) {
+		final long[] u = new long[(names.length + 64) >>> 6];
+		final Class<?> type = pattern.getClass();
+
+		if (type == Command.class || type == Option.class) {
+			setBit(u, index.get(((LeafPattern) pattern).getName()));
+		}
+		else if (type == Argument.class) {
+			setBit(u, names.length);
+		}
+		else if (type == Required.class || type == OneOrMore.class) {
+			for (final Pattern child : ((BranchPattern) pattern).getChildren()) {
+				final long[] c = requirements(child);
+
+				for (int j = 0; j < u.length; j++) {
+					u[j] |= c[j];
+				}
+			}
+		}
+		else if (type == Either.class) {
+			// Only what every alternative requires.
+			Arrays.fill(u, -1L);
+
+			for (final Pattern child : ((BranchPattern) pattern).getChildren()) {
+				final long[] c = requirements(child);
+
+				for (int j = 0; j < u.length; j++) {
+					u[j] &= c[j];
+				}
+			}
+		}
+
+		// Optional elements and [options] require nothing.
+		return u;
+	}
+
+	private static void setBit(final long[] bits, final int i) {
+		bits[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * Returns the top-level {@link Either} of the usage lines, or
+	 * {@code null} if there is only one usage line.
+	 */
+	public Either getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the number of alternatives of {@link #getLines}, or {@code 0}
+	 * if there is only one usage line.
+	 */
+	public int getLineCount() {
+		return (lines == null) ? 0 : lines.getChildren().size();
+	}
+
+	/**
+	 * Returns the usage lines that cannot match {@code argv}, as a set of
+	 * positions among the alternatives of {@link #getLines}, because
+	 * {@code argv} lacks an element they require; or {@code null} if there
+	 * are none. The sets are built in buffers of {@code context}.
+	 */
+	public long[] skipped(final List<LeafPattern> argv,
+			final MatchContext context) {
+		if (lines == null) {
+			return null;
+		}
+
+		// What argv has, in a single pass. Finding more than it has is
+		// harmless, as it only skips fewer lines.
+		final long[] present = context.buffer(0, requirements[0].length);
+
+		for (final LeafPattern p : argv) {
+			final Integer i;
+
+			if (p.getClass() == Argument.class) {
+				setBit(present, names.length);
+				i = index.get(p.getValue());
+			}
+			else {
+				i = index.get(p.getName());
+			}
+
+			if (i != null) {
+				setBit(present, i);
+			}
+		}
+
+		long[] u = null;
+
+		for (int k = 0; k < requirements.length; k++) {
+			final long[] r = requirements[k];
+
+			for (int j = 0; j < r.length; j++) {
+				if ((r[j] & ~present[j]) != 0) {
+					if (u == null) {
+						u = context.buffer(1, (requirements.length + 63) >>> 6);
+					}
+
+					setBit(u, k);
+					break;
+				}
+			}
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns a grammar for the pattern and options of an existing grammar
+	 * without fixing the pattern again.
+	 */
+	public static Grammar compiled(final List<Option> options,
+			final Required pattern) {
+		return new Grammar(options, pattern, true);
+	}
+
+	/**
+	 * Fills the {@code [options]} shortcuts of {@code pattern} and fixes it.
+	 */
+	private static void fix(final List<Option> options, final Required pattern) {
+		fill(options, pattern);
+		pattern.fix();
+	}
+
+	/**
+	 * Fills the {@code [options]} shortcuts of {@code pattern} with the
+	 * options that it does not otherwise contain.
+	 */
+	static void fill(final List<Option> options, final Pattern pattern) {
+		final Set<Pattern> patternOptions = set(pattern.flat(Option.class));
+
+		for (final Pattern optionsShortcut : pattern
+				.flat(OptionsShortcut.class)) {
+			// @formatter:off
+			// >>> options_shortcut.children = list(set(doc_options) - pattern_options)
+			// @formatter:on
+			{
+				final List<Pattern> u = ((BranchPattern) optionsShortcut)
+						.getChildren();
+				u.clear();
+				u.addAll(set(options));
+				Pattern o = null;
+				for (final Iterator<Pattern> i = u.iterator(); i.hasNext();) {
+					o = i.next();
+					for (final Pattern x : patternOptions) {
+						if (o.equals(x)) {
+							i.remove();
+							// Make sure we don't try to remove the same option
+							// twice.
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives every memoizable branch of {@code pattern} the same id as the
+	 * structurally equal branches numbered before it.
+	 *
+	 * @return {@code true} if {@code pattern} is memoizable
+	 */
+	private static boolean number(final Pattern pattern,
+			final Set<String> repeating, final Map<String, Integer> ids) {
+		if (pattern instanceof LeafPattern) {
+			return !repeating.contains(((LeafPattern) pattern).getName());
+		}
+
+		boolean memoizable = true;
+
+		for (final Pattern child : ((BranchPattern) pattern).getChildren()) {
+			memoizable &= number(child, repeating, ids);
+		}
+
+		if (memoizable) {
+			// The string form of a pattern includes the type, name and value
+			// of every node, unlike hashCode, which is based on identity.
+			final String key = pattern.toString();
+			Integer id = ids.get(key);
+
+			if (id == null) {
+				id = ids.size();
+				ids.put(key, id);
+			}
+
+			pattern.setId(id);
+		}
+
+		return memoizable;
+	}
+
+	public List<Option> getOptions() {
+		return options;
+	}
+
+	public Required getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the number of distinct leaf names in the pattern.
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(final int i) {
+		return names[i];
+	}
+
+	public Object getDefault(final int i) {
+		return defaults[i];
+	}
+
+	/**
+	 * Returns the position of {@code name} in the leaf table, or {@code -1}
+	 * if the pattern has no such leaf.
+	 */
+	public int indexOf(final Object name) {
+		final Integer i = index.get(name);
+		return (i == null) ? -1 : i;
+	}
+
+	/**
+	 * Returns the number of defaults that are lists.
+	 */
+	public int listDefaults() {
+		return listDefaults.length;
+	}
+
+	/**
+	 * Returns the position in the leaf table of the {@code j}-th default that
+	 * is a list.
+	 */
+	public int getListDefault(final int j) {
+		return listDefaults[j];
+	}
+
+	/**
+	 * Returns a new copy of the default of the leaf at {@code i}, which is a
+	 * list.
+	 */
+	public List<Object> copyListDefault(final int i) {
+		return new ArrayList<Object>((List<?>) defaults[i]);
+	}
+
+	/**
+	 * Copies the default of every leaf into {@code values}, with a new copy
+	 * of every list.
+	 */
+	public void copyDefaults(final Object[] values) {
+		System.arraycopy(defaults, 0, values, 0, defaults.length);
+
+		for (final int i : listDefaults) {
+			values[i] = copyListDefault(i);
+		}
+	}
+
+	private SuggestionIndex suggestionIndex() {
+		SuggestionIndex u = suggestionIndex;
+
+		if (u == null) {
+			// Concurrent callers may build equal indices; either is kept.
+			u = new SuggestionIndex(this);
+			suggestionIndex = u;
+		}
+
+		return u;
+	}
+
+	/**
+	 * Determines if {@code name} is the long name of an option described by
+	 * the help message.
+	 */
+	public boolean isLongOption(final String name) {
+		return suggestionIndex().longOptions.contains(name);
+	}
+
+	public BkTree getLongOptionIndex() {
+		return suggestionIndex().longOptionIndex;
+	}
+
+	public BkTree getCommandIndex() {
+		return suggestionIndex().commandIndex;
+	}
+}
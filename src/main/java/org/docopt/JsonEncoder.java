@@ -0,0 +1,350 @@
+package org.docopt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the results of a parser as JSON objects, in the form of the expected
+ * outputs of the language-agnostic test cases, e.g.
+ * <code>{"--all": true, "&lt;name&gt;": ["10", "20"]}</code>.
+ * <p>
+ * The encoding of every name in the leaf table, including its quotes and the
+ * separator before the value, is computed once per parser, so writing the
+ * entries of a result in the order of the table mostly copies those
+ * encodings. Other names are encoded as they are written.
+ * <p>
+ * An encoder is not modified after construction, so it may be shared by
+ * concurrent writers.
+ */
+final class JsonEncoder {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * A destination of the encoded characters.
+	 */
+	private static abstract class Sink {
+
+		/**
+		 * Writes the encoded name at {@code i} in the leaf table.
+		 */
+		public abstract void key(int i) throws IOException;
+
+		public abstract void append(char c) throws IOException;
+
+		/**
+		 * Writes {@code s}, which needs no escaping.
+		 */
+		public abstract void append(String s) throws IOException;
+
+		/**
+		 * Writes the characters of {@code s} from {@code start} to
+		 * {@code end}, which need no escaping.
+		 */
+		public abstract void append(String s, int start, int end)
+				throws IOException;
+	}
+
+	private final class AppendableSink extends Sink {
+
+		private final Appendable out;
+
+		public AppendableSink(final Appendable out) {
+			this.out = out;
+		}
+
+		@Override
+		public void key(final int i) throws IOException {
+			out.append(keys[i]);
+		}
+
+		@Override
+		public void append(final char c) throws IOException {
+			out.append(c);
+		}
+
+		@Override
+		public void append(final String s) throws IOException {
+			out.append(s);
+		}
+
+		@Override
+		public void append(final String s, final int start, final int end)
+				throws IOException {
+			out.append(s, start, end);
+		}
+	}
+
+	/**
+	 * Encodes the characters as UTF-8 into a buffer, replacing unpaired
+	 * surrogates with {@code '?'} like {@link String#getBytes(Charset)}.
+	 */
+	private final class BufferSink extends Sink {
+
+		private final ByteBuffer out;
+
+		public BufferSink(final ByteBuffer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void key(final int i) {
+			out.put(keyBytes[i]);
+		}
+
+		@Override
+		public void append(final char c) {
+			out.put((byte) c);
+		}
+
+		@Override
+		public void append(final String s) {
+			append(s, 0, s.length());
+		}
+
+		@Override
+		public void append(final String s, final int start, final int end) {
+			for (int i = start; i < end; i++) {
+				final char c = s.charAt(i);
+
+				if (c < 0x80) {
+					out.put((byte) c);
+				}
+				else if (c < 0x800) {
+					out.put((byte) (0xc0 | (c >> 6)));
+					out.put((byte) (0x80 | (c & 0x3f)));
+				}
+				else if (c < Character.MIN_SURROGATE
+						|| c > Character.MAX_SURROGATE) {
+					out.put((byte) (0xe0 | (c >> 12)));
+					out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+					out.put((byte) (0x80 | (c & 0x3f)));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < end
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					final int p = Character.toCodePoint(c, s.charAt(++i));
+
+					out.put((byte) (0xf0 | (p >> 18)));
+					out.put((byte) (0x80 | ((p >> 12) & 0x3f)));
+					out.put((byte) (0x80 | ((p >> 6) & 0x3f)));
+					out.put((byte) (0x80 | (p & 0x3f)));
+				}
+				else {
+					out.put((byte) '?');
+				}
+			}
+		}
+	}
+
+	/**
+	 * The names of the leaf table, which are kept rather than the grammar so
+	 * that a compact grammar can still be released.
+	 */
+	private final String[] names;
+
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+	/**
+	 * The encoding of every name in the leaf table, e.g. {@code "--all": }.
+	 */
+	private final String[] keys;
+
+	/**
+	 * The UTF-8 bytes of {@link #keys}.
+	 */
+	private final byte[][] keyBytes;
+
+	public JsonEncoder(final Grammar grammar) {
+		names = new String[grammar.size()];
+		keys = new String[names.length];
+		keyBytes = new byte[keys.length][];
+
+		final StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < keys.length; i++) {
+			names[i] = grammar.getName(i);
+			index.put(names[i], i);
+			sb.setLength(0);
+
+			try {
+				string(names[i], new AppendableSink(sb));
+			}
+			catch (final IOException e) {
+				// A StringBuilder does not throw.
+				throw new IllegalStateException(e);
+			}
+
+			keys[i] = sb.append(": ").toString();
+			keyBytes[i] = keys[i].getBytes(UTF_8);
+		}
+	}
+
+	/**
+	 * Writes {@code result} to {@code out}.
+	 *
+	 * @throws IOException
+	 *             if {@code out} throws
+	 * @throws IllegalArgumentException
+	 *             if a value is not a {@code Boolean}, {@code Number},
+	 *             {@code String}, {@code List} of them, or {@code null}
+	 */
+	public void write(final Map<String, ?> result, final Appendable out)
+			throws IOException {
+		write(result, new AppendableSink(out));
+	}
+
+	/**
+	 * Writes {@code result} to {@code out} as UTF-8, starting at its position.
+	 *
+	 * @throws java.nio.BufferOverflowException
+	 *             if {@code out} is too small, in which case the contents of
+	 *             {@code out} after its position are undefined
+	 * @throws IllegalArgumentException
+	 *             if a value is not a {@code Boolean}, {@code Number},
+	 *             {@code String}, {@code List} of them, or {@code null}
+	 */
+	public void write(final Map<String, ?> result, final ByteBuffer out) {
+		try {
+			write(result, new BufferSink(out));
+		}
+		catch (final IOException e) {
+			// A ByteBuffer does not throw.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void write(final Map<String, ?> result, final Sink out)
+			throws IOException {
+		out.append('{');
+
+		// The position in the leaf table of the next name, if the entries
+		// are in the order of the table, as they are in a result.
+		int next = 0;
+
+		boolean first = true;
+
+		for (final Map.Entry<String, ?> e : result.entrySet()) {
+			if (!first) {
+				out.append(", ");
+			}
+
+			first = false;
+
+			final String name = e.getKey();
+			int i = next;
+
+			if (i == names.length || !names[i].equals(name)) {
+				final Integer j = index.get(name);
+				i = (j == null) ? -1 : j;
+			}
+
+			if (i >= 0) {
+				out.key(i);
+				next = i + 1;
+			}
+			else {
+				string(String.valueOf(name), out);
+				out.append(": ");
+			}
+
+			value(e.getValue(), out);
+		}
+
+		out.append('}');
+	}
+
+	private static void value(final Object value, final Sink out)
+			throws IOException {
+		if (value == null) {
+			out.append("null");
+		}
+		else if (value instanceof String) {
+			string((String) value, out);
+		}
+		else if (value instanceof Boolean || value instanceof Number) {
+			out.append(value.toString());
+		}
+		else if (value instanceof List) {
+			out.append('[');
+
+			boolean first = true;
+
+			for (final Object o : (List<?>) value) {
+				if (!first) {
+					out.append(", ");
+				}
+
+				first = false;
+
+				if (o instanceof List) {
+					throw new IllegalArgumentException("cannot encode " + value);
+				}
+
+				value(o, out);
+			}
+
+			out.append(']');
+		}
+		else {
+			throw new IllegalArgumentException("cannot encode " + value);
+		}
+	}
+
+	/**
+	 * Writes {@code s} as a JSON string, escaping quotes, backslashes and
+	 * control characters.
+	 */
+	private static void string(final String s, final Sink out)
+			throws IOException {
+		out.append('"');
+
+		int start = 0;
+
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+
+			out.append(s, start, i);
+			start = i + 1;
+			out.append('\\');
+
+			switch (c) {
+			case '"':
+			case '\\':
+				out.append(c);
+				break;
+			case '\b':
+				out.append('b');
+				break;
+			case '\f':
+				out.append('f');
+				break;
+			case '\n':
+				out.append('n');
+				break;
+			case '\r':
+				out.append('r');
+				break;
+			case '\t':
+				out.append('t');
+				break;
+			default:
+				out.append("u00");
+				out.append(HEX[c >> 4]);
+				out.append(HEX[c & 0xf]);
+			}
+		}
+
+		out.append(s, start, s.length());
+		out.append('"');
+	}
+}
@@ -6,6 +6,7 @@ import static org.docopt.Python.list;
 import static org.docopt.Python.plus;
 import static org.docopt.Python.repr;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,6 +16,13 @@ abstract class LeafPattern extends Pattern {
 
 	static class SingleMatchResult {
 
+		/**
+		 * The result of not finding a match, which is shared as it holds
+		 * nothing.
+		 */
+		public static final SingleMatchResult NONE = new SingleMatchResult(
+				null, null);
+
 		private final Integer position;
 
 		private final LeafPattern match;
@@ -72,7 +80,7 @@ abstract class LeafPattern extends Pattern {
 
 	@Override
 	protected MatchResult match(final List<LeafPattern> left,
-			List<LeafPattern> collected) {
+			List<LeafPattern> collected, final MatchContext context) {
 		// >>> collected = [] if collected is None else collected
 		if (collected == null) {
 			collected = list();
@@ -96,7 +104,7 @@ abstract class LeafPattern extends Pattern {
 
 		// >>> left_ = left[:pos] + left[pos + 1:]
 		{
-			left_ = list();
+			left_ = new ArrayList<LeafPattern>(left.size() - 1);
 			left_.addAll(left.subList(0, pos));
 
 			if ((pos + 1) < left.size()) {
@@ -104,16 +112,19 @@ abstract class LeafPattern extends Pattern {
 			}
 		}
 
-		List<LeafPattern> sameName;
+		// Leaves that are not collected are only consumed.
+		if (!context.collects(name)) {
+			return new MatchResult(true, left_, collected);
+		}
 
 		// >>> same_name = [a for a in collected if a.name == self.name]
-		{
-			sameName = list();
+		// Only the first is used, so it is found without building the list.
+		LeafPattern sameName = null;
 
-			for (final LeafPattern a : collected) {
-				if (name.equals(a.getName())) {
-					sameName.add(a);
-				}
+		for (final LeafPattern a : collected) {
+			if (name.equals(a.getName())) {
+				sameName = a;
+				break;
 			}
 		}
 
@@ -128,40 +139,85 @@ abstract class LeafPattern extends Pattern {
 				increment = (v instanceof String) ? list(v) : v;
 			}
 
-			if (sameName.isEmpty()) {
-				match.setValue(increment);
-				return new MatchResult(true, left_,
-						plus(collected, list(match)));
+			// The match and the collected elements may be shared with the
+			// outcomes of other alternatives (and, when matching in parallel,
+			// other threads), so they are replaced by updated copies instead of
+			// being modified.
+
+			if (sameName == null) {
+				// >>> match.value = increment
+				return new MatchResult(true, left_, plus(collected,
+						list(match.withValue(increment))));
 			}
 
 			// >>> same_name[0].value += increment
 			{
-				final LeafPattern p = sameName.get(0);
+				final LeafPattern p = sameName;
 				final Object v = p.getValue();
 
+				Object u;
+
 				if (v instanceof Integer) {
 					final Integer a = (Integer) v;
 					final Integer b = (Integer) increment;
-					p.setValue(a + b);
+					u = a + b;
 				}
 				else if (v instanceof List) {
 					@SuppressWarnings("unchecked")
-					final List<LeafPattern> a = (List<LeafPattern>) v;
+					final List<Object> a = (List<Object>) v;
 					@SuppressWarnings("unchecked")
-					final List<LeafPattern> b = (List<LeafPattern>) increment;
-					a.addAll(b);
+					final List<Object> b = (List<Object>) increment;
+					u = plus(a, b);
+				}
+				else {
+					return new MatchResult(true, left_, collected);
 				}
-			}
 
-			// TODO: Should collected be copied to a new list?
-			return new MatchResult(true, left_, collected);
+				final List<LeafPattern> c = list(collected);
+
+				for (int i = 0; i < c.size(); i++) {
+					if (c.get(i) == p) {
+						c.set(i, p.withValue(u));
+						break;
+					}
+				}
+
+				return new MatchResult(true, left_, c);
+			}
 		}
 
 		return new MatchResult(true, left_, plus(collected, list(match)));
 	}
 
+	@Override
+	protected final long validate(final List<LeafPattern> argv,
+			final long left) {
+		final int pos = singleMatch(argv, left);
+		return (pos == -1) ? NO_MATCH : left & ~(1L << pos);
+	}
+
+	@Override
+	protected final long record(final List<LeafPattern> argv,
+			final long left, final DocoptResult result) {
+		final int pos = singleMatch(argv, left);
+		result.record(this, argv.get(pos));
+		return left & ~(1L << pos);
+	}
+
 	protected abstract SingleMatchResult singleMatch(List<LeafPattern> left);
 
+	/**
+	 * Returns the position of the element of {@code argv} that
+	 * {@link #singleMatch(List)} would match if only the elements at the
+	 * positions in {@code left} were left, or {@code -1} if there is none.
+	 */
+	protected abstract int singleMatch(List<LeafPattern> argv, long left);
+
+	/**
+	 * Returns a copy of this pattern with a different value.
+	 */
+	protected abstract LeafPattern withValue(Object value);
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,352 @@
+package org.docopt;
+
+import static org.docopt.Python.list;
+
+import java.util.List;
+
+/**
+ * Splits help messages into sections, option descriptions and pattern tokens
+ * without regular expressions. Each method reads its input once and gives the
+ * same result as the regular expression of the Python implementation quoted
+ * in its comment.
+ */
+final class Lexer {
+
+	private static final String USAGE = "usage:";
+
+	private static final String OPTIONS = "options:";
+
+	private static final String DEFAULT = "[default: ";
+
+	private final List<String> usageSections = list();
+
+	private final List<String> optionSections = list();
+
+	/**
+	 * Finds the usage and option sections of {@code doc} in a single pass.
+	 */
+	public Lexer(final String doc) {
+		// @formatter:off
+		// >>> pattern = re.compile('^([^\n]*' + name + '[^\n]*\n?(?:[ \t].*?(?:\n|$))*)',
+		// >>>                      re.IGNORECASE | re.MULTILINE)
+		// >>> return [s.strip() for s in pattern.findall(source)]
+		// @formatter:on
+		// A section is a line containing its name and the lines after it that
+		// start with a space or a tab.
+		int usage = -1;
+		int options = -1;
+
+		for (int start = 0; start < doc.length();) {
+			int end = doc.indexOf('\n', start);
+			end = (end == -1) ? doc.length() : end;
+
+			final char c = doc.charAt(start);
+			final boolean indented = (c == ' ' || c == '\t');
+
+			if (usage == -1 || !indented) {
+				if (usage != -1) {
+					usageSections.add(doc.substring(usage, start).trim());
+				}
+
+				usage = contains(doc, start, end, USAGE) ? start : -1;
+			}
+
+			if (options == -1 || !indented) {
+				if (options != -1) {
+					optionSections.add(doc.substring(options, start).trim());
+				}
+
+				options = contains(doc, start, end, OPTIONS) ? start : -1;
+			}
+
+			start = end + 1;
+		}
+
+		if (usage != -1) {
+			usageSections.add(doc.substring(usage).trim());
+		}
+
+		if (options != -1) {
+			optionSections.add(doc.substring(options).trim());
+		}
+	}
+
+	public List<String> getUsageSections() {
+		return usageSections;
+	}
+
+	public List<String> getOptionSections() {
+		return optionSections;
+	}
+
+	/**
+	 * Splits an option section, without its header, into option
+	 * descriptions, each starting with a line whose first non-space
+	 * character is a hyphen followed by a non-whitespace character.
+	 */
+	public static List<String> optionDescriptions(final String section) {
+		// @formatter:off
+		// >>> split = re.split('\n *(-\S+?)', '\n' + s)[1:]
+		// >>> split = [s1 + s2 for s1, s2 in zip(split[::2], split[1::2])]
+		// @formatter:on
+		final List<String> u = list();
+		final String s = "\n" + section;
+
+		// The start of the current description, or -1 before the first.
+		int description = -1;
+
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) != '\n') {
+				continue;
+			}
+
+			int j = i + 1;
+
+			while (j < s.length() && s.charAt(j) == ' ') {
+				j++;
+			}
+
+			if (j + 1 < s.length() && s.charAt(j) == '-'
+					&& !isWhitespace(s.charAt(j + 1))) {
+				if (description != -1) {
+					u.add(s.substring(description, i));
+				}
+
+				description = j;
+				i = j + 1;
+			}
+		}
+
+		if (description != -1) {
+			u.add(s.substring(description));
+		}
+
+		return u;
+	}
+
+	/**
+	 * Returns the default value of an option description, or {@code null}
+	 * if it has none.
+	 */
+	public static String defaultValue(final String description) {
+		// @formatter:off
+		// >>> matched = re.findall('\[default: (.*)\]', description, flags=re.I)
+		// >>> value = matched[0] if matched else None
+		// @formatter:on
+		int end = -1;
+		int last = -1;
+
+		for (int i = 0; i + DEFAULT.length() <= description.length(); i++) {
+			if (!matches(description, i, DEFAULT)) {
+				continue;
+			}
+
+			final int start = i + DEFAULT.length();
+
+			// The value extends to the last bracket on the line.
+			if (start > end) {
+				end = start;
+
+				while (end < description.length()
+						&& !isLineTerminator(description.charAt(end))) {
+					end++;
+				}
+
+				last = description.lastIndexOf(']', end - 1);
+			}
+
+			if (last >= start) {
+				return description.substring(start, last);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Splits a formal usage pattern into tokens: brackets, parentheses, pipes
+	 * and ellipses, arguments in angle brackets, which may contain spaces,
+	 * and words separated by whitespace.
+	 */
+	public static List<String> patternTokens(final String pattern) {
+		// @formatter:off
+		// >>> source = re.sub(r'([\[\]\(\)\|]|\.\.\.)', r' \1 ', source)
+		// @formatter:on
+		final String source;
+
+		{
+			final StringBuilder sb = new StringBuilder(pattern.length() * 2);
+
+			for (int i = 0; i < pattern.length(); i++) {
+				final char c = pattern.charAt(i);
+
+				if ("[]()|".indexOf(c) != -1) {
+					sb.append(' ').append(c).append(' ');
+				}
+				else if (pattern.startsWith("...", i)) {
+					sb.append(" ... ");
+					i += 2;
+				}
+				else {
+					sb.append(c);
+				}
+			}
+
+			source = sb.toString();
+		}
+
+		// >>> source = [s for s in re.split('\s+|(\S*<.*?>)', source) if s]
+		final List<String> u = list();
+
+		// The start of the text since the last delimiter.
+		int start = 0;
+
+		// The first ">" and line terminator at or after the current word, or
+		// the length of the source if there is none.
+		int close = -1;
+		int line = -1;
+
+		for (int i = 0; i < source.length();) {
+			if (isWhitespace(source.charAt(i))) {
+				add(u, source, start, i);
+
+				while (i < source.length() && isWhitespace(source.charAt(i))) {
+					i++;
+				}
+
+				start = i;
+				continue;
+			}
+
+			int word = i;
+
+			while (word < source.length() && !isWhitespace(source.charAt(word))) {
+				word++;
+			}
+
+			if (close < word) {
+				close = source.indexOf('>', word);
+				close = (close == -1) ? source.length() : close;
+			}
+
+			if (line < word) {
+				line = word;
+
+				while (line < source.length()
+						&& !isLineTerminator(source.charAt(line))) {
+					line++;
+				}
+			}
+
+			final int end = argument(source, i, word, close, line);
+
+			if (end == -1) {
+				// No match can start later in the same word either.
+				i = word;
+				continue;
+			}
+
+			add(u, source, start, i);
+			add(u, source, i, end);
+			i = end;
+			start = i;
+		}
+
+		add(u, source, start, source.length());
+
+		return u;
+	}
+
+	/**
+	 * Returns the end of the match of {@code \S*<.*?>} at {@code start}, or
+	 * {@code -1} if there is none: the longest prefix of the word followed by
+	 * a "&lt;" that is closed by a "&gt;" on the same line.
+	 *
+	 * @param word
+	 *            the end of the word at {@code start}
+	 * @param close
+	 *            the first "&gt;" at or after {@code word}
+	 * @param line
+	 *            the first line terminator at or after {@code word}
+	 */
+	private static int argument(final String source, final int start,
+			final int word, int close, int line) {
+		for (int i = word - 1; i >= start; i--) {
+			final char c = source.charAt(i);
+
+			if (c == '<' && close < line) {
+				return close + 1;
+			}
+
+			if (c == '>') {
+				close = i;
+			}
+			else if (isLineTerminator(c)) {
+				line = i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static void add(final List<String> list, final String s,
+			final int start, final int end) {
+		if (start < end) {
+			list.add(s.substring(start, end));
+		}
+	}
+
+	/**
+	 * Determines if the line of {@code s} from {@code start} to {@code end}
+	 * contains {@code name}, which is lowercase, ignoring the case of ASCII
+	 * letters.
+	 */
+	private static boolean contains(final String s, final int start,
+			final int end, final String name) {
+		for (int i = start; i + name.length() <= end; i++) {
+			if (matches(s, i, name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines if {@code s} contains {@code name}, which is lowercase, at
+	 * {@code i}, ignoring the case of ASCII letters.
+	 */
+	private static boolean matches(final String s, final int i,
+			final String name) {
+		for (int j = 0; j < name.length(); j++) {
+			char c = s.charAt(i + j);
+
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+
+			if (c != name.charAt(j)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determines if {@code c} matches {@code \s}.
+	 */
+	private static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Determines if {@code c} is a line terminator, which {@code .} does not
+	 * match.
+	 */
+	private static boolean isLineTerminator(final char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+				|| c == '\u2029';
+	}
+}
@@ -0,0 +1,118 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The order in which the usage lines of a parser are tried, adapted to how
+ * often each line matches the whole argument vector.
+ * <p>
+ * Wins are counted in stripes, chosen by thread, so that concurrent parses
+ * rarely update the same counters. Every {@link #INTERVAL} wins in a stripe,
+ * the thread that counts the last one sorts the lines by their number of wins,
+ * most first and otherwise in the order of the help message, and halves the
+ * counts so that the order follows changes in use. The order only changes
+ * which lines are tried first, never which line matches (see
+ * {@link Either}).
+ */
+final class LineOrder {
+
+	/**
+	 * The number of wins counted in a stripe between reorderings.
+	 */
+	static final int INTERVAL = 256;
+
+	private static final int STRIPES = 8;
+
+	/**
+	 * The number of counters in a cache line, by which the stripes are
+	 * aligned.
+	 */
+	private static final int LINE_COUNTERS = 8;
+
+	private final int lines;
+
+	/**
+	 * The distance between the counters of two stripes. The counters of a
+	 * stripe are the wins of each line, followed by their total.
+	 */
+	private final int stride;
+
+	private final AtomicLongArray wins;
+
+	private volatile int[] order;
+
+	public LineOrder(final int lines) {
+		this.lines = lines;
+		this.stride = (lines / LINE_COUNTERS + 1) * LINE_COUNTERS;
+		this.wins = new AtomicLongArray(STRIPES * stride);
+		this.order = new int[lines];
+
+		for (int i = 0; i < lines; i++) {
+			order[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the positions of the lines in the order in which they should be
+	 * tried. The array must not be modified.
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Counts a match of the whole argument vector by line {@code i}.
+	 */
+	public void won(final int i) {
+		final int stripe = (int) Thread.currentThread().getId()
+				& (STRIPES - 1);
+		final int base = stripe * stride;
+
+		wins.incrementAndGet(base + i);
+
+		if (wins.incrementAndGet(base + lines) % INTERVAL == 0) {
+			reorder();
+		}
+	}
+
+	private void reorder() {
+		final long[] counts = new long[lines];
+
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			final int base = stripe * stride;
+
+			for (int i = 0; i < lines; i++) {
+				final long n = wins.get(base + i);
+				wins.addAndGet(base + i, -(n / 2));
+				counts[i] += n;
+			}
+		}
+
+		final Integer[] u = new Integer[lines];
+
+		for (int i = 0; i < lines; i++) {
+			u[i] = i;
+		}
+
+		// The sort is stable, so lines with as many wins keep their order.
+		Arrays.sort(u, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+				final long n1 = counts[o1];
+				final long n2 = counts[o2];
+				return (n1 > n2) ? -1 : (n1 < n2) ? 1 : 0;
+			}
+		});
+
+		final int[] order = new int[lines];
+
+		for (int i = 0; i < lines; i++) {
+			order[i] = u[i];
+		}
+
+		this.order = order;
+	}
+}
@@ -0,0 +1,542 @@
+package org.docopt;
+
+import static org.docopt.Python.plus;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.docopt.Pattern.MatchResult;
+
+/**
+ * State shared by the nodes of a pattern tree while matching a single argument
+ * vector.
+ * <p>
+ * If memoization is enabled, the outcome of every memoizable sub-pattern (see
+ * {@link Pattern#getId}) is recorded against the arguments that were left when
+ * it was matched, so that structurally equal sub-patterns in different
+ * alternatives are only matched once per argument state. At most
+ * {@code memoSize} outcomes are recorded.
+ * <p>
+ * If an executor is given, an {@link Either} with at least
+ * {@code minAlternatives} children has its alternatives matched concurrently,
+ * each batch with its own context (see {@link #fork}).
+ * <p>
+ * The usage lines that the argument vector lacks a required element of can be
+ * skipped without matching them (see {@link #skip}), and the others can be
+ * tried in an adapted order (see {@link #order}).
+ * <p>
+ * If a set of names is given, only the leaves with those names are collected;
+ * the others are still matched, but not recorded.
+ * <p>
+ * A context for an argument vector borrows working storage from its thread,
+ * the memo table and the sets of skipped lines, which is returned by
+ * {@link #release} once matching is done.
+ */
+final class MatchContext {
+
+	/**
+	 * A sub-pattern and the arguments left when it is matched. The key used to
+	 * look up an outcome is reused for every lookup, so only the keys of
+	 * recorded outcomes are allocated.
+	 */
+	private static final class Key {
+
+		private int id;
+
+		private long[] left;
+
+		private int hash;
+
+		public Key(final int id, final long[] left) {
+			set(id, left);
+		}
+
+		public void set(final int id, final long[] left) {
+			this.id = id;
+			this.left = left;
+			this.hash = 31 * id + Arrays.hashCode(left);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return id == other.id && Arrays.equals(left, other.left);
+		}
+	}
+
+	private static final class Outcome {
+
+		private final boolean matched;
+
+		private final List<LeafPattern> left;
+
+		private final List<LeafPattern> collected;
+
+		public Outcome(final boolean matched, final List<LeafPattern> left,
+				final List<LeafPattern> collected) {
+			this.matched = matched;
+			this.left = left;
+			this.collected = collected;
+		}
+	}
+
+	/**
+	 * Working storage that is reused by the parses of a thread, so that
+	 * matching allocates little besides its outcome. The tables and arrays
+	 * grow to the size needed, and are kept for the next parse unless they
+	 * grew larger than a usual parse needs. A parse that starts while another
+	 * one on the same thread is matching, e.g. in a task run by the caller of
+	 * an executor, gets storage of its own.
+	 */
+	private static final class Scratch {
+
+		/**
+		 * The most entries of a table that is kept for the next parse, so
+		 * that a thread does not hold on to the tables of an unusually long
+		 * parse. Clearing a table keeps its capacity, so larger ones are
+		 * dropped instead.
+		 */
+		private static final int MAX_RETAINED_ENTRIES = 1024;
+
+		/**
+		 * The most words of a buffer that is kept for the next parse.
+		 */
+		private static final int MAX_RETAINED_WORDS = 1024;
+
+		private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>();
+
+		public static Scratch acquire() {
+			Scratch u = scratches.get();
+
+			if (u == null) {
+				u = new Scratch();
+				scratches.set(u);
+			}
+			else if (u.inUse) {
+				u = new Scratch();
+			}
+
+			u.inUse = true;
+			return u;
+		}
+
+		private boolean inUse = false;
+
+		private final long[][] buffers = new long[BUFFERS][0];
+
+		private Map<LeafPattern, Integer> positions = null;
+
+		private Map<Key, Outcome> memo = null;
+
+		/**
+		 * Returns buffer {@code i}, zeroed, of at least {@code words} words.
+		 */
+		public long[] buffer(final int i, final int words) {
+			long[] u = buffers[i];
+
+			if (u.length < words) {
+				u = new long[Math.max(words, 2 * u.length)];
+				buffers[i] = u;
+			}
+			else {
+				Arrays.fill(u, 0, words, 0L);
+			}
+
+			return u;
+		}
+
+		public Map<LeafPattern, Integer> positions() {
+			if (positions == null) {
+				positions = new IdentityHashMap<LeafPattern, Integer>();
+			}
+
+			return positions;
+		}
+
+		public Map<Key, Outcome> memo() {
+			if (memo == null) {
+				memo = new HashMap<Key, Outcome>();
+			}
+
+			return memo;
+		}
+
+		public void release() {
+			// The tables refer to the arguments of the parse, so they are
+			// emptied now rather than by the next parse.
+			memo = emptied(memo);
+			positions = emptied(positions);
+
+			for (int i = 0; i < buffers.length; i++) {
+				if (buffers[i].length > MAX_RETAINED_WORDS) {
+					buffers[i] = new long[0];
+				}
+			}
+
+			inUse = false;
+		}
+
+		/**
+		 * Returns {@code map} emptied, or {@code null} if it is too large to
+		 * keep.
+		 */
+		private static <K, V> Map<K, V> emptied(final Map<K, V> map) {
+			if (map == null || map.size() > MAX_RETAINED_ENTRIES) {
+				return null;
+			}
+
+			map.clear();
+			return map;
+		}
+	}
+
+	/**
+	 * The number of buffers that {@link #buffer} provides.
+	 */
+	static final int BUFFERS = 3;
+
+	/**
+	 * The buffer used for the key of a memo lookup.
+	 */
+	private static final int KEY_BUFFER = BUFFERS - 1;
+
+	/**
+	 * The working storage of this context, or {@code null} if it allocates
+	 * its own.
+	 */
+	private final Scratch scratch;
+
+	private final List<LeafPattern> argv;
+
+	private final int memoSize;
+
+	private final Map<LeafPattern, Integer> positions;
+
+	private final Map<Key, Outcome> memo;
+
+	private final int words;
+
+	/**
+	 * The key of memo lookups and its array, which are reused.
+	 */
+	private final Key probe;
+
+	private final long[] probeLeft;
+
+	private final Executor executor;
+
+	private final int minAlternatives;
+
+	private final Set<String> names;
+
+	/**
+	 * The number of sub-patterns matched so far and the most that may be.
+	 */
+	private long steps = 0;
+
+	private long maxSteps = Long.MAX_VALUE;
+
+	/**
+	 * The value of {@link System#nanoTime} by which matching must end, if
+	 * {@link #timed}.
+	 */
+	private long deadline = 0;
+
+	private boolean timed = false;
+
+	private Either lines = null;
+
+	private long[] skipped = null;
+
+	private LineOrder order = null;
+
+	public MatchContext() {
+		this(null, 0, null, 0, null);
+	}
+
+	/**
+	 * @param argv
+	 *            the parsed argument vector that will be matched
+	 * @param memoSize
+	 *            the maximum number of outcomes to record, or {@code 0} to
+	 *            disable memoization
+	 * @param executor
+	 *            the executor used to match alternatives concurrently, or
+	 *            {@code null} to match them in the calling thread
+	 * @param minAlternatives
+	 *            the least number of alternatives that are matched
+	 *            concurrently
+	 * @param names
+	 *            the names of the leaves to collect, or {@code null} to
+	 *            collect all leaves
+	 * @see #release
+	 */
+	public MatchContext(final List<LeafPattern> argv, final int memoSize,
+			final Executor executor, final int minAlternatives,
+			final Set<String> names) {
+		this.scratch = (argv == null) ? null : Scratch.acquire();
+		this.argv = argv;
+		this.memoSize = (argv == null) ? 0 : memoSize;
+		this.executor = executor;
+		this.minAlternatives = minAlternatives;
+		this.names = names;
+
+		if (this.memoSize == 0) {
+			positions = null;
+			memo = null;
+			words = 0;
+			probe = null;
+			probeLeft = null;
+			return;
+		}
+
+		positions = scratch.positions();
+
+		for (int i = 0; i < argv.size(); i++) {
+			positions.put(argv.get(i), i);
+		}
+
+		words = (argv.size() + 63) >>> 6;
+		memo = scratch.memo();
+		probeLeft = scratch.buffer(KEY_BUFFER, words);
+		probe = new Key(-1, probeLeft);
+	}
+
+	private MatchContext(final MatchContext parent) {
+		scratch = null;
+		argv = parent.argv;
+		memoSize = parent.memoSize;
+		positions = parent.positions;
+		memo = (parent.memo == null) ? null : new HashMap<Key, Outcome>();
+		words = parent.words;
+		probeLeft = (parent.memo == null) ? null : new long[words];
+		probe = (parent.memo == null) ? null : new Key(-1, probeLeft);
+		names = parent.names;
+		maxSteps = parent.maxSteps;
+		deadline = parent.deadline;
+		timed = parent.timed;
+		lines = parent.lines;
+		skipped = parent.skipped;
+		executor = null;
+		minAlternatives = 0;
+	}
+
+	/**
+	 * Returns a context for matching on another thread. It has its own memo
+	 * table and never matches concurrently itself.
+	 */
+	public MatchContext fork() {
+		return new MatchContext(this);
+	}
+
+	/**
+	 * Returns the working storage of this context to its thread, for the next
+	 * parse. The outcome of matching remains valid, but the context must not
+	 * be used again.
+	 */
+	public void release() {
+		if (scratch != null) {
+			scratch.release();
+		}
+	}
+
+	/**
+	 * Returns buffer {@code i}, less than {@link #BUFFERS}{@code - 1}, with
+	 * at least {@code words} words, all zero. The buffer is reused by the
+	 * next parse on the same thread.
+	 */
+	public long[] buffer(final int i, final int words) {
+		return (scratch == null) ? new long[words] : scratch.buffer(i, words);
+	}
+
+	/**
+	 * Limits matching to {@code maxSteps} sub-patterns, unless it is
+	 * {@code 0}, and to {@code timeout} nanoseconds from now, unless it is
+	 * {@code 0}. A forked context has the same deadline and may match as many
+	 * sub-patterns again.
+	 */
+	public void limit(final long maxSteps, final long timeout) {
+		this.maxSteps = (maxSteps == 0) ? Long.MAX_VALUE : maxSteps;
+		this.timed = (timeout != 0);
+		this.deadline = System.nanoTime() + timeout;
+	}
+
+	/**
+	 * Counts a step of matching, throwing a {@link DocoptExitException} if a
+	 * limit is exceeded. The clock is read every {@code 1024} steps.
+	 */
+	private void step() {
+		if (++steps > maxSteps) {
+			throw new DocoptExitException(1, String.format(
+					"matching exceeded %d steps", maxSteps), false,
+					DocoptOutcome.Kind.LIMIT_EXCEEDED);
+		}
+
+		if (timed && (steps & 1023) == 0 && System.nanoTime() - deadline > 0) {
+			throw new DocoptExitException(1, "matching exceeded time limit",
+					false, DocoptOutcome.Kind.LIMIT_EXCEEDED);
+		}
+	}
+
+	/**
+	 * Skips the alternatives of {@code lines} at the positions in
+	 * {@code skipped}, which are known not to match.
+	 */
+	public void skip(final Either lines, final long[] skipped) {
+		this.lines = lines;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * Determines if alternative {@code i} of {@code either} is known not to
+	 * match.
+	 */
+	public boolean skips(final Either either, final int i) {
+		return either == lines && skipped != null
+				&& (skipped[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/**
+	 * Tries the usage lines given to {@link #skip} in the order of
+	 * {@code order}, unless it is {@code null}, and counts the lines that
+	 * match the whole argument vector. A forked context tries them in the
+	 * order of the help message.
+	 */
+	public void order(final LineOrder order) {
+		this.order = order;
+	}
+
+	/**
+	 * Returns the order in which to try the alternatives of {@code either},
+	 * or {@code null} if they are tried in order.
+	 */
+	public int[] getOrder(final Either either) {
+		return (either == lines && order != null) ? order.getOrder() : null;
+	}
+
+	/**
+	 * Counts a match of the whole argument vector by alternative {@code i} of
+	 * the alternatives ordered by {@link #getOrder}.
+	 */
+	public void won(final int i) {
+		order.won(i);
+	}
+
+	/**
+	 * Determines if matching {@code pattern} against {@code left} could leave
+	 * nothing, using {@link Pattern#validate} when {@code left} is the whole
+	 * argument vector and it is short enough. Nothing is collected and no
+	 * step is counted.
+	 */
+	public boolean mayConsumeAll(final Pattern pattern,
+			final List<LeafPattern> left) {
+		if (left != argv || argv.size() >= Long.SIZE) {
+			return true;
+		}
+
+		return pattern.validate(argv, (1L << argv.size()) - 1) == 0;
+	}
+
+	/**
+	 * Determines if leaves named {@code name} are collected.
+	 */
+	public boolean collects(final String name) {
+		return names == null || names.contains(name);
+	}
+
+	/**
+	 * Returns the executor to use for matching {@code alternatives}, or
+	 * {@code null} if they should be matched in the calling thread.
+	 */
+	public Executor getExecutor(final List<Pattern> alternatives) {
+		return (alternatives.size() >= minAlternatives) ? executor : null;
+	}
+
+	/**
+	 * Matches {@code pattern}, reusing a recorded outcome if possible.
+	 */
+	public MatchResult match(final Pattern pattern,
+			final List<LeafPattern> left, final List<LeafPattern> collected) {
+		step();
+
+		if (memo == null || pattern.getId() == -1) {
+			return pattern.match(left, collected, this);
+		}
+
+		final Key key = key(pattern.getId(), left);
+
+		if (key == null) {
+			return pattern.match(left, collected, this);
+		}
+
+		final Outcome o = memo.get(key);
+
+		if (o != null) {
+			if (!o.matched) {
+				return new MatchResult(false, left, collected);
+			}
+
+			return new MatchResult(true, o.left,
+					(collected == null) ? o.collected : plus(collected,
+							o.collected));
+		}
+
+		// The probe is reused while matching the pattern, so the outcome is
+		// recorded against a copy.
+		final Key recorded = (memo.size() < memoSize) ? new Key(key.id,
+				key.left.clone()) : null;
+
+		final MatchResult m = pattern.match(left, collected, this);
+
+		if (recorded != null && memo.size() < memoSize) {
+			// Only record what the pattern added to collected; it does not
+			// depend on what was collected before.
+			final int n = (collected == null) ? 0 : collected.size();
+			final List<LeafPattern> c = m.getCollected();
+
+			memo.put(recorded, new Outcome(m.matched(), m.getLeft(), c.subList(n,
+					c.size())));
+		}
+
+		return m;
+	}
+
+	/**
+	 * Returns a key for matching sub-pattern {@code id} against {@code left},
+	 * or {@code null} if {@code left} contains elements that are not part of
+	 * the argument vector.
+	 */
+	private Key key(final int id, final List<LeafPattern> left) {
+		final long[] u = probeLeft;
+		Arrays.fill(u, 0L);
+
+		for (final LeafPattern p : left) {
+			final Integer i = positions.get(p);
+
+			if (i == null) {
+				return null;
+			}
+
+			u[i >>> 6] |= 1L << i;
+		}
+
+		probe.set(id, u);
+		return probe;
+	}
+}
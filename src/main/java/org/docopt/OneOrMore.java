@@ -1,6 +1,7 @@
 package org.docopt;
 
 import static org.docopt.Python.list;
+import static org.docopt.Python.plus;
 
 import java.util.List;
 
@@ -12,13 +13,20 @@ final class OneOrMore extends BranchPattern {
 
 	@Override
 	protected MatchResult match(final List<LeafPattern> left,
-			List<LeafPattern> collected) {
+			List<LeafPattern> collected, final MatchContext context) {
 		assert getChildren().size() == 1;
 
 		if (collected == null) {
 			collected = list();
 		}
 
+		final Pattern child = getChildren().get(0);
+
+		if (child.getClass() == Argument.class
+				&& ((Argument) child).getValue() instanceof List) {
+			return matchAll((Argument) child, left, collected, context);
+		}
+
 		List<LeafPattern> l = left;
 		List<LeafPattern> c = collected;
 		List<LeafPattern> l_ = null;
@@ -26,7 +34,7 @@ final class OneOrMore extends BranchPattern {
 		int times = 0;
 
 		while (matched) {
-			final MatchResult m = getChildren().get(0).match(l, c);
+			final MatchResult m = context.match(getChildren().get(0), l, c);
 
 			l = m.getLeft();
 			c = m.getCollected();
@@ -48,4 +56,107 @@ final class OneOrMore extends BranchPattern {
 
 		return new MatchResult(false, left, collected);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Matches a repeated positional argument, which consumes every positional
+	 * argument that is left, all at once. Matching it one argument at a time
+	 * would copy what is left and what was collected for each argument.
+	 */
+	private static MatchResult matchAll(final Argument child,
+			final List<LeafPattern> left, final List<LeafPattern> collected,
+			final MatchContext context) {
+		final List<LeafPattern> l = list();
+		final List<Object> values = list();
+
+		for (final LeafPattern p : left) {
+			if (p.getClass() == Argument.class) {
+				values.add(p.getValue());
+			}
+			else {
+				l.add(p);
+			}
+		}
+
+		if (values.isEmpty()) {
+			return new MatchResult(false, left, collected);
+		}
+
+		if (!context.collects(child.getName())) {
+			return new MatchResult(true, l, collected);
+		}
+
+		for (int i = 0; i < collected.size(); i++) {
+			final LeafPattern p = collected.get(i);
+
+			if (child.getName().equals(p.getName())) {
+				if (!(p.getValue() instanceof List)) {
+					return new MatchResult(true, l, collected);
+				}
+
+				@SuppressWarnings("unchecked")
+				final List<Object> a = (List<Object>) p.getValue();
+
+				final List<LeafPattern> c = list(collected);
+				c.set(i, p.withValue(plus(a, values)));
+
+				return new MatchResult(true, l, c);
+			}
+		}
+
+		return new MatchResult(true, l, plus(collected,
+				list(child.withValue(values))));
+	}
+
+	@Override
+	protected long validate(final List<LeafPattern> argv, final long left) {
+		final Pattern child = getChildren().get(0);
+		long l = left;
+		int times = 0;
+
+		// Stop when the child no longer matches or no longer consumes
+		// anything, like match does.
+		while (true) {
+			final long u = child.validate(argv, l);
+
+			if (u == NO_MATCH) {
+				break;
+			}
+
+			times++;
+
+			if (u == l) {
+				break;
+			}
+
+			l = u;
+		}
+
+		return (times >= 1) ? l : NO_MATCH;
+	}
+
+	@Override
+	protected long record(final List<LeafPattern> argv, final long left,
+			final DocoptResult result) {
+		final Pattern child = getChildren().get(0);
+		long l = left;
+
+		// The iterations of validate, each of which is recorded.
+		while (true) {
+			final long u = child.validate(argv, l);
+
+			if (u == NO_MATCH) {
+				break;
+			}
+
+			child.record(argv, l, result);
+
+			if (u == l) {
+				break;
+			}
+
+			l = u;
+		}
+
+		return l;
+	}
+}
@@ -1,14 +1,11 @@
 package org.docopt;
 
-import static org.docopt.Python.bool;
 import static org.docopt.Python.partition;
 import static org.docopt.Python.repr;
 import static org.docopt.Python.split;
 
 import java.util.List;
 
-import org.docopt.Python.Re;
-
 final class Option extends LeafPattern {
 
 	private final String $short;
@@ -61,7 +58,7 @@ final class Option extends LeafPattern {
 			description = a[2];
 		}
 
-		options = options.replaceAll(",", " ").replaceAll("=", " ");
+		options = options.replace(',', ' ').replace('=', ' ');
 
 		for (final String s : split(options)) {
 			if (s.startsWith("--")) {
@@ -76,9 +73,7 @@ final class Option extends LeafPattern {
 		}
 
 		if (argCount != 0) {
-			final List<String> matched = Re.findAll("\\[default: (.*)\\]",
-					description, Re.IGNORECASE);
-			value = bool(matched) ? matched.get(0) : null;
+			value = Lexer.defaultValue(description);
 		}
 
 		return new Option($short, $long, argCount, value);
@@ -94,7 +89,25 @@ final class Option extends LeafPattern {
 			}
 		}
 
-		return new SingleMatchResult(null, null);
+		return SingleMatchResult.NONE;
+	}
+
+	@Override
+	protected int singleMatch(final List<LeafPattern> argv, final long left) {
+		for (long l = left; l != 0; l &= l - 1) {
+			final int n = Long.numberOfTrailingZeros(l);
+
+			if (getName().equals(argv.get(n).getName())) {
+				return n;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	protected LeafPattern withValue(final Object value) {
+		return new Option($short, $long, argCount, value);
 	}
 
 	public String getShort() {
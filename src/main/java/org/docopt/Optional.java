@@ -12,17 +12,48 @@ class Optional extends BranchPattern {
 
 	@Override
 	protected MatchResult match(List<LeafPattern> left,
-			List<LeafPattern> collected) {
+			List<LeafPattern> collected, final MatchContext context) {
 		if (collected == null) {
 			collected = list();
 		}
 
 		for (final Pattern pattern : getChildren()) {
-			final MatchResult u = pattern.match(left, collected);
+			final MatchResult u = context.match(pattern, left, collected);
 			left = u.getLeft();
 			collected = u.getCollected();
 		}
 
 		return new MatchResult(true, left, collected);
 	}
+
+	@Override
+	protected long validate(final List<LeafPattern> argv, long left) {
+		final List<Pattern> children = getChildren();
+
+		for (int i = 0; i < children.size(); i++) {
+			final long l = children.get(i).validate(argv, left);
+
+			if (l != NO_MATCH) {
+				left = l;
+			}
+		}
+
+		return left;
+	}
+
+	@Override
+	protected long record(final List<LeafPattern> argv, long left,
+			final DocoptResult result) {
+		final List<Pattern> children = getChildren();
+
+		for (int i = 0; i < children.size(); i++) {
+			final Pattern child = children.get(i);
+
+			if (child.validate(argv, left) != NO_MATCH) {
+				left = child.record(argv, left, result);
+			}
+		}
+
+		return left;
+	}
 }
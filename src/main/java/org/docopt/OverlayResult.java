@@ -0,0 +1,290 @@
+package org.docopt;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The result of {@link Docopt#parse}: the defaults table of the grammar,
+ * which is shared by all parses, overlaid with the values of the leaves that
+ * were matched and with copies of the defaults that are lists. A list default
+ * is only copied when it is first read.
+ * <p>
+ * The map can be modified like a {@link HashMap}. It is copied into one on
+ * the first modification, so parses that are only read never copy the
+ * defaults.
+ */
+final class OverlayResult extends AbstractMap<String, Object> implements
+		Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The value in {@link #values} of a list default that has not been
+	 * copied yet.
+	 */
+	private static final Object LIST_DEFAULT = new Object();
+
+	private final transient Grammar grammar;
+
+	/**
+	 * The positions in the leaf table of the matched leaves and of the
+	 * defaults that are lists, in increasing order.
+	 */
+	private final transient int[] matched;
+
+	/**
+	 * The values at the positions of {@link #matched}.
+	 */
+	private final transient Object[] values;
+
+	/**
+	 * The copy that replaces the overlay once it has been modified, or
+	 * {@code null}.
+	 */
+	private Map<String, Object> copy = null;
+
+	private final Set<Entry<String, Object>> entrySet = new AbstractSet<Entry<String, Object>>() {
+
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return (copy != null) ? copy.entrySet().iterator()
+					: new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return OverlayResult.this.size();
+		}
+	};
+
+	/**
+	 * Iterates over the leaf table, reading the copy if the map is modified
+	 * while iterating.
+	 */
+	private final class EntryIterator implements
+			Iterator<Entry<String, Object>> {
+
+		private int i = 0;
+
+		/**
+		 * The position in {@link #matched} of the first matched leaf at or
+		 * after {@code i}.
+		 */
+		private int j = 0;
+
+		private String last = null;
+
+		@Override
+		public boolean hasNext() {
+			while (copy != null && i < grammar.size()
+					&& !copy.containsKey(grammar.getName(i))) {
+				advance();
+			}
+
+			return i < grammar.size();
+		}
+
+		@Override
+		public Entry<String, Object> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			final String name = grammar.getName(i);
+			final Object value;
+
+			if (copy != null) {
+				value = copy.get(name);
+			}
+			else if (j < matched.length && matched[j] == i) {
+				value = value(j);
+			}
+			else {
+				value = grammar.getDefault(i);
+			}
+
+			advance();
+			last = name;
+
+			return new SimpleEntry<String, Object>(name, value) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Object setValue(final Object value) {
+					put(getKey(), value);
+					return super.setValue(value);
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+
+			OverlayResult.this.remove(last);
+			last = null;
+		}
+
+		private void advance() {
+			if (j < matched.length && matched[j] == i) {
+				j++;
+			}
+
+			i++;
+		}
+	}
+
+	/**
+	 * @param collected
+	 *            the matched leaves; where several have the same name, the
+	 *            last one wins
+	 */
+	public OverlayResult(final Grammar grammar,
+			final List<LeafPattern> collected) {
+		this.grammar = grammar;
+
+		// Sort by position in the leaf table, then by sequence: the list
+		// defaults, which are copied when read so that the caller may modify
+		// them, followed by the collected leaves in order of collection.
+		final int lists = grammar.listDefaults();
+		final long[] keys = new long[lists + collected.size()];
+
+		for (int k = 0; k < lists; k++) {
+			keys[k] = ((long) grammar.getListDefault(k) << 32) | k;
+		}
+
+		for (int k = lists; k < keys.length; k++) {
+			final int i = grammar.indexOf(collected.get(k - lists).getName());
+
+			if (i == -1) {
+				throw new IllegalStateException();
+			}
+
+			keys[k] = ((long) i << 32) | k;
+		}
+
+		Arrays.sort(keys);
+
+		int n = 0;
+		final int[] matched = new int[keys.length];
+		final Object[] values = new Object[keys.length];
+
+		for (int k = 0; k < keys.length; k++) {
+			final int i = (int) (keys[k] >>> 32);
+			final int seq = (int) keys[k];
+
+			if (n == 0 || matched[n - 1] != i) {
+				n++;
+			}
+
+			matched[n - 1] = i;
+			values[n - 1] = (seq < lists) ? LIST_DEFAULT : collected.get(
+					seq - lists).getValue();
+		}
+
+		this.matched = (n == matched.length) ? matched : Arrays.copyOf(
+				matched, n);
+		this.values = (n == values.length) ? values : Arrays.copyOf(values, n);
+	}
+
+	/**
+	 * Returns the value at position {@code j} of {@link #matched}, copying
+	 * the list default there when first read.
+	 */
+	private Object value(final int j) {
+		if (values[j] == LIST_DEFAULT) {
+			values[j] = grammar.copyListDefault(matched[j]);
+		}
+
+		return values[j];
+	}
+
+	/**
+	 * Replaces the overlay with a modifiable copy, if not done already.
+	 */
+	private Map<String, Object> copy() {
+		if (copy == null) {
+			final Map<String, Object> u = new HashMap<String, Object>(
+					grammar.size() * 4 / 3 + 1);
+
+			for (int i = 0, j = 0; i < grammar.size(); i++) {
+				if (j < matched.length && matched[j] == i) {
+					u.put(grammar.getName(i), value(j++));
+				}
+				else {
+					u.put(grammar.getName(i), grammar.getDefault(i));
+				}
+			}
+
+			copy = u;
+		}
+
+		return copy;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return entrySet;
+	}
+
+	@Override
+	public int size() {
+		return (copy != null) ? copy.size() : grammar.size();
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return (copy != null) ? copy.containsKey(key)
+				: grammar.indexOf(key) != -1;
+	}
+
+	@Override
+	public Object get(final Object key) {
+		if (copy != null) {
+			return copy.get(key);
+		}
+
+		final int i = grammar.indexOf(key);
+
+		if (i == -1) {
+			return null;
+		}
+
+		final int j = Arrays.binarySearch(matched, i);
+		return (j < 0) ? grammar.getDefault(i) : value(j);
+	}
+
+	@Override
+	public Object put(final String key, final Object value) {
+		return copy().put(key, value);
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		return copy().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		copy = new HashMap<String, Object>();
+	}
+
+	/**
+	 * Serializes the result as a {@link HashMap}, as the grammar is not
+	 * serializable.
+	 */
+	private Object writeReplace() {
+		return new HashMap<String, Object>(this);
+	}
+}
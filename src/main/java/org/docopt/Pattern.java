@@ -1,12 +1,13 @@
 package org.docopt;
 
-import static org.docopt.Python.count;
 import static org.docopt.Python.list;
-import static org.docopt.Python.set;
 import static org.docopt.Python.split;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 abstract class Pattern {
 
@@ -38,6 +39,12 @@ abstract class Pattern {
 		}
 	}
 
+	/**
+	 * The result of {@link #validate} if the pattern does not match. It is not
+	 * a set of positions of an argument vector of at most 63 elements.
+	 */
+	static final long NO_MATCH = -1L;
+
 	@SuppressWarnings("unchecked")
 	private static final List<Class<? extends BranchPattern>> PARENTS = Arrays
 			.asList(Required.class, Optional.class, OptionsShortcut.class,
@@ -130,14 +137,26 @@ abstract class Pattern {
 	/**
 	 * Make pattern-tree tips point to same object if they are equal.
 	 */
-	private void fixIdentities(List<Pattern> uniq) {
+	private void fixIdentities(Map<String, Pattern> uniq) {
 		// >>> if not hasattr(self, 'children')
 		if (!(this instanceof BranchPattern)) {
 			return;
 		}
 
+		// >>> uniq = list(set(self.flat()))
+		// Leaves are looked up by their representation, which is equal for
+		// equal leaves, as their hash codes are not; the first of several
+		// equal leaves is kept.
 		if (uniq == null) {
-			uniq = list(set(flat()));
+			uniq = new HashMap<String, Pattern>();
+
+			for (final Pattern p : flat()) {
+				final String key = p.toString();
+
+				if (!uniq.containsKey(key)) {
+					uniq.put(key, p);
+				}
+			}
 		}
 
 		final List<Pattern> children = ((BranchPattern) this).getChildren();
@@ -146,8 +165,8 @@ abstract class Pattern {
 			final Pattern child = children.get(i);
 
 			if (!(child instanceof BranchPattern)) {
-				assert uniq.contains(child);
-				children.set(i, uniq.get(uniq.indexOf(child)));
+				assert uniq.containsKey(child.toString());
+				children.set(i, uniq.get(child.toString()));
 			}
 			else {
 				child.fixIdentities(uniq);
@@ -172,9 +191,18 @@ abstract class Pattern {
 		}
 
 		for (final List<Pattern> $case : either) {
+			// Equal leaves are identical once fixIdentities has run, so they
+			// can be counted by identity.
+			final Map<Pattern, Integer> counts = new IdentityHashMap<Pattern, Integer>();
+
+			for (final Pattern child : $case) {
+				final Integer n = counts.get(child);
+				counts.put(child, (n == null) ? 1 : n + 1);
+			}
+
 			// >>> for e in [child for child in case if case.count(child) > 1]
 			for (final Pattern child : $case) { // ^^^
-				if (count($case, child) > 1) { // ^^^
+				if (counts.get(child) > 1) { // ^^^
 					final LeafPattern e = (LeafPattern) child; // ^^^
 
 					if ((e.getClass() == Argument.class)
@@ -198,13 +226,60 @@ abstract class Pattern {
 		}
 	}
 
+	private int id = -1;
+
 	protected abstract List<Pattern> flat(Class<?>... types);
 
 	protected abstract MatchResult match(List<LeafPattern> left,
-			List<LeafPattern> collected);
+			List<LeafPattern> collected, MatchContext context);
 
 	protected MatchResult match(final List<LeafPattern> left) {
-		return match(left, null);
+		return match(left, null, new MatchContext());
+	}
+
+	/**
+	 * Matches like {@link #match}, but only tracks which elements of
+	 * {@code argv} are left, as a set of positions, and collects nothing.
+	 * Whether a pattern matches does not depend on what was collected, so the
+	 * outcome is the same.
+	 *
+	 * @param argv
+	 *            the parsed argument vector, of at most 63 elements
+	 * @param left
+	 *            the positions of the elements of {@code argv} that are left
+	 * @return the positions that are left after matching, or
+	 *         {@link #NO_MATCH} if the pattern does not match
+	 */
+	protected abstract long validate(List<LeafPattern> argv, long left);
+
+	/**
+	 * Matches like {@link #validate}, and stores in {@code result} the values
+	 * that {@link #match} would collect. It must only be called if
+	 * {@code validate} matches, so that nothing is stored for a part of the
+	 * pattern that fails.
+	 *
+	 * @param argv
+	 *            the parsed argument vector, of at most 63 elements
+	 * @param left
+	 *            the positions of the elements of {@code argv} that are left
+	 * @param result
+	 *            the holder of the values
+	 * @return the positions that are left after matching
+	 */
+	protected abstract long record(List<LeafPattern> argv, long left,
+			DocoptResult result);
+
+	/**
+	 * Returns the number shared by all structurally equal sub-patterns whose
+	 * outcome may be memoized, or {@code -1} if this pattern's outcome depends
+	 * on what has already been collected.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public void setId(final int id) {
+		this.id = id;
 	}
 
 	@Override
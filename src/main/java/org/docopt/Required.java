@@ -12,7 +12,7 @@ final class Required extends BranchPattern {
 
 	@Override
 	protected MatchResult match(final List<LeafPattern> left,
-			List<LeafPattern> collected) {
+			List<LeafPattern> collected, final MatchContext context) {
 		if (collected == null) {
 			collected = list();
 		}
@@ -21,7 +21,7 @@ final class Required extends BranchPattern {
 		List<LeafPattern> c = collected;
 
 		for (final Pattern pattern : getChildren()) {
-			final MatchResult m = pattern.match(l, c);
+			final MatchResult m = context.match(pattern, l, c);
 
 			l = m.getLeft();
 			c = m.getCollected();
@@ -33,4 +33,29 @@ final class Required extends BranchPattern {
 
 		return new MatchResult(true, l, c);
 	}
-}
\ No newline at end of file
+
+	@Override
+	protected long validate(final List<LeafPattern> argv, final long left) {
+		final List<Pattern> children = getChildren();
+		long l = left;
+
+		for (int i = 0; i < children.size() && l != NO_MATCH; i++) {
+			l = children.get(i).validate(argv, l);
+		}
+
+		return l;
+	}
+
+	@Override
+	protected long record(final List<LeafPattern> argv, final long left,
+			final DocoptResult result) {
+		final List<Pattern> children = getChildren();
+		long l = left;
+
+		for (int i = 0; i < children.size(); i++) {
+			l = children.get(i).record(argv, l, result);
+		}
+
+		return l;
+	}
+}
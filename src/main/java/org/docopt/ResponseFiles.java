@@ -0,0 +1,226 @@
+package org.docopt;
+
+import static org.docopt.Python.list;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * Expands {@code @file} arguments into the arguments contained in the file,
+ * which are split like a command line (see {@link CommandLine}). Response
+ * files may contain further {@code @file} arguments up to a nesting limit,
+ * and the total number of bytes read for one command line is limited. No
+ * argument after {@code --} is expanded.
+ * <p>
+ * Files are read through a small buffer and split as they are decoded, so
+ * each argument is added as soon as it ends and the contents of a file are
+ * never held as a single string.
+ * <p>
+ * If a base directory is given, only files inside it are read, after
+ * resolving {@code ..} and symbolic links.
+ */
+final class ResponseFiles {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Determines if {@code argv} has an argument that would be expanded.
+	 */
+	static boolean expands(final List<String> argv) {
+		for (int i = 0; i < argv.size(); i++) {
+			final String arg = argv.get(i);
+
+			if ("--".equals(arg)) {
+				return false;
+			}
+
+			if (isResponseFile(arg)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isResponseFile(final String arg) {
+		return arg.length() > 1 && arg.charAt(0) == '@';
+	}
+
+	/**
+	 * The state of expanding a single command line.
+	 */
+	private final class Expansion {
+
+		private final List<String> argv = list();
+
+		private long bytes = 0;
+
+		private boolean done = false;
+
+		/**
+		 * Adds {@code arg}, read from a response file at {@code depth}, or
+		 * the arguments of the response file it names.
+		 */
+		public void add(final String arg, final int depth) {
+			if (done || !isResponseFile(arg)) {
+				done |= "--".equals(arg);
+				argv.add(arg);
+				return;
+			}
+
+			if (depth == maxDepth) {
+				throw new DocoptExitException(1, String.format(
+						"%s is nested more than %d response files deep", arg,
+						maxDepth), false);
+			}
+
+			try {
+				read(resolve(arg.substring(1)), depth + 1);
+			}
+			catch (final IOException e) {
+				throw new DocoptExitException(1, String.format(
+						"cannot read response file %s: %s", arg.substring(1),
+						e.getMessage()), false);
+			}
+		}
+
+		/**
+		 * Returns the file named {@code name}, which is inside the base
+		 * directory if there is one.
+		 */
+		private File resolve(final String name) throws IOException {
+			if (baseDirectory == null) {
+				return new File(name);
+			}
+
+			final File u = new File(name).getCanonicalFile();
+			final String base = baseDirectory.getCanonicalPath();
+
+			if (!u.getPath().startsWith(
+					base.endsWith(File.separator) ? base : base
+							+ File.separator)) {
+				throw new DocoptExitException(1, String.format(
+						"response file %s is outside %s", name, baseDirectory),
+						false);
+			}
+
+			return u;
+		}
+
+		private void read(final File file, final int depth)
+				throws IOException {
+			final FileInputStream stream = new FileInputStream(file);
+
+			try {
+				final FileChannel channel = stream.getChannel();
+				final CharsetDecoder decoder = UTF_8.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+				final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+				final CharBuffer out = CharBuffer.allocate(BUFFER_SIZE);
+				final CommandLine.Splitter splitter = new CommandLine.Splitter();
+
+				// The arguments that ended in the last characters decoded.
+				final List<String> args = list();
+
+				boolean eof = false;
+
+				while (!eof) {
+					final int n = channel.read(in);
+					eof = (n == -1);
+
+					if (n > 0 && (bytes += n) > maxBytes) {
+						throw new DocoptExitException(1, String.format(
+								"response files are longer than %d bytes",
+								maxBytes), false);
+					}
+
+					in.flip();
+					decoder.decode(in, out, eof);
+					in.compact();
+
+					if (eof) {
+						decoder.flush(out);
+					}
+
+					out.flip();
+
+					while (out.hasRemaining()) {
+						splitter.feed(out.get(), args);
+					}
+
+					out.clear();
+
+					if (eof) {
+						splitter.finish(args);
+					}
+
+					for (final String arg : args) {
+						add(arg, depth);
+					}
+
+					args.clear();
+				}
+			}
+			finally {
+				stream.close();
+			}
+		}
+	}
+
+	private final int maxDepth;
+
+	private final long maxBytes;
+
+	private final File baseDirectory;
+
+	/**
+	 * @param maxDepth
+	 *            the largest number of nested response files, at least
+	 *            {@code 1}
+	 * @param maxBytes
+	 *            the largest total size of the response files of a command
+	 *            line
+	 * @param baseDirectory
+	 *            the directory that contains every response file, or
+	 *            {@code null} for any file
+	 */
+	public ResponseFiles(final int maxDepth, final long maxBytes,
+			final File baseDirectory) {
+		this.maxDepth = maxDepth;
+		this.maxBytes = maxBytes;
+		this.baseDirectory = baseDirectory;
+	}
+
+	/**
+	 * Returns {@code argv} with its response files expanded, or
+	 * {@code argv} itself if it has none.
+	 *
+	 * @throws DocoptExitException
+	 *             if a response file cannot be read, is outside the base
+	 *             directory, or a limit is exceeded
+	 */
+	public List<String> expand(final List<String> argv) {
+		if (!expands(argv)) {
+			return argv;
+		}
+
+		final Expansion expansion = new Expansion();
+
+		for (final String arg : argv) {
+			expansion.add(arg, 0);
+		}
+
+		return expansion.argv;
+	}
+}
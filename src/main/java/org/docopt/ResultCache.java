@@ -0,0 +1,185 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of parse outcomes by command line, which evicts the least
+ * recently used entries first. All methods are thread-safe.
+ */
+final class ResultCache {
+
+	/**
+	 * The outcome of parsing a command line: an immutable result, or what is
+	 * needed to throw an equal {@link DocoptExitException} again.
+	 */
+	static final class Outcome {
+
+		private final Map<String, Object> result;
+
+		private final int exitCode;
+
+		private final String message;
+
+		private final boolean printUsage;
+
+		private final DocoptOutcome.Kind kind;
+
+		private final Suggestions suggestions;
+
+		public Outcome(final Map<String, Object> result) {
+			this.result = freeze(result);
+			this.exitCode = 0;
+			this.message = null;
+			this.printUsage = false;
+			this.kind = DocoptOutcome.Kind.RESULT;
+			this.suggestions = null;
+		}
+
+		public Outcome(final DocoptExitException e) {
+			this.result = null;
+			this.exitCode = e.getExitCode();
+			this.message = e.getMessage();
+			this.printUsage = e.getPrintUsage();
+			this.kind = e.getKind();
+			this.suggestions = e.getSuggestionsSource();
+		}
+
+		/**
+		 * Returns the result, or throws a new exception equal to the one
+		 * that was thrown when parsing.
+		 */
+		public Map<String, Object> get() {
+			if (result == null) {
+				throw new DocoptExitException(exitCode, message, printUsage,
+						kind, suggestions);
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Returns an unmodifiable copy of {@code result} whose list values are
+	 * unmodifiable too, as it is shared by all callers.
+	 */
+	static Map<String, Object> freeze(final Map<String, Object> result) {
+		final Map<String, Object> u = new HashMap<String, Object>(
+				result.size() * 4 / 3 + 1);
+
+		for (final Map.Entry<String, Object> e : result.entrySet()) {
+			Object value = e.getValue();
+
+			if (value instanceof List) {
+				value = Collections.unmodifiableList(new ArrayList<Object>(
+						(List<?>) value));
+			}
+
+			u.put(e.getKey(), value);
+		}
+
+		return Collections.unmodifiableMap(u);
+	}
+
+	/**
+	 * Returns the weight of an entry: the number of characters in its
+	 * arguments plus one for each argument.
+	 */
+	private static long weigh(final List<String> argv) {
+		long u = argv.size();
+
+		for (final String arg : argv) {
+			u += arg.length();
+		}
+
+		return u;
+	}
+
+	private final int maxEntries;
+
+	private final long maxWeight;
+
+	// The following are guarded by this object.
+
+	private final LinkedHashMap<List<String>, Outcome> entries = new LinkedHashMap<List<String>, Outcome>(
+			16, 0.75f, true);
+
+	private long weight = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of entries
+	 * @param maxWeight
+	 *            the maximum total weight of the entries
+	 */
+	public ResultCache(final int maxEntries, final long maxWeight) {
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Returns the outcome cached for {@code argv}, or {@code null} if there is
+	 * none.
+	 */
+	public synchronized Outcome get(final List<String> argv) {
+		final Outcome u = entries.get(argv);
+
+		if (u == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+
+		return u;
+	}
+
+	/**
+	 * Caches {@code outcome} for {@code argv}, evicting the least recently
+	 * used entries as needed. An entry heavier than the cache is not cached.
+	 */
+	public synchronized void put(final List<String> argv, final Outcome outcome) {
+		final long w = weigh(argv);
+
+		if (w > maxWeight) {
+			return;
+		}
+
+		final List<String> key = Collections
+				.unmodifiableList(new ArrayList<String>(argv));
+
+		if (entries.put(key, outcome) == null) {
+			weight += w;
+		}
+
+		final Iterator<List<String>> i = entries.keySet().iterator();
+
+		while (entries.size() > maxEntries || weight > maxWeight) {
+			final List<String> eldest = i.next();
+			i.remove();
+			weight -= weigh(eldest);
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized DocoptCacheStats getStats() {
+		return new DocoptCacheStats(hits, misses, evictions, entries.size(),
+				weight);
+	}
+}
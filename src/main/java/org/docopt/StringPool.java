@@ -0,0 +1,38 @@
+package org.docopt;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of the strings (names of options, arguments and commands) used by
+ * compact grammars, so that equal names share one instance across all parsers
+ * of an application. Strings that are no longer used by any grammar are
+ * reclaimed by the garbage collector.
+ */
+final class StringPool {
+
+	private static final Map<String, WeakReference<String>> POOL = new WeakHashMap<String, WeakReference<String>>();
+
+	public static String intern(final String s) {
+		if (s == null) {
+			return null;
+		}
+
+		synchronized (POOL) {
+			final WeakReference<String> ref = POOL.get(s);
+			final String u = (ref == null) ? null : ref.get();
+
+			if (u != null) {
+				return u;
+			}
+
+			POOL.put(s, new WeakReference<String>(s));
+			return s;
+		}
+	}
+
+	private StringPool() {
+		// Prevent instantiation.
+	}
+}
@@ -0,0 +1,84 @@
+package org.docopt;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The "did you mean" suggestions for the arguments that did not match any
+ * usage pattern: long options that the help message does not describe, and
+ * words that are not commands but are close to one. They are computed when
+ * first requested, using the indices of the grammar.
+ */
+final class Suggestions {
+
+	/**
+	 * Returns the largest number of edits for a suggestion for a word of
+	 * {@code length} letters.
+	 */
+	static int limit(final int length) {
+		return (length <= 4) ? 1 : 2;
+	}
+
+	private final Grammar grammar;
+
+	private final List<LeafPattern> argv;
+
+	private Map<String, List<String>> suggestions = null;
+
+	public Suggestions(final Grammar grammar, final List<LeafPattern> argv) {
+		this.grammar = grammar;
+		this.argv = argv;
+	}
+
+	public synchronized Map<String, List<String>> get() {
+		if (suggestions == null) {
+			final Map<String, List<String>> u = new LinkedHashMap<String, List<String>>();
+
+			for (final LeafPattern p : argv) {
+				final String word;
+				final BkTree index;
+				final int length;
+
+				if (p instanceof Option && ((Option) p).getLong() != null) {
+					word = ((Option) p).getLong();
+					index = grammar.getLongOptionIndex();
+					// The dashes of a long option are not counted.
+					length = word.length() - 2;
+
+					if (grammar.isLongOption(word)) {
+						continue;
+					}
+				}
+				else if (p instanceof Argument && p.getName() == null
+						&& p.getValue() instanceof String) {
+					word = (String) p.getValue();
+					index = grammar.getCommandIndex();
+					length = word.length();
+
+					if (grammar.indexOf(word) != -1) {
+						continue;
+					}
+				}
+				else {
+					continue;
+				}
+
+				if (u.containsKey(word)) {
+					continue;
+				}
+
+				final List<String> closest = index.closest(word, limit(length));
+
+				if (!closest.isEmpty()) {
+					u.put(word, Collections.unmodifiableList(closest));
+				}
+			}
+
+			suggestions = Collections.unmodifiableMap(u);
+		}
+
+		return suggestions;
+	}
+}
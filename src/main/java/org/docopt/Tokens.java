@@ -1,16 +1,15 @@
 package org.docopt;
 
-import static org.docopt.Python.bool;
-import static org.docopt.Python.list;
-
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
-import org.docopt.Python.Re;
-
-final class Tokens extends ArrayList<String> {
-
-	private static final long serialVersionUID = 1L;
+/**
+ * The tokens that remain to be parsed. Tokens are taken from the front with
+ * {@link #move}, which only advances a position.
+ */
+final class Tokens extends AbstractList<String> {
 
 	public static Tokens withExitException(final List<String> source) {
 		return new Tokens(source, DocoptExitException.class);
@@ -20,6 +19,14 @@ final class Tokens extends ArrayList<String> {
 		return new Tokens(source, DocoptLanguageError.class);
 	}
 
+	/**
+	 * The source, or a copy of it if it does not support fast random access.
+	 * The source is not modified while the tokens are parsed.
+	 */
+	private final List<String> tokens;
+
+	private int position = 0;
+
 	private final Class<? extends Throwable> error;
 
 	public Tokens(final List<String> source,
@@ -27,31 +34,31 @@ final class Tokens extends ArrayList<String> {
 		// >>> self += source.split() if hasattr(source, 'split') else source
 		// In this implementation, source is always a list of strings, so no
 		// need to split.
-		addAll(source);
+		tokens = (source instanceof RandomAccess) ? source
+				: new ArrayList<String>(source);
 		this.error = error;
 	}
 
-	public static Tokens fromPattern(String source) {
-		source = Re.sub("([\\[\\]\\(\\)\\|]|\\.\\.\\.)", " $1 ", source);
-
-		List<String> $source;
-
-		// >>> source = [s for s in re.split('\s+|(\S*<.*?>)', source) if s]
-		{
-			$source = list();
+	public static Tokens fromPattern(final String source) {
+		return Tokens.withLanguageError(Lexer.patternTokens(source));
+	}
 
-			for (final String s : Re.split("\\s+|(\\S*<.*?>)", source)) {
-				if (bool(s)) {
-					$source.add(s);
-				}
-			}
+	@Override
+	public String get(final int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
 		}
 
-		return Tokens.withLanguageError($source);
+		return tokens.get(position + index);
+	}
+
+	@Override
+	public int size() {
+		return tokens.size() - position;
 	}
 
 	public String move() {
-		final String result = isEmpty() ? null : remove(0);
+		final String result = isEmpty() ? null : tokens.get(position++);
 		return result;
 	}
 
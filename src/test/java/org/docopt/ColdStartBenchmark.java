@@ -0,0 +1,338 @@
+package org.docopt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// @formatter:off
+/**
+ * Measures the cost of the first parse in a fresh JVM: class loading, regular
+ * expression compilation and interpreted execution of the parser.
+ * <p>
+ * Each sample document is parsed by {@code --forks} new JVMs, which report
+ * the time from JVM start to the parse result, the time spent constructing
+ * the parser and parsing, and the number of classes loaded and bytes
+ * allocated while doing so. Every run and a per-document summary of medians
+ * is written as one JSON object per line.
+ * <p>
+ * Run after {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes org.docopt.ColdStartBenchmark
+ * </pre>
+ *
+ * JVM options for the forked JVMs may be given after {@code --}, e.g&#46;
+ * {@code -- -Xshare:off}.
+ */
+// @formatter:on
+public final class ColdStartBenchmark {
+
+	private static final String doc = "Cold-start benchmark for docopt.\n"
+			+ "\n"
+			+ "Usage:\n"
+			+ "  ColdStartBenchmark [--forks=<n>] [--output=<file>] [--] [<jvm-option>...]\n"
+			+ "\n"
+			+ "Options:\n"
+			+ "  --forks=<n>      Number of JVMs per document [default: 10].\n"
+			+ "  --output=<file>  Write results to a file instead of stdout.\n"
+			+ "\n";
+
+	private static final String[] METRICS = { "jvmToResultMillis",
+			"constructNanos", "parseNanos", "classesLoaded", "allocatedBytes" };
+
+	/**
+	 * Runs in the forked JVM. Takes the path of a document followed by the
+	 * arguments to parse and prints the measurements as a JSON object.
+	 */
+	public static final class Child {
+
+		public static void main(final String[] args) throws IOException {
+			final ClassLoadingMXBean classes = ManagementFactory
+					.getClassLoadingMXBean();
+			final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			final long start = ManagementFactory.getRuntimeMXBean()
+					.getStartTime();
+
+			final String[] argv = Arrays.copyOfRange(args, 1, args.length);
+
+			final long classes0 = classes.getTotalLoadedClassCount();
+			final long allocated0 = allocatedBytes(threads);
+			final long t0 = System.nanoTime();
+
+			final InputStream stream = new FileInputStream(args[0]);
+			final Docopt docopt;
+
+			try {
+				docopt = new Docopt(stream).withExit(false);
+			}
+			finally {
+				stream.close();
+			}
+
+			final long t1 = System.nanoTime();
+			final Map<String, Object> result = docopt.parse(argv);
+			final long t2 = System.nanoTime();
+
+			final long end = System.currentTimeMillis();
+			final long allocated1 = allocatedBytes(threads);
+			final long classes1 = classes.getTotalLoadedClassCount();
+
+			if (result.isEmpty()) {
+				throw new IllegalStateException();
+			}
+
+			System.out.println(String.format("{\"%s\": %d, \"%s\": %d, "
+					+ "\"%s\": %d, \"%s\": %d, \"%s\": %d}", METRICS[0], end
+					- start, METRICS[1], t1 - t0, METRICS[2], t2 - t1,
+					METRICS[3], classes1 - classes0, METRICS[4],
+					(allocated0 < 0) ? -1 : allocated1 - allocated0));
+		}
+
+		private static long allocatedBytes(final ThreadMXBean threads) {
+			if (threads instanceof com.sun.management.ThreadMXBean) {
+				return ((com.sun.management.ThreadMXBean) threads)
+						.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+
+			return -1;
+		}
+
+		private Child() {
+			// Prevent instantiation.
+		}
+	}
+
+	private static final class Sample {
+
+		private final String name;
+
+		private final File doc;
+
+		private final List<String> argv;
+
+		public Sample(final String name, final File doc, final String... argv) {
+			this.name = name;
+			this.doc = doc;
+			this.argv = Arrays.asList(argv);
+		}
+	}
+
+	public static void main(final String[] args) throws IOException,
+			InterruptedException {
+		final Map<String, Object> opts = new Docopt(doc).parse(args);
+
+		final int forks = Integer.parseInt((String) opts.get("--forks"));
+		@SuppressWarnings("unchecked")
+		final List<String> jvmOptions = (List<String>) opts.get("<jvm-option>");
+		final String output = (String) opts.get("--output");
+
+		final OutputStream out = (output == null) ? System.out
+				: new FileOutputStream(output);
+		final PrintStream ps = new PrintStream(out, true, "UTF-8");
+
+		try {
+			for (final Sample sample : samples()) {
+				final Map<String, List<Long>> runs = new LinkedHashMap<String, List<Long>>();
+
+				for (final String metric : METRICS) {
+					runs.put(metric, new ArrayList<Long>());
+				}
+
+				for (int i = 0; i < forks; i++) {
+					final String json = fork(sample, jvmOptions);
+
+					for (final String metric : METRICS) {
+						runs.get(metric).add(value(json, metric));
+					}
+
+					ps.println(String.format("{\"doc\": \"%s\", \"run\": %d, %s",
+							sample.name, i, json.substring(1)));
+				}
+
+				final StringBuilder sb = new StringBuilder();
+
+				sb.append(String.format("{\"doc\": \"%s\", \"runs\": %d",
+						sample.name, forks));
+
+				for (final Map.Entry<String, List<Long>> e : runs.entrySet()) {
+					sb.append(String.format(", \"%sMedian\": %d", e.getKey(),
+							median(e.getValue())));
+				}
+
+				sb.append("}");
+
+				ps.println(sb);
+			}
+		}
+		finally {
+			if (out != System.out) {
+				ps.close();
+			}
+		}
+	}
+
+	private static List<Sample> samples() throws IOException {
+		final List<Sample> samples = new ArrayList<Sample>();
+
+		final File navalFate = temp("naval_fate");
+		copy(ColdStartBenchmark.class
+				.getResourceAsStream("/benchmark/naval_fate.txt"), navalFate);
+		samples.add(new Sample("naval_fate", navalFate, "ship", "Guardian",
+				"move", "100", "150", "--speed=15"));
+
+		// Many usage patterns, as in a program with a lot of commands.
+		{
+			final StringBuilder sb = new StringBuilder("Usage:\n");
+
+			for (int i = 0; i < 200; i++) {
+				sb.append(String.format(
+						"  prog command%d <source> <target> [--force] "
+								+ "[--verbose...]\n", i));
+			}
+
+			sb.append("\nOptions:\n");
+			sb.append("  -f --force    Overwrite.\n");
+			sb.append("  -v --verbose  Print more text.\n");
+
+			final File file = temp("commands");
+			write(sb.toString(), file);
+			samples.add(new Sample("commands_200", file, "command199", "a",
+					"b", "-vv"));
+		}
+
+		// Many option descriptions, as in a program with a lot of settings.
+		{
+			final StringBuilder sb = new StringBuilder(
+					"Usage: prog [options] <file>...\n\nOptions:\n");
+
+			for (int i = 0; i < 500; i++) {
+				if (i % 2 == 0) {
+					sb.append(String.format("  --flag%d  Flag.\n", i));
+				}
+				else {
+					sb.append(String.format(
+							"  --setting%d=<value>  Setting [default: %d].\n",
+							i, i));
+				}
+			}
+
+			final File file = temp("options");
+			write(sb.toString(), file);
+			samples.add(new Sample("options_500", file, "--setting1=x",
+					"--flag498", "a", "b", "c"));
+		}
+
+		return samples;
+	}
+
+	private static String fork(final Sample sample,
+			final List<String> jvmOptions) throws IOException,
+			InterruptedException {
+		final List<String> command = new ArrayList<String>();
+
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Child.class.getName());
+		command.add(sample.doc.getPath());
+		command.addAll(sample.argv);
+
+		final Process process = new ProcessBuilder(command)
+				.redirectErrorStream(true).start();
+
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), "UTF-8"));
+
+		final StringBuilder sb = new StringBuilder();
+		String json = null;
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				sb.append(line).append('\n');
+
+				if (line.startsWith("{")) {
+					json = line;
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		if (process.waitFor() != 0 || json == null) {
+			throw new IllegalStateException(String.format(
+					"%s failed with exit code %d:\n%s", sample.name,
+					process.exitValue(), sb));
+		}
+
+		return json;
+	}
+
+	private static long value(final String json, final String metric) {
+		final String key = "\"" + metric + "\": ";
+		final int i = json.indexOf(key) + key.length();
+		int j = i;
+
+		while (j < json.length()
+				&& (json.charAt(j) == '-' || Character.isDigit(json.charAt(j)))) {
+			j++;
+		}
+
+		return Long.parseLong(json.substring(i, j));
+	}
+
+	private static long median(final List<Long> values) {
+		final List<Long> u = new ArrayList<Long>(values);
+		Collections.sort(u);
+		return u.get(u.size() / 2);
+	}
+
+	private static File temp(final String name) throws IOException {
+		final File file = File.createTempFile(name, ".txt");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void copy(final InputStream in, final File file)
+			throws IOException {
+		write(Docopt.read(in), file);
+	}
+
+	private static void write(final String s, final File file)
+			throws IOException {
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8");
+
+		try {
+			writer.write(s);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private ColdStartBenchmark() {
+		// Prevent instantiation.
+	}
+}
@@ -0,0 +1,109 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a {@link CompactGrammar} inflates to the grammar it was created
+ * from, and that {@link Docopt#withCompactGrammar} does not change results.
+ */
+public final class CompactGrammarTest extends TestCase {
+
+	/**
+	 * Every kind of node and default value, a shared {@code [options]} that
+	 * is stored once, and an option in both the pattern and the shortcut.
+	 */
+	private static final String DOC = "Usage:\n"
+			+ "  prog ship new <name>... [options]\n"
+			+ "  prog ship <name> move <x> <y> [--speed=<kn>] [options]\n"
+			+ "  prog (-v | -q)... [<file>]\n"
+			+ "  prog mine (set|remove) <x> <y> [--moored|--drifting]\n\n"
+			+ "Options:\n"
+			+ "  -v              Verbose.\n"
+			+ "  -q              Quiet.\n"
+			+ "  --speed=<kn>    Speed in knots [default: 10].\n"
+			+ "  --tag=<t>       Tags [default: a b].\n"
+			+ "  --moored        Moored (anchored) mine.\n"
+			+ "  --drifting      Drifting mine.\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static Object parsed(final Docopt docopt, final String... argv) {
+		try {
+			return docopt.parse(argv);
+		}
+		catch (final DocoptExitException e) {
+			return e.getKind();
+		}
+	}
+
+	private static List<Pattern> children(final Pattern... children) {
+		return Arrays.asList(children);
+	}
+
+	public void testInflatesSameGrammar() {
+		final Option v = new Option("-v", null);
+		final Option speed = new Option(null, "--speed", 1, "10");
+		final Grammar grammar = new Grammar(Arrays.asList(v, speed),
+				new Required(children(new Either(children(
+						new Required(children(new Command("go"),
+								new OneOrMore(children(new Argument("<x>"))),
+								new Optional(children(new OneOrMore(
+										children(v)))))),
+						new Required(children(new Command("stop"),
+								new Optional(children(speed)))))))));
+		final Grammar u = new CompactGrammar(grammar).inflate();
+
+		assertEquals(grammar.getPattern().toString(), u.getPattern()
+				.toString());
+		assertEquals(grammar.getOptions().toString(), u.getOptions()
+				.toString());
+		assertEquals(grammar.getLineCount(), u.getLineCount());
+		assertEquals(grammar.size(), u.size());
+
+		for (int i = 0; i < grammar.size(); i++) {
+			assertEquals(grammar.getName(i), u.getName(i));
+			assertEquals(grammar.getDefault(i), u.getDefault(i));
+		}
+
+		// An option in the pattern is the same object as its description.
+		final List<Pattern> flat = u.getPattern().flat(Option.class);
+
+		for (final Pattern p : flat) {
+			assertTrue(p.toString(), u.getOptions().contains(p));
+			assertSame(p, u.getOptions().get(u.getOptions().indexOf(p)));
+		}
+	}
+
+	public void testSameResults() {
+		final Docopt plain = docopt();
+		final Docopt compact = docopt().withCompactGrammar(true);
+
+		for (final String[] argv : new String[][] {
+				{ "ship", "new", "a", "b", "-v" },
+				{ "ship", "a", "move", "1", "2", "--speed=20", "--tag=x" },
+				{ "-vqv", "f" }, { "mine", "set", "1", "2", "--moored" },
+				{ "mine", "set", "1", "2", "--moored", "--drifting" },
+				{ "ship" } }) {
+			assertEquals(Arrays.toString(argv), parsed(plain, argv), parsed(
+					compact, argv));
+		}
+	}
+
+	public void testToggle() {
+		final Docopt docopt = docopt();
+		final Object expected = parsed(docopt, "ship", "new", "a");
+
+		// Each change of form keeps the grammar.
+		for (final boolean enabled : new boolean[] { true, true, false, true,
+				false, false }) {
+			assertEquals(String.valueOf(enabled), expected, parsed(docopt
+					.withCompactGrammar(enabled), "ship", "new", "a"));
+		}
+	}
+}
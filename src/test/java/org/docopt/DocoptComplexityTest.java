@@ -0,0 +1,123 @@
+package org.docopt;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the estimates of {@link Docopt#analyze}.
+ */
+public final class DocoptComplexityTest extends TestCase {
+
+	private static final String NAVAL_FATE = "Naval Fate.\n\n"
+			+ "Usage:\n"
+			+ "  naval_fate ship new <name>...\n"
+			+ "  naval_fate ship <name> move <x> <y> [--speed=<kn>]\n"
+			+ "  naval_fate mine (set|remove) <x> <y> [--moored|--drifting]\n\n"
+			+ "Options:\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n"
+			+ "  --moored      Moored (anchored) mine.\n"
+			+ "  --drifting    Drifting mine.\n";
+
+	/**
+	 * Repetitions nested two deep, with alternatives inside.
+	 */
+	private static final String NESTED = "Usage: prog ((<a> (b|c))...)...\n";
+
+	/**
+	 * Four optional groups of two alternatives each.
+	 */
+	private static final String OPTIONAL = "Usage: prog [a|b] [c|d] [e|f] "
+			+ "[g|h] <x>\n";
+
+	public void testNavalFate() {
+		final DocoptComplexity u = Docopt.analyze(NAVAL_FATE);
+
+		assertEquals(3, u.getUsageLines());
+		assertEquals(27, u.getSize());
+		assertEquals(6, u.getDepth());
+		assertEquals(1, u.getRepetitionDepth());
+		assertEquals(0, u.getRepeatedAlternatives());
+
+		// Only <name>... is repeated, and is expanded into two alternatives.
+		assertEquals(6, u.getExpansionSize());
+
+		// The two ship lines, and the two options that neither start with.
+		assertEquals(2, u.getOverlappingAlternatives());
+
+		// One more step per argument, for the one repeated element.
+		assertEquals(27, u.estimateSteps(0));
+		assertEquals(37, u.estimateSteps(10));
+	}
+
+	public void testNestedRepetition() {
+		final DocoptComplexity u = Docopt.analyze(NESTED);
+
+		assertEquals(2, u.getRepetitionDepth());
+		assertEquals(2, u.getRepeatedAlternatives());
+		assertEquals(0, u.getOverlappingAlternatives());
+		assertEquals(16, u.getExpansionSize());
+
+		// 3 nodes outside the repetitions, 2 in one and 6 in both.
+		assertEquals(11, u.estimateSteps(0));
+		assertEquals(3 + 2 * 3 + 6 * 9, u.estimateSteps(2));
+		assertEquals(3 + 2 * 11 + 6 * 121, u.estimateSteps(10));
+
+		// The estimate saturates rather than overflowing.
+		assertEquals(Long.MAX_VALUE, u.estimateSteps(Integer.MAX_VALUE));
+	}
+
+	public void testOptionalAlternatives() {
+		final DocoptComplexity u = Docopt.analyze(OPTIONAL);
+
+		assertEquals(0, u.getRepetitionDepth());
+		assertEquals(2 * 2 * 2 * 2, u.getExpansionSize());
+		assertEquals(u.estimateSteps(0), u.estimateSteps(1000));
+	}
+
+	public void testRejectsExpansion() {
+		assertEquals(16, Docopt.analyze(OPTIONAL, 16, 19, 0)
+				.getExpansionSize());
+
+		try {
+			Docopt.analyze(OPTIONAL, 15, Long.MAX_VALUE, 0);
+			fail();
+		}
+		catch (final DocoptComplexityException e) {
+			assertEquals(16, e.getComplexity().getExpansionSize());
+			assertTrue(e.getMessage(), e.getMessage().startsWith(
+					"Usage patterns expand into more than 15 alternatives"));
+		}
+	}
+
+	public void testRejectsSteps() {
+		// The expansion is small, but the steps grow with the arguments.
+		assertEquals(63, Docopt.analyze(NESTED, 16, 63, 2).estimateSteps(2));
+
+		try {
+			Docopt.analyze(NESTED, Long.MAX_VALUE, 62, 2);
+			fail();
+		}
+		catch (final DocoptComplexityException e) {
+			assertEquals(2, e.getComplexity().getRepetitionDepth());
+			assertTrue(e.getMessage(), e.getMessage().startsWith(
+					"Usage patterns exceed 62 steps for 2 arguments"));
+		}
+	}
+
+	public void testMalformed() {
+		try {
+			Docopt.analyze("Usage: prog (<x>\n", 1, 1, 0);
+			fail();
+		}
+		catch (final DocoptLanguageError e) {
+			// Expected, and not a complexity exception.
+		}
+	}
+
+	public void testParser() {
+		// Fixing the grammar does not change the structure of its pattern.
+		for (final String doc : new String[] { NAVAL_FATE, NESTED, OPTIONAL }) {
+			assertEquals(Docopt.analyze(doc).toString(), new Docopt(doc)
+					.getComplexity().toString());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the calls that {@link Docopt#parseInto(List, DocoptHandler)} makes
+ * to a {@link DocoptHandler}.
+ */
+public final class DocoptHandlerTest extends TestCase {
+
+	private static final String DOC = "Usage:\n"
+			+ "  prog ship <name> move <x> [--speed=<kn>] [-v...] [-q]\n"
+			+ "  prog mine <x>... [--tag=<t>]...\n"
+			+ "  prog (go)...\n\n"
+			+ "Options:\n"
+			+ "  -v            Verbose.\n"
+			+ "  -q            Quiet.\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n"
+			+ "  --tag=<t>     Tags [default: a b].\n";
+
+	/**
+	 * Records each call as its method and arguments, and checks that every
+	 * element is reported once.
+	 */
+	private static final class Recorder implements DocoptHandler {
+
+		final List<String> calls = new ArrayList<String>();
+
+		final Map<String, Object> values = new HashMap<String, Object>();
+
+		private void put(final String call, final String name,
+				final Object value) {
+			assertFalse(name, values.containsKey(name));
+			values.put(name, value);
+			calls.add(call + " " + name + " " + value);
+		}
+
+		@Override
+		public void onCommand(final String name) {
+			put("onCommand", name, true);
+		}
+
+		@Override
+		public void onOption(final String name, final Object value) {
+			put("onOption", name, value);
+		}
+
+		@Override
+		public void onArgument(final String name, final Object value) {
+			put("onArgument", name, value);
+		}
+
+		@Override
+		public void onCount(final String name, final int n) {
+			put("onCount", name, n);
+		}
+
+		@Override
+		public void onDefault(final String name, final Object value) {
+			put("onDefault", name, value);
+		}
+	}
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static Recorder handled(final Docopt docopt, final String... argv) {
+		final Recorder u = new Recorder();
+		docopt.parseInto(argv, u);
+		return u;
+	}
+
+	public void testCalls() {
+		assertEquals(Arrays.asList(
+				"onCommand ship true",
+				"onArgument <name> a",
+				"onCommand move true",
+				"onArgument <x> [1]",
+				"onOption --speed 5",
+				"onCount -v 2",
+				"onDefault -q false",
+				"onDefault mine false",
+				"onDefault --tag [a, b]",
+				"onDefault go 0"),
+				handled(docopt(), "ship", "a", "move", "1", "--speed=5", "-vv")
+						.calls);
+	}
+
+	public void testRepeatedElements() {
+		assertEquals(Arrays.asList(
+				"onDefault ship false",
+				"onDefault <name> null",
+				"onDefault move false",
+				"onArgument <x> [1, 2]",
+				"onDefault --speed 10",
+				"onDefault -v 0",
+				"onDefault -q false",
+				"onCommand mine true",
+				"onOption --tag [c]",
+				"onDefault go 0"),
+				handled(docopt(), "mine", "1", "2", "--tag=c").calls);
+
+		assertEquals(3, handled(docopt(), "go", "go", "go").values.get("go"));
+	}
+
+	public void testAgreesWithParse() {
+		final Docopt docopt = docopt();
+
+		for (final String[] argv : new String[][] {
+				{ "ship", "a", "move", "1", "-q" }, { "mine", "1" },
+				{ "mine", "1", "--tag=c", "--tag=d" }, { "go" } }) {
+			assertEquals(Arrays.toString(argv), docopt.parse(argv), handled(
+					docopt, argv).values);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testListDefaultsAreCopied() {
+		final Docopt docopt = docopt();
+
+		((List<Object>) handled(docopt, "mine", "1").values.get("--tag"))
+				.add("c");
+
+		assertEquals(Arrays.asList("a", "b"), handled(docopt, "mine", "1")
+				.values.get("--tag"));
+		assertEquals(Arrays.asList("a", "b"), docopt.parse("mine", "1").get(
+				"--tag"));
+	}
+
+	public void testUsageError() {
+		final Recorder u = new Recorder();
+
+		try {
+			docopt().parseInto(new String[] { "ship", "a", "move" }, u);
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.USAGE_ERROR, e.getKind());
+		}
+
+		// Nothing is reported for a command line that does not match.
+		assertTrue(u.calls.isEmpty());
+	}
+}
@@ -0,0 +1,296 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the ordering and backpressure of a {@link DocoptProcessor}.
+ */
+public final class DocoptProcessorTest extends TestCase {
+
+	private static final String DOC = "Usage: prog <n>\n";
+
+	/**
+	 * Runs tasks in the calling thread, so that the processor is
+	 * deterministic.
+	 */
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * An upstream that sends nothing by itself, and counts what is requested.
+	 */
+	private static final class Source implements DocoptFlow.Subscription {
+
+		long requested = 0;
+
+		boolean cancelled = false;
+
+		@Override
+		public synchronized void request(final long n) {
+			requested += n;
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * A downstream that records what it receives and requests nothing by
+	 * itself.
+	 */
+	private static final class Sink implements
+			DocoptFlow.Subscriber<DocoptOutcome> {
+
+		DocoptFlow.Subscription subscription = null;
+
+		final List<DocoptOutcome> outcomes = new ArrayList<DocoptOutcome>();
+
+		Throwable error = null;
+
+		boolean complete = false;
+
+		@Override
+		public synchronized void onSubscribe(
+				final DocoptFlow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public synchronized void onNext(final DocoptOutcome outcome) {
+			outcomes.add(outcome);
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void onError(final Throwable throwable) {
+			error = throwable;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void onComplete() {
+			complete = true;
+			notifyAll();
+		}
+
+		public synchronized void awaitTermination() throws InterruptedException {
+			final long deadline = System.nanoTime()
+					+ TimeUnit.SECONDS.toNanos(10);
+
+			while (!complete && error == null) {
+				final long timeout = deadline - System.nanoTime();
+				assertTrue(timeout > 0);
+				TimeUnit.NANOSECONDS.timedWait(this, timeout);
+			}
+		}
+	}
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	public void testBackpressure() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 2, 3);
+		final Sink sink = new Sink();
+		final Source source = new Source();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(source);
+
+		// No more than the processor can hold is requested.
+		assertEquals(6, source.requested);
+
+		for (int i = 0; i < 6; i++) {
+			processor.onNext(String.valueOf(i));
+		}
+
+		// Nothing is published or requested until the subscriber asks.
+		assertTrue(sink.outcomes.isEmpty());
+		assertEquals(6, source.requested);
+
+		sink.subscription.request(2);
+		assertEquals(2, sink.outcomes.size());
+		assertEquals(8, source.requested);
+
+		sink.subscription.request(Long.MAX_VALUE);
+		assertEquals(6, sink.outcomes.size());
+		assertEquals(12, source.requested);
+
+		processor.onComplete();
+		assertTrue(sink.complete);
+		assertNull(sink.error);
+	}
+
+	public void testOrder() throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final DocoptProcessor<List<String>> processor = DocoptProcessor
+				.forArgv(docopt(), executor, 3, 2);
+		final Sink sink = new Sink();
+		final Source source = new Source();
+		final int count = 200;
+
+		try {
+			processor.subscribe(sink);
+			sink.subscription.request(Long.MAX_VALUE);
+			processor.onSubscribe(source);
+
+			// Usage errors are outcomes too.
+			for (int i = 0; i < count; i++) {
+				final List<String> argv = new ArrayList<String>();
+
+				for (int j = 0; j <= i % 2; j++) {
+					argv.add(String.valueOf(i));
+				}
+
+				// Wait for demand, as a well-behaved upstream does.
+				while (true) {
+					synchronized (source) {
+						if (source.requested > i) {
+							break;
+						}
+					}
+
+					Thread.sleep(1);
+				}
+
+				processor.onNext(argv);
+			}
+
+			processor.onComplete();
+			sink.awaitTermination();
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertNull(sink.error);
+		assertEquals(count, sink.outcomes.size());
+
+		for (int i = 0; i < count; i++) {
+			final DocoptOutcome u = sink.outcomes.get(i);
+
+			if (i % 2 == 0) {
+				assertEquals(DocoptOutcome.Kind.RESULT, u.getKind());
+				assertEquals(String.valueOf(i), u.getResult().get("<n>"));
+			}
+			else {
+				assertEquals(DocoptOutcome.Kind.USAGE_ERROR, u.getKind());
+			}
+		}
+	}
+
+	public void testUpstreamError() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 1, 1);
+		final Sink sink = new Sink();
+		final IllegalStateException error = new IllegalStateException();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(new Source());
+		processor.onNext("1");
+		processor.onError(error);
+
+		// The error replaces the outcome that was not published.
+		assertSame(error, sink.error);
+		assertTrue(sink.outcomes.isEmpty());
+	}
+
+	public void testNullItem() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 1, 1);
+		final Sink sink = new Sink();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(new Source());
+
+		try {
+			processor.onNext(null);
+			fail();
+		}
+		catch (final NullPointerException e) {
+			// Expected.
+		}
+
+		// Nothing was queued.
+		sink.subscription.request(1);
+		assertTrue(sink.outcomes.isEmpty());
+		assertNull(sink.error);
+	}
+
+	public void testCancel() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 1, 1);
+		final Sink sink = new Sink();
+		final Source source = new Source();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(source);
+		sink.subscription.cancel();
+		assertTrue(source.cancelled);
+
+		processor.onNext("1");
+		sink.subscription.request(1);
+		assertTrue(sink.outcomes.isEmpty());
+	}
+
+	public void testInvalidRequest() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 1, 1);
+		final Sink sink = new Sink();
+		final Source source = new Source();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(source);
+		sink.subscription.request(0);
+
+		assertTrue(sink.error instanceof IllegalArgumentException);
+		assertTrue(source.cancelled);
+	}
+
+	public void testRejectedExecution() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), new Executor() {
+
+					@Override
+					public void execute(final Runnable command) {
+						throw new RejectedExecutionException();
+					}
+				}, 1, 1);
+		final Sink sink = new Sink();
+
+		processor.subscribe(sink);
+		processor.onSubscribe(new Source());
+		processor.onNext("1");
+
+		assertTrue(sink.error instanceof RejectedExecutionException);
+	}
+
+	public void testSecondSubscriber() {
+		final DocoptProcessor<String> processor = DocoptProcessor
+				.forCommandLines(docopt(), DIRECT, 1, 1);
+		final Sink second = new Sink();
+
+		processor.subscribe(new Sink());
+		processor.subscribe(second);
+
+		assertNotNull(second.subscription);
+		assertTrue(second.error instanceof IllegalStateException);
+	}
+}
@@ -0,0 +1,175 @@
+package org.docopt;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the reading of help messages from channels, streams and files.
+ */
+public final class DocoptReadTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String DOC = "Usage: prog <n\u00e4me>\n";
+
+	/**
+	 * A channel that returns at most {@code chunk} bytes per read, and then
+	 * fails if {@code failing}.
+	 */
+	private static final class Chunked implements ReadableByteChannel {
+
+		private final ByteBuffer bytes;
+
+		private final int chunk;
+
+		private final boolean failing;
+
+		private boolean open = true;
+
+		public Chunked(final byte[] bytes, final int chunk,
+				final boolean failing) {
+			this.bytes = ByteBuffer.wrap(bytes);
+			this.chunk = chunk;
+			this.failing = failing;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+			if (!bytes.hasRemaining()) {
+				if (failing) {
+					throw new IOException("failed");
+				}
+
+				return -1;
+			}
+
+			final int n = Math.min(chunk,
+					Math.min(dst.remaining(), bytes.remaining()));
+			final ByteBuffer u = bytes.duplicate();
+			u.limit(u.position() + n);
+			dst.put(u);
+			bytes.position(bytes.position() + n);
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
+	private static String repeat(final String s, final int n) {
+		final StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < n; i++) {
+			sb.append(s);
+		}
+
+		return sb.toString();
+	}
+
+	public void testCharactersSplitAcrossReads() throws IOException {
+		// Multi-byte characters on either side of the 8 KiB buffer boundary,
+		// read one byte at a time.
+		final String s = repeat("a", 8191)
+				+ repeat("\u00e4\u20ac\ud83d\ude00", 100);
+		final Chunked channel = new Chunked(s.getBytes(UTF_8), 1, false);
+
+		assertEquals(s, Docopt.read(channel, UTF_8, -1, false));
+		assertTrue(channel.isOpen());
+	}
+
+	public void testSizeHint() throws IOException {
+		final String s = repeat("\u00e4", 5000);
+		final byte[] bytes = s.getBytes(UTF_8);
+
+		assertEquals(s, Docopt.read(new Chunked(bytes, 4096, false), UTF_8,
+				bytes.length, false));
+
+		// A hint that is too small only costs copying.
+		assertEquals(s, Docopt.read(new Chunked(bytes, 4096, false), UTF_8,
+				1, false));
+	}
+
+	public void testOtherCharsets() throws IOException {
+		final Charset utf16 = Charset.forName("UTF-16");
+
+		// The decoder of each thread is replaced when the charset changes.
+		assertEquals(DOC, Docopt.read(new Chunked(DOC.getBytes(utf16), 3,
+				false), utf16, -1, false));
+		assertEquals(DOC, Docopt.read(new Chunked(DOC.getBytes(UTF_8), 3,
+				false), UTF_8, -1, false));
+	}
+
+	public void testMalformedInputIsReplaced() throws IOException {
+		final byte[] bytes = { 'a', (byte) 0xff, 'b' };
+
+		assertEquals("a\ufffdb", Docopt.read(new Chunked(bytes, 1, false),
+				UTF_8, -1, false));
+	}
+
+	public void testErrors() {
+		final byte[] bytes = DOC.getBytes(UTF_8);
+
+		try {
+			Docopt.read(new Chunked(bytes, 4, true), UTF_8, -1, false);
+			fail();
+		}
+		catch (final IOException e) {
+			assertEquals("failed", e.getMessage());
+		}
+
+		try {
+			new Docopt(new Chunked(bytes, 4, true), UTF_8);
+			fail();
+		}
+		catch (final IOException e) {
+			assertEquals("failed", e.getMessage());
+		}
+
+		// A stream is read leniently, like Scanner.
+		assertEquals(DOC, Docopt.read(Channels.newInputStream(new Chunked(
+				bytes, 4, true)), UTF_8));
+	}
+
+	public void testSources() throws IOException {
+		final byte[] bytes = DOC.getBytes(UTF_8);
+		final File file = File.createTempFile("docopt", ".txt");
+
+		try {
+			final OutputStream out = new FileOutputStream(file);
+
+			try {
+				out.write(bytes);
+			}
+			finally {
+				out.close();
+			}
+
+			for (final Docopt docopt : new Docopt[] {
+					new Docopt(file, UTF_8),
+					new Docopt(new Chunked(bytes, 4, false), UTF_8),
+					new Docopt(new ByteArrayInputStream(bytes), UTF_8),
+					new Docopt(new ByteArrayInputStream(bytes)) }) {
+				assertEquals("x", docopt.parse("x").get("<n\u00e4me>"));
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
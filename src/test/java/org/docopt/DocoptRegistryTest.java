@@ -0,0 +1,101 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the dispatch of command lines by a {@link DocoptRegistry}.
+ */
+public final class DocoptRegistryTest extends TestCase {
+
+	private static Docopt docopt(final String doc) {
+		return new Docopt(doc).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private final Docopt remote = docopt("Usage: remote [-v]\n\n"
+			+ "Options: -v  Verbose.\n");
+
+	private final Docopt remoteAdd = docopt("Usage: add <name> <url>\n");
+
+	private DocoptRegistry registry() {
+		final DocoptRegistry u = new DocoptRegistry();
+		u.register("remote", remote);
+		u.register("remote  add", remoteAdd);
+		return u;
+	}
+
+	public void testLongestMatch() {
+		final DocoptRegistry.Dispatch u = registry().dispatch("remote", "add",
+				"origin", "url");
+
+		assertSame(remoteAdd, u.getDocopt());
+		assertEquals(Arrays.asList("remote", "add"), u.getCommand());
+		assertEquals(Arrays.asList("origin", "url"), u.getArgv());
+
+		final Map<String, Object> result = u.parse();
+		assertEquals("origin", result.get("<name>"));
+		assertEquals("url", result.get("<url>"));
+	}
+
+	public void testShorterMatch() {
+		final DocoptRegistry.Dispatch u = registry().dispatch("remote", "-v");
+
+		assertSame(remote, u.getDocopt());
+		assertEquals(Arrays.asList("-v"), u.getArgv());
+		assertEquals(Boolean.TRUE, u.parse().get("-v"));
+
+		// A word that is not a longer command is left to the parser.
+		assertSame(remote, registry().dispatch("remote", "rm").getDocopt());
+	}
+
+	public void testPrefixWithoutParser() {
+		final DocoptRegistry registry = new DocoptRegistry();
+		registry.register("remote add", remoteAdd);
+
+		assertNull(registry.get("remote"));
+		assertNull(registry.dispatch("remote", "origin"));
+		assertSame(remoteAdd, registry.dispatch("remote", "add")
+				.getDocopt());
+	}
+
+	public void testReplaceAndUnregister() {
+		final DocoptRegistry registry = registry();
+		final Docopt other = docopt("Usage: add <name>\n");
+
+		assertSame(remoteAdd, registry.register("remote add", other));
+		assertSame(other, registry.get("remote add"));
+
+		assertSame(other, registry.unregister("remote add"));
+		assertNull(registry.get("remote add"));
+		assertNull(registry.unregister("remote add"));
+
+		// The shorter command is still dispatched to.
+		assertSame(remote, registry.dispatch("remote", "add").getDocopt());
+
+		assertSame(remote, registry.unregister("remote"));
+		assertNull(registry.dispatch("remote", "add"));
+	}
+
+	public void testUnknownCommand() {
+		try {
+			registry().parse("fetch");
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(1, e.getExitCode());
+		}
+	}
+
+	public void testNoWords() {
+		try {
+			registry().register(" ", remote);
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package org.docopt;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the reuse of a {@link DocoptResult} holder by
+ * {@link Docopt#parseInto}.
+ */
+public final class DocoptResultTest extends TestCase {
+
+	private static final String DOC = "Usage: prog [-v] [--speed=<kn>] <name>...\n"
+			+ "\nOptions:\n  -v            Verbose.\n"
+			+ "  --speed=<kn>  Speed [default: 10].\n";
+
+	private static final int WARM_UP = 20000;
+
+	private static final int ROUNDS = 20;
+
+	private static final int ITERATIONS = 10;
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	public void testDefaults() {
+		final Docopt docopt = docopt();
+		final Map<String, Object> u = docopt.newResult();
+
+		assertEquals(Boolean.FALSE, u.get("-v"));
+		assertEquals("10", u.get("--speed"));
+		assertEquals(Arrays.asList(), u.get("<name>"));
+	}
+
+	public void testOverwritesPreviousParse() {
+		final Docopt docopt = docopt();
+		final DocoptResult u = docopt.newResult();
+
+		assertSame(u, docopt.parseInto(new String[] { "-v", "--speed=20", "a",
+				"b" }, u));
+		assertEquals(Boolean.TRUE, u.get("-v"));
+		assertEquals("20", u.get("--speed"));
+		assertEquals(Arrays.asList("a", "b"), u.get("<name>"));
+
+		docopt.parseInto(new String[] { "c" }, u);
+		assertEquals(docopt.parse("c"), u);
+	}
+
+	public void testRejectsHolderOfOtherParser() {
+		try {
+			docopt().parseInto(new String[] { "a" }, docopt().newResult());
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	public void testReadOnly() {
+		try {
+			docopt().newResult().put("-v", Boolean.TRUE);
+			fail();
+		}
+		catch (final UnsupportedOperationException e) {
+			// Expected.
+		}
+	}
+
+	public void testRepeatedElementsReuseLists() {
+		final Docopt docopt = docopt();
+		final DocoptResult u = docopt.newResult();
+		final Object names = u.get("<name>");
+
+		docopt.parseInto(new String[] { "a", "b" }, u);
+		assertSame(names, u.get("<name>"));
+		assertEquals(Arrays.asList("a", "b"), names);
+
+		// Through the general path too.
+		docopt.parseInto(new String[] { "--speed=5", "c" }, u);
+		assertSame(names, u.get("<name>"));
+		assertEquals(Arrays.asList("c"), names);
+		assertEquals("5", u.get("--speed"));
+	}
+
+	public void testFallsBackToParse() {
+		final Docopt docopt = docopt();
+		final DocoptResult u = docopt.newResult();
+
+		// Attached and missing option arguments, unknown options, prefixes.
+		for (final String[] argv : new String[][] { { "--speed=5", "a" },
+				{ "-v", "--sp", "7", "a" }, { "a", "--", "-v" },
+				{ "-x", "a" }, { "a", "--speed" }, { "-v" }, { "-vv", "a" } }) {
+			Object expected;
+
+			try {
+				expected = docopt.parse(argv);
+			}
+			catch (final DocoptExitException e) {
+				expected = e.getKind();
+			}
+
+			Object actual;
+
+			try {
+				actual = new HashMap<String, Object>(
+						docopt.parseInto(argv, u));
+			}
+			catch (final DocoptExitException e) {
+				actual = e.getKind();
+			}
+
+			assertEquals(Arrays.toString(argv), expected, actual);
+		}
+	}
+
+	/**
+	 * Usage patterns and command lines that {@link Docopt#parseInto} records
+	 * into the holder without the general matcher, each followed by the
+	 * command lines to parse.
+	 */
+	private static final String[][] CASES = {
+			{ "Usage: prog [-v...] [-q]\n\nOptions:\n  -v  Verbose.\n"
+					+ "  -q  Quiet.\n", "-vvv", "-v -q -v", "", "-q" },
+			{ "Usage: prog [--file=<f>]... <x>\n\nOptions:\n"
+					+ "  --file=<f>  File [default: a b].\n", "x",
+					"--file 1 x --file 2", "--fi 3 x" },
+			{ "Usage:\n  prog add <x>...\n  prog rm [-f] <x>\n  prog rm rm\n",
+					"add 1 2 3", "rm -f 1", "rm rm", "rm 1" },
+			{ "Usage: prog go go [<dir>]\n", "go go", "go go up" },
+			{ "Usage:\n  prog <a>\n  prog <a> <b>\n  prog <a> <b> [<c>]\n",
+					"1", "1 2", "1 2 3" },
+			{ "Usage: prog [options] (<a> <b>)...\n\nOptions:\n"
+					+ "  -k <n>  Key [default: 3].\n  -x      X.\n",
+					"1 2 3 4", "-k 5 -x 1 2", "-xk 7 1 2", "1 -- -x" },
+			{ "Usage: prog [-v] <cmd> [<args>...]\n\nOptions:\n"
+					+ "  -v  Verbose.\n", "-v run -v", "run -- a" } };
+
+	private static Object parsed(final Docopt docopt, final List<String> argv) {
+		try {
+			return docopt.parse(argv);
+		}
+		catch (final DocoptExitException e) {
+			return e.getKind();
+		}
+	}
+
+	public void testRecordsLikeParse() {
+		for (final String[] c : CASES) {
+			final Docopt docopt = new Docopt(c[0]).withStdOut(null)
+					.withStdErr(null).withExit(false).withOptionsFirst(
+							c[0].contains("<cmd>"));
+			final DocoptResult u = docopt.newResult();
+
+			// Each command line after the others, so that the holder is
+			// reset in between.
+			for (int round = 0; round < 2; round++) {
+				for (int i = 1; i < c.length; i++) {
+					final List<String> argv = c[i].isEmpty() ? Arrays
+							.<String> asList() : Arrays.asList(c[i].split(" "));
+					Object actual;
+
+					try {
+						actual = new HashMap<String, Object>(docopt.parseInto(
+								argv, u));
+					}
+					catch (final DocoptExitException e) {
+						actual = e.getKind();
+					}
+
+					assertEquals(c[i], parsed(docopt, argv), actual);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Once the leaves of the holder have been created, parsing into it
+	 * allocates nothing.
+	 */
+	public void testAllocatesNothing() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+
+		final com.sun.management.ThreadMXBean u = (com.sun.management.ThreadMXBean) threads;
+		final long id = Thread.currentThread().getId();
+
+		if (!u.isThreadAllocatedMemoryEnabled()
+				|| u.getThreadAllocatedBytes(id) < 0) {
+			return;
+		}
+
+		final Docopt docopt = docopt();
+		final DocoptResult result = docopt.newResult();
+		final List<String> argv = Arrays.asList("-v", "--speed", "20", "a",
+				"b");
+
+		for (int i = 0; i < WARM_UP; i++) {
+			docopt.parseInto(argv, result);
+		}
+
+		long parseInto = Long.MAX_VALUE;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			// What reading the counter allocates by itself.
+			final long b0 = u.getThreadAllocatedBytes(id);
+			final long b1 = u.getThreadAllocatedBytes(id);
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				docopt.parseInto(argv, result);
+			}
+
+			final long b2 = u.getThreadAllocatedBytes(id);
+
+			parseInto = Math.min(parseInto, (b2 - b1) - (b1 - b0));
+		}
+
+		assertEquals(0, parseInto);
+		assertEquals(Arrays.asList("a", "b"), result.get("<name>"));
+		assertEquals("20", result.get("--speed"));
+	}
+}
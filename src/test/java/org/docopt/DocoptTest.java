@@ -2,6 +2,7 @@ package org.docopt;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.extensions.TestSetup;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -9,11 +10,15 @@ import junit.framework.TestSuite;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import static org.docopt.Python.list;
@@ -29,6 +34,56 @@ public final class DocoptTest extends TestCase {
 
 	private static final boolean VERBOSE = Boolean.getBoolean(VERBOSE_PROPERTY);
 
+	private static final String TIMED_PROPERTY = DocoptTest.class.getName()
+			+ ".timed";
+
+	private static final String RATIO_PROPERTY = DocoptTest.class.getName()
+			+ ".ratio";
+
+	/**
+	 * The file that the measurements of timed mode are compared with, instead
+	 * of the baseline checked in as {@code /testcases.baseline.json}.
+	 */
+	private static final String BASELINE_PROPERTY = DocoptTest.class
+			.getName() + ".baseline";
+
+	/**
+	 * If set, the measurements of timed mode are also written to this file,
+	 * from which the checked-in baseline can be updated.
+	 */
+	private static final String RECORD_PROPERTY = DocoptTest.class.getName()
+			+ ".record";
+
+	/**
+	 * If set, each case is also timed and compared with the baseline.
+	 */
+	static final boolean TIMED = Boolean.getBoolean(TIMED_PROPERTY);
+
+	/**
+	 * The factor by which a measurement may exceed the baseline. The baseline
+	 * was recorded on a single machine, so the default leaves room for slower
+	 * ones.
+	 */
+	private static final double RATIO = Double.parseDouble(System
+			.getProperty(RATIO_PROPERTY, "5.0"));
+
+	private static final String[] METRICS = { "constructNanos", "parseNanos",
+			"allocatedBytes" };
+
+	private static final int WARM_UP_ROUNDS = 10;
+
+	private static final int ROUNDS = 10;
+
+	private static final int ITERATIONS = 20;
+
+	private static final TypeReference<Map<String, Map<String, Long>>> BASELINE_TYPE_REFERENCE = new TypeReference<Map<String, Map<String, Long>>>() {
+	};
+
+	private static Map<String, Map<String, Long>> baseline = Collections
+			.emptyMap();
+
+	private static final Map<String, Map<String, Long>> measured = new TreeMap<String, Map<String, Long>>();
+
 	private static final String MESSAGE_FORMAT = "\n\"\"\"%s\"\"\"\n$ %s\n\b";
 
 	private static final String USER_ERROR = "\"user-error\"";
@@ -52,7 +107,19 @@ public final class DocoptTest extends TestCase {
 				url = url(file);
 			}
 
-			return parse(url);
+			if (!TIMED) {
+				return parse(url);
+			}
+
+			baseline = readBaseline();
+
+			return new TestSetup(parse(url)) {
+
+				@Override
+				protected void tearDown() throws IOException {
+					record();
+				}
+			};
 		}
 		catch (final IOException e) {
 			final String message;
@@ -68,6 +135,41 @@ public final class DocoptTest extends TestCase {
 		}
 	}
 
+	private static Map<String, Map<String, Long>> readBaseline()
+			throws IOException {
+		final String file = System.getProperty(BASELINE_PROPERTY);
+		final URL url = (file == null) ? DocoptTest.class
+				.getResource("/testcases.baseline.json") : url(file);
+
+		if (url == null) {
+			throw new DocoptTestError("No baseline for timed mode");
+		}
+
+		return OBJECT_MAPPER.readValue(url, BASELINE_TYPE_REFERENCE);
+	}
+
+	/**
+	 * Writes the measurements to the file named by {@link #RECORD_PROPERTY},
+	 * if it is set.
+	 */
+	private static void record() throws IOException {
+		final String file = System.getProperty(RECORD_PROPERTY);
+
+		if (file != null) {
+			OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(
+					new File(file), measured);
+		}
+	}
+
+	private static long allocatedBytes(final ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1;
+	}
+
 	private static DocoptTestError readError(final String file,
 			final String message) {
 		return new DocoptTestError(String.format("Failed to parse %s: %s",
@@ -232,27 +334,116 @@ public final class DocoptTest extends TestCase {
 		this.expected = expected; // TODO: Make a defensive copy?
 	}
 
-	@Override
-	protected void runTest() throws Throwable {
-		Object actual = null;
+	private Object parse(final Docopt docopt) {
+		return parse(docopt, argv);
+	}
 
+	private static Object parse(final Docopt docopt, final List<String> argv) {
 		try {
-			actual = new Docopt(doc).withStdOut(null).withStdErr(null)
-					.withExit(false).parse(argv);
+			return docopt.parse(argv);
 		}
 		catch (final DocoptExitException e) {
-			actual = USER_ERROR;
+			return USER_ERROR;
+		}
+	}
+
+	private Object validated(final Docopt docopt) {
+		// Validation must accept exactly what parsing accepts.
+		if (docopt.validate(argv) == DocoptOutcome.Kind.RESULT) {
+			return parse(docopt);
+		}
+
+		return USER_ERROR;
+	}
+
+	/**
+	 * Constructs a parser and parses the arguments many times, and returns
+	 * the time and allocation per iteration of the fastest round.
+	 */
+	private Map<String, Long> measure() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+			long construct = 0;
+			long parse = 0;
+			final long allocated = allocatedBytes(threads);
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				final long t0 = System.nanoTime();
+				final Docopt docopt = new Docopt(doc).withStdOut(null)
+						.withStdErr(null).withExit(false);
+				final long t1 = System.nanoTime();
+				parse(docopt);
+				final long t2 = System.nanoTime();
+
+				construct += t1 - t0;
+				parse += t2 - t1;
+			}
+
+			if (round >= WARM_UP_ROUNDS) {
+				final long[] u = { construct, parse,
+						(allocated < 0) ? -ITERATIONS
+								: allocatedBytes(threads) - allocated };
+
+				for (int i = 0; i < u.length; i++) {
+					best[i] = Math.min(best[i], u[i] / ITERATIONS);
+				}
+			}
+		}
+
+		final Map<String, Long> u = new TreeMap<String, Long>();
+
+		for (int i = 0; i < METRICS.length; i++) {
+			u.put(METRICS[i], best[i]);
+		}
+
+		return u;
+	}
+
+	private void checkPerformance() {
+		final Map<String, Long> actual = measure();
+		measured.put(getName(), actual);
+
+		final Map<String, Long> expected = baseline.get(getName());
+
+		if (expected == null) {
+			fail("no baseline for " + getName());
 		}
 
+		for (final String metric : METRICS) {
+			final Long u = expected.get(metric);
+
+			if (u != null && u > 0 && actual.get(metric) > u * RATIO) {
+				fail(String.format(
+						"%s regressed from %d to %d, more than %.2f times the baseline",
+						metric, u, actual.get(metric), RATIO));
+			}
+		}
+	}
+
+	@Override
+	protected void runTest() throws Throwable {
+		final Docopt docopt = new Docopt(doc).withStdOut(null)
+				.withStdErr(null).withExit(false);
+
+		final Object actual = parse(docopt);
+		final Object validated = validated(docopt);
+
 		final String message = (!VERBOSE) ? null : String.format(
 				MESSAGE_FORMAT, doc, argv(argv));
 
 		try {
 			assertEquals(message, expected, actual);
+			assertEquals(message, expected, validated);
 		}
 		catch (final junit.framework.AssertionFailedError e) {
 			e.setStackTrace(new StackTraceElement[0]);
 			throw e;
 		}
+
+		if (TIMED) {
+			checkPerformance();
+		}
 	}
 }
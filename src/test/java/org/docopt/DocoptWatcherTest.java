@@ -0,0 +1,243 @@
+package org.docopt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the reloading of a help message file by a {@link DocoptWatcher}.
+ */
+public final class DocoptWatcherTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * A listener that records the errors passed to it.
+	 */
+	private static class Recorder implements DocoptWatcher.Listener {
+
+		final List<Throwable> failures = new ArrayList<Throwable>();
+
+		@Override
+		public Docopt configure(final Docopt docopt) {
+			return docopt.withStdOut(null).withStdErr(null).withExit(false);
+		}
+
+		@Override
+		public synchronized void failed(final File file, final Throwable cause) {
+			failures.add(cause);
+		}
+	}
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("docopt", ".txt");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Writes {@code s} to the file and sets its modification time.
+	 */
+	private void write(final String s, final long lastModified)
+			throws IOException {
+		final OutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(s.getBytes(UTF_8));
+		}
+		finally {
+			out.close();
+		}
+
+		file.setLastModified(lastModified);
+	}
+
+	/**
+	 * Writes {@code s} to the file and moves its modification time forward,
+	 * as it may have a resolution of seconds.
+	 */
+	private void write(final String s) throws IOException {
+		write(s, file.lastModified() + 2000);
+	}
+
+	public void testReloadsChangedFile() throws IOException {
+		write("Usage: prog <a>");
+
+		final Recorder recorder = new Recorder();
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8, recorder);
+		final Docopt first = watcher.get();
+
+		assertEquals("x", watcher.parse("x").get("<a>"));
+		assertFalse(watcher.check());
+		assertSame(first, watcher.get());
+
+		// The change is taken once two checks agree.
+		write("Usage: prog <b>");
+		assertFalse(watcher.check());
+		assertSame(first, watcher.get());
+		assertTrue(watcher.check());
+		assertNotSame(first, watcher.get());
+		assertEquals("x", watcher.parse("x").get("<b>"));
+		assertFalse(watcher.check());
+		assertTrue(recorder.failures.isEmpty());
+	}
+
+	public void testReloadsFileWithSameTimeAndLength() throws IOException {
+		write("Usage: prog <a>");
+
+		final long lastModified = file.lastModified();
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8,
+				new Recorder());
+
+		write("Usage: prog <b>", lastModified);
+		assertFalse(watcher.check());
+		assertTrue(watcher.check());
+		assertEquals("x", watcher.parse("x").get("<b>"));
+	}
+
+	public void testWaitsForFileBeingWritten() throws IOException {
+		write("Usage: prog <a>");
+
+		final Recorder recorder = new Recorder();
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8, recorder);
+
+		// A check reads the file while it is written, then the next check
+		// reads all of it.
+		write("Usage: prog <b> [<");
+		assertFalse(watcher.check());
+		write("Usage: prog <b> [<c>]");
+		assertFalse(watcher.check());
+		assertEquals("x", watcher.parse("x").get("<a>"));
+
+		assertTrue(watcher.check());
+		assertEquals("y", watcher.parse("x", "y").get("<c>"));
+		assertTrue(recorder.failures.isEmpty());
+	}
+
+	public void testKeepsParserOnMalformedFile() throws IOException {
+		write("Usage: prog <a>");
+
+		final Recorder recorder = new Recorder();
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8, recorder);
+		final Docopt first = watcher.get();
+
+		write("Usage: prog [<a>");
+		assertFalse(watcher.check());
+		assertFalse(watcher.check());
+		assertSame(first, watcher.get());
+		assertEquals(1, recorder.failures.size());
+		assertTrue(recorder.failures.get(0) instanceof DocoptLanguageError);
+
+		// The same error is reported once.
+		assertFalse(watcher.check());
+		assertEquals(1, recorder.failures.size());
+
+		write("Usage: prog <b>");
+		assertFalse(watcher.check());
+		assertTrue(watcher.check());
+		assertEquals("x", watcher.parse("x").get("<b>"));
+	}
+
+	public void testKeepsParserOnDeletedFile() throws IOException {
+		write("Usage: prog <a>");
+
+		final Recorder recorder = new Recorder();
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8, recorder);
+
+		assertTrue(file.delete());
+		assertFalse(watcher.check());
+		assertEquals(1, recorder.failures.size());
+		assertTrue(recorder.failures.get(0) instanceof IOException);
+		assertEquals("x", watcher.parse("x").get("<a>"));
+
+		// The same error is reported once.
+		assertFalse(watcher.check());
+		assertEquals(1, recorder.failures.size());
+	}
+
+	public void testPeriodicChecks() throws IOException, InterruptedException {
+		write("Usage: prog <a>");
+
+		final AtomicInteger configured = new AtomicInteger();
+		final CountDownLatch failed = new CountDownLatch(1);
+		final CountDownLatch reloaded = new CountDownLatch(1);
+		final ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor();
+
+		final DocoptWatcher watcher = new DocoptWatcher(file, UTF_8,
+				new Recorder() {
+
+					@Override
+					public Docopt configure(final Docopt docopt) {
+						// The second parser, the first reloaded, fails.
+						switch (configured.incrementAndGet()) {
+						case 2:
+							throw new IllegalStateException("configure");
+						case 3:
+							reloaded.countDown();
+							break;
+						default:
+							break;
+						}
+
+						return super.configure(docopt);
+					}
+
+					@Override
+					public synchronized void failed(final File file,
+							final Throwable cause) {
+						// A check may also see the file while it is written.
+						if (cause instanceof IllegalStateException) {
+							failed.countDown();
+						}
+					}
+				});
+
+		try {
+			watcher.start(executor, 10, TimeUnit.MILLISECONDS);
+
+			try {
+				watcher.start(executor, 10, TimeUnit.MILLISECONDS);
+				fail();
+			}
+			catch (final IllegalStateException e) {
+				// Expected.
+			}
+
+			// An exception thrown by a check is reported, and does not stop
+			// further checks.
+			write("Usage: prog <b>");
+			assertTrue(failed.await(10, TimeUnit.SECONDS));
+			assertEquals("x", watcher.parse("x").get("<a>"));
+
+			write("Usage: prog <c>");
+			assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+		}
+		finally {
+			watcher.stop();
+			executor.shutdown();
+		}
+
+		// The parser is published after it is configured.
+		while (!watcher.get().parse("x").containsKey("<c>")) {
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the matching of the alternatives of an {@link Either} in batches
+ * using an executor.
+ */
+public final class EitherTest extends TestCase {
+
+	private static final int CHILDREN = 16;
+
+	private static final String DOC = "Usage:\n  prog ship new <name>...\n"
+			+ "  prog ship <name> move <x> <y>\n  prog mine <x> <y>\n";
+
+	/**
+	 * An alternative that never matches, and counts how often it is tried.
+	 */
+	private static final class Probe extends Pattern {
+
+		private final AtomicInteger matches = new AtomicInteger();
+
+		private final boolean fails;
+
+		public Probe(final boolean fails) {
+			this.fails = fails;
+		}
+
+		@Override
+		protected List<Pattern> flat(final Class<?>... types) {
+			return Collections.<Pattern> singletonList(this);
+		}
+
+		@Override
+		protected MatchResult match(final List<LeafPattern> left,
+				final List<LeafPattern> collected, final MatchContext context) {
+			matches.incrementAndGet();
+
+			if (fails) {
+				throw new IllegalStateException("failed");
+			}
+
+			return new MatchResult(false, left, collected);
+		}
+
+		@Override
+		protected long validate(final List<LeafPattern> argv, final long left) {
+			return NO_MATCH;
+		}
+
+		@Override
+		protected long record(final List<LeafPattern> argv, final long left,
+				final DocoptResult result) {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return this == obj;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+
+	/**
+	 * An executor that only queues its tasks, until they are run by the test.
+	 */
+	private static final class Queue implements Executor {
+
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(final Runnable command) {
+			tasks.add(command);
+		}
+
+		public void runAll() {
+			for (final Runnable task : tasks) {
+				task.run();
+			}
+		}
+	}
+
+	private static List<Probe> probes(final int failing) {
+		final List<Probe> u = new ArrayList<Probe>();
+
+		for (int i = 0; i < CHILDREN; i++) {
+			u.add(new Probe(i == failing));
+		}
+
+		return u;
+	}
+
+	private static Pattern.MatchResult match(final List<Probe> probes,
+			final Executor executor) {
+		final MatchContext context = new MatchContext(
+				new ArrayList<LeafPattern>(), 0, executor, 1, null);
+
+		try {
+			return new Either(probes).match(new ArrayList<LeafPattern>(),
+					null, context);
+		}
+		finally {
+			context.release();
+		}
+	}
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	public void testMatchesBatchesNotStarted() {
+		final Queue queue = new Queue();
+		final List<Probe> probes = probes(-1);
+
+		assertFalse(match(probes, queue).matched());
+		assertFalse(queue.tasks.isEmpty());
+
+		// Running the tasks afterwards does not match anything again.
+		queue.runAll();
+
+		for (final Probe probe : probes) {
+			assertEquals(1, probe.matches.get());
+		}
+	}
+
+	public void testCancelsBatchesOnFailure() {
+		for (final int failing : new int[] { 0, CHILDREN / 2 - 1,
+				CHILDREN - 1 }) {
+			final Queue queue = new Queue();
+			final List<Probe> probes = probes(failing);
+
+			try {
+				match(probes, queue);
+				fail();
+			}
+			catch (final IllegalStateException e) {
+				assertEquals("failed", e.getMessage());
+			}
+
+			// The batches that were left are not matched, even if they are
+			// run afterwards.
+			queue.runAll();
+
+			for (int i = 0; i < CHILDREN; i++) {
+				assertEquals(i + " of " + failing, (i <= failing) ? 1 : 0,
+						probes.get(i).matches.get());
+			}
+		}
+	}
+
+	/**
+	 * Lines that tie, which the first of must win, lines that only differ
+	 * late, and a count that is collected by several lines.
+	 */
+	private static final String LINES = "Usage:\n"
+			+ "  prog [-v...] <a>\n"
+			+ "  prog [-v...] <b>\n"
+			+ "  prog [-v...] <a> <b> [<c>]\n"
+			+ "  prog [-v...] <a> <b> <c> <d>\n"
+			+ "  prog [-v...] go <a>...\n"
+			+ "  prog [-v...] go <a> -x\n"
+			+ "  prog stop [-v...]\n"
+			+ "  prog stop now\n\n"
+			+ "Options:\n"
+			+ "  -v  Verbose.\n"
+			+ "  -x  X.\n";
+
+	private static Object parsed(final Docopt docopt, final String... argv) {
+		try {
+			return docopt.parse(argv);
+		}
+		catch (final DocoptExitException e) {
+			return e.getKind();
+		}
+	}
+
+	public void testSameResultsAsSerial() {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Docopt serial = new Docopt(LINES).withStdOut(null)
+				.withStdErr(null).withExit(false);
+		final Docopt concurrent = new Docopt(LINES).withStdOut(null)
+				.withStdErr(null).withExit(false).withExecutor(executor, 1);
+
+		try {
+			// Repeated, so that the batches finish in different orders.
+			for (int round = 0; round < 100; round++) {
+				for (final String[] argv : new String[][] { { "1" },
+						{ "-vv", "1", "2" }, { "1", "2", "3", "4" },
+						{ "go", "1", "2", "-v" }, { "go", "1", "-x" },
+						{ "stop", "-v" }, { "stop", "now" },
+						{ "1", "2", "3", "4", "5" }, { "-x" } }) {
+					assertEquals(Arrays.toString(argv), parsed(
+							serial, argv), parsed(concurrent, argv));
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testBusyExecutor() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		try {
+			final Map<String, Object> u = docopt().withExecutor(executor, 1)
+					.parse("ship", "a", "move", "1", "2");
+
+			assertEquals(Boolean.TRUE, u.get("move"));
+		}
+		finally {
+			latch.countDown();
+			executor.shutdown();
+		}
+	}
+
+	public void testShutDownExecutor() {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+
+		final Map<String, Object> u = docopt().withExecutor(executor, 1)
+				.parse("mine", "1", "2");
+
+		assertEquals(Boolean.TRUE, u.get("mine"));
+	}
+
+	public void testStepLimitWithExecutor() {
+		final Queue queue = new Queue();
+
+		try {
+			// Each batch may match as many sub-patterns again, so the limit
+			// is exceeded by the batch of the second line, which the calling
+			// thread matches since the executor does not.
+			docopt().withExecutor(queue, 1).withStepLimit(4)
+					.parse("ship", "a", "move", "1", "2");
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED, e.getKind());
+		}
+
+		assertFalse(queue.tasks.isEmpty());
+
+		// A parse that follows is not affected by the batches that were
+		// left.
+		queue.runAll();
+		assertEquals(Boolean.TRUE,
+				docopt().parse("ship", "a", "move", "1", "2").get("move"));
+	}
+}
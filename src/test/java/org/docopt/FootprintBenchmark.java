@@ -0,0 +1,130 @@
+package org.docopt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// @formatter:off
+/**
+ * Measures the heap retained by a parser, with the usage pattern stored as
+ * objects and with {@link Docopt#withCompactGrammar}.
+ * <p>
+ * For each sample document, {@code --count} parsers are created (each from a
+ * slightly different copy of the document, as in an application with many
+ * distinct tools) and the growth of the used heap, not counting the documents
+ * themselves, is divided by their number. This is measured once before any
+ * parser is used, and again after each one has parsed a command line, which
+ * rebuilds a compact pattern.
+ * The results are written as one JSON object per line.
+ * <p>
+ * Run after {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes org.docopt.FootprintBenchmark
+ * </pre>
+ */
+// @formatter:on
+public final class FootprintBenchmark {
+
+	private static final String doc = "Heap footprint benchmark for docopt.\n"
+			+ "\n"
+			+ "Usage:\n"
+			+ "  FootprintBenchmark [--count=<n>]\n"
+			+ "\n"
+			+ "Options:\n"
+			+ "  --count=<n>  Number of parsers per document [default: 1000].\n"
+			+ "\n";
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, Object> opts = new Docopt(doc).parse(args);
+
+		final int count = Integer.parseInt((String) opts.get("--count"));
+
+		final String navalFate = Docopt.read(FootprintBenchmark.class
+				.getResourceAsStream("/benchmark/naval_fate.txt"));
+
+		final StringBuilder sb = new StringBuilder("Usage:\n");
+
+		for (int i = 0; i < 20; i++) {
+			sb.append(String.format("  prog command%d <source> <target> "
+					+ "[options]\n", i));
+		}
+
+		sb.append("\nOptions:\n");
+
+		for (int i = 0; i < 20; i++) {
+			sb.append(String.format(
+					"  --setting%d=<value>  Setting [default: %d].\n", i, i));
+		}
+
+		measure("naval_fate", navalFate, count);
+		measure("commands_20", sb.toString(), count);
+	}
+
+	private static void measure(final String name, final String doc,
+			final int count) {
+		for (final String storage : new String[] { "objects", "compact" }) {
+			// The first round loads classes and fills the string pool.
+			measure(doc, count, storage);
+
+			final long[] u = measure(doc, count, storage);
+
+			System.out.println(String.format("{\"doc\": \"%s\", "
+					+ "\"storage\": \"%s\", \"parsers\": %d, "
+					+ "\"bytesPerParser\": %d, "
+					+ "\"bytesPerUsedParser\": %d}", name, storage, count,
+					u[0], u[1]));
+		}
+	}
+
+	/**
+	 * Returns the bytes per parser before and after parsing.
+	 */
+	private static long[] measure(final String doc, final int count,
+			final String storage) {
+		final List<String> docs = new ArrayList<String>();
+
+		for (int i = 0; i < count; i++) {
+			docs.add("Tool " + i + ".\n\n" + doc);
+		}
+
+		final Docopt[] parsers = new Docopt[count];
+
+		final long before = usedHeap();
+
+		for (int i = 0; i < count; i++) {
+			parsers[i] = new Docopt(docs.get(i)).withCompactGrammar(
+					storage.equals("compact"));
+		}
+
+		final long after = usedHeap();
+
+		for (int i = 0; i < count; i++) {
+			parsers[i].validate(Collections.<String> emptyList());
+		}
+
+		final long used = usedHeap();
+
+		if (parsers[count - 1] == null) {
+			throw new IllegalStateException();
+		}
+
+		return new long[] { (after - before) / count, (used - before) / count };
+	}
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private FootprintBenchmark() {
+		// Prevent instantiation.
+	}
+}
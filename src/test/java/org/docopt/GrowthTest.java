@@ -0,0 +1,205 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that constructing a parser and parsing take time that grows less
+ * than quadratically with the number of usage patterns and options.
+ * <p>
+ * The time is measured for documents of {@link #SIZES} elements and the
+ * growth exponent is estimated by fitting a power law; it must be below
+ * {@link #MAX_EXPONENT}, where {@code 1} is linear and {@code 2} quadratic.
+ * <p>
+ * Like the timed mode of {@link DocoptTest}, these tests only run if
+ * {@code org.docopt.DocoptTest.timed} is set, since they depend on the load
+ * of the machine.
+ */
+public final class GrowthTest extends TestCase {
+
+	public static Test suite() {
+		if (!DocoptTest.TIMED) {
+			return new TestSuite(GrowthTest.class.getName());
+		}
+
+		return new TestSuite(GrowthTest.class);
+	}
+
+	private static final int[] SIZES = { 512, 1024, 2048, 4096 };
+
+	private static final double MAX_EXPONENT = 1.5;
+
+	private static final int WARM_UP_ROUNDS = 2;
+
+	private static final int ROUNDS = 5;
+
+	private static final int PARSES = 20;
+
+	private abstract static class Workload {
+
+		private final String name;
+
+		public Workload(final String name) {
+			this.name = name;
+		}
+
+		public abstract String doc(int size);
+
+		public abstract String[] argv(int size);
+	}
+
+	private static final Workload USAGE_PATTERNS = new Workload(
+			"usage patterns") {
+
+		@Override
+		public String doc(final int size) {
+			final StringBuilder sb = new StringBuilder("Usage:\n");
+
+			for (int i = 0; i < size; i++) {
+				sb.append(String.format(
+						"  prog command%d <source> <target> [--force] "
+								+ "[--verbose...]\n", i));
+			}
+
+			sb.append("\nOptions:\n");
+			sb.append("  -f --force    Overwrite.\n");
+			sb.append("  -v --verbose  Print more text.\n");
+
+			return sb.toString();
+		}
+
+		@Override
+		public String[] argv(final int size) {
+			return new String[] { "command" + (size - 1), "a", "b", "-vv" };
+		}
+	};
+
+	private static final Workload OPTIONS = new Workload("options") {
+
+		@Override
+		public String doc(final int size) {
+			final StringBuilder sb = new StringBuilder(
+					"Usage: prog [options] <file>...\n\nOptions:\n");
+
+			for (int i = 0; i < size; i++) {
+				sb.append(String.format(
+						"  --setting%d=<value>  Setting [default: %d].\n", i,
+						i));
+			}
+
+			return sb.toString();
+		}
+
+		@Override
+		public String[] argv(final int size) {
+			return new String[] { "--setting" + (size - 1) + "=x", "a", "b" };
+		}
+	};
+
+	/**
+	 * Measured times by workload: for each size, the fastest time of
+	 * constructing a parser for the document of that size, and the fastest of
+	 * {@link #PARSES} parses with it in each round.
+	 */
+	private static final Map<Workload, long[][]> times = new HashMap<Workload, long[][]>();
+
+	/**
+	 * Measures a workload. The sizes are measured in turn in each round, so
+	 * that the JIT compiler and other noise affect all of them alike.
+	 */
+	private static long[][] measure(final Workload workload) {
+		final long[][] best = new long[2][SIZES.length];
+		Arrays.fill(best[0], Long.MAX_VALUE);
+		Arrays.fill(best[1], Long.MAX_VALUE);
+
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+			for (int i = 0; i < SIZES.length; i++) {
+				final String doc = workload.doc(SIZES[i]);
+				final String[] argv = workload.argv(SIZES[i]);
+
+				final long t0 = System.nanoTime();
+				final Docopt docopt = new Docopt(doc).withExit(false);
+				final long t1 = System.nanoTime();
+
+				if (round >= WARM_UP_ROUNDS) {
+					best[0][i] = Math.min(best[0][i], t1 - t0);
+				}
+
+				for (int j = 0; j < PARSES; j++) {
+					final long t2 = System.nanoTime();
+					docopt.parse(argv);
+					final long t3 = System.nanoTime();
+
+					if (round >= WARM_UP_ROUNDS) {
+						best[1][i] = Math.min(best[1][i], t3 - t2);
+					}
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Measures a workload once.
+	 */
+	private static synchronized long[][] times(final Workload workload) {
+		if (!times.containsKey(workload)) {
+			times.put(workload, measure(workload));
+		}
+
+		return times.get(workload);
+	}
+
+	private static void assertSubQuadratic(final Workload workload,
+			final boolean parse) {
+		final long[] times = times(workload)[parse ? 1 : 0];
+		final StringBuilder sb = new StringBuilder();
+
+		// The slope of the least-squares line through (log size, log time).
+		double x = 0;
+		double y = 0;
+		double xx = 0;
+		double xy = 0;
+
+		for (int i = 0; i < SIZES.length; i++) {
+			final double u = Math.log(SIZES[i]);
+			final double v = Math.log(times[i]);
+
+			x += u;
+			y += v;
+			xx += u * u;
+			xy += u * v;
+
+			sb.append(String.format(" %d: %.3f ms", SIZES[i], times[i] / 1e6));
+		}
+
+		final int n = SIZES.length;
+		final double exponent = (n * xy - x * y) / (n * xx - x * x);
+
+		assertTrue(String.format("%s of %s grows with exponent %.2f:%s",
+				parse ? "Parsing" : "Construction", workload.name, exponent,
+				sb), exponent < MAX_EXPONENT);
+	}
+
+	public void testConstructionWithUsagePatterns() {
+		assertSubQuadratic(USAGE_PATTERNS, false);
+	}
+
+	public void testConstructionWithOptions() {
+		assertSubQuadratic(OPTIONS, false);
+	}
+
+	public void testParsingWithUsagePatterns() {
+		assertSubQuadratic(USAGE_PATTERNS, true);
+	}
+
+	public void testParsingWithOptions() {
+		assertSubQuadratic(OPTIONS, true);
+	}
+}
@@ -0,0 +1,160 @@
+package org.docopt;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link Docopt#writeJson} writes the same JSON to an
+ * {@link Appendable} and, as UTF-8, to a {@link ByteBuffer}.
+ */
+public final class JsonEncoderTest extends TestCase {
+
+	private static final String DOC = "Usage: prog [-v] [--speed=<kn>] "
+			+ "<name>...\n\n"
+			+ "Options:\n"
+			+ "  -v            Verbose.\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static String appended(final Docopt docopt,
+			final Map<String, ?> result) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		docopt.writeJson(result, sb);
+		return sb.toString();
+	}
+
+	private static byte[] encoded(final Docopt docopt,
+			final Map<String, ?> result) {
+		// Write twice into the same buffer to make sure it can be reused.
+		final ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.put((byte) 'x');
+		docopt.writeJson(result, buffer);
+		buffer.clear();
+		docopt.writeJson(result, buffer);
+		buffer.flip();
+
+		final byte[] u = new byte[buffer.remaining()];
+		buffer.get(u);
+		return u;
+	}
+
+	/**
+	 * Checks that both paths write {@code expected}.
+	 */
+	private static void assertJson(final String expected,
+			final Map<String, ?> result) throws IOException {
+		final Docopt docopt = docopt();
+
+		assertEquals(expected, appended(docopt, result));
+		assertEquals(Arrays.toString(utf8(expected)),
+				Arrays.toString(encoded(docopt, result)));
+	}
+
+	private static byte[] utf8(final String s)
+			throws UnsupportedEncodingException {
+		return s.getBytes("UTF-8");
+	}
+
+	private static Map<String, Object> result(final Object name) {
+		final Map<String, Object> u = new LinkedHashMap<String, Object>();
+		u.put("-v", Boolean.FALSE);
+		u.put("--speed", "10");
+		u.put("<name>", name);
+		return u;
+	}
+
+	public void testParsedResult() throws IOException {
+		final Map<String, Object> u = docopt().parse("-v", "a", "b");
+
+		assertJson("{\"-v\": true, \"--speed\": \"10\", \"<name>\": "
+				+ "[\"a\", \"b\"]}", u);
+	}
+
+	public void testEscapes() throws IOException {
+		assertJson("{\"-v\": false, \"--speed\": \"10\", \"<name>\": "
+				+ "\"\\\"\\\\/\\b\\f\\n\\r\\t\\u0000\\u001f \u007f\"}",
+				result("\"\\/\b\f\n\r\t\u0000\u001f \u007f"));
+	}
+
+	public void testNonAscii() throws IOException {
+		// Two, three and four bytes, the last from a surrogate pair.
+		assertJson("{\"-v\": false, \"--speed\": \"10\", \"<name>\": "
+				+ "[\"\u00e4\", \"\u20ac\", \"\ud83d\ude00\"]}",
+				result(Arrays.asList("\u00e4", "\u20ac", "\ud83d\ude00")));
+	}
+
+	public void testLoneSurrogates() throws IOException {
+		final Docopt docopt = docopt();
+		final Map<String, Object> u = result(Arrays.asList("a\ud83db",
+				"\ude00\ud83d", "\ud83d"));
+
+		// The buffer gets '?' for each, like String.getBytes.
+		final String s = appended(docopt, u);
+		assertEquals(Arrays.toString(utf8(s)),
+				Arrays.toString(encoded(docopt, u)));
+		assertEquals("{\"-v\": false, \"--speed\": \"10\", \"<name>\": "
+				+ "[\"a?b\", \"??\", \"?\"]}", new String(encoded(docopt, u),
+				"UTF-8"));
+	}
+
+	public void testOtherKeys() throws IOException {
+		// Names not in the leaf table, and names out of its order.
+		final Map<String, Object> u = new LinkedHashMap<String, Object>();
+		u.put("<name>", null);
+		u.put("k\u00e4\"\n", 1);
+		u.put("-v", Boolean.TRUE);
+		u.put("--speed", 2.5);
+
+		assertJson("{\"<name>\": null, \"k\u00e4\\\"\\n\": 1, \"-v\": true, "
+				+ "\"--speed\": 2.5}", u);
+	}
+
+	public void testEmpty() throws IOException {
+		assertJson("{}", Collections.<String, Object> emptyMap());
+	}
+
+	public void testOverflow() {
+		final Map<String, Object> u = docopt().parse("a");
+
+		try {
+			docopt().writeJson(u, ByteBuffer.allocate(10));
+			fail();
+		}
+		catch (final BufferOverflowException e) {
+			// Expected.
+		}
+	}
+
+	public void testUnsupportedValues() throws IOException {
+		for (final Object value : new Object[] { new Object(),
+				Arrays.asList(Arrays.asList("a")) }) {
+			try {
+				docopt().writeJson(result(value), new StringBuilder());
+				fail();
+			}
+			catch (final IllegalArgumentException e) {
+				// Expected.
+			}
+
+			try {
+				docopt().writeJson(result(value), ByteBuffer.allocate(1024));
+				fail();
+			}
+			catch (final IllegalArgumentException e) {
+				// Expected.
+			}
+		}
+	}
+}
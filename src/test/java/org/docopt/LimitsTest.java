@@ -0,0 +1,149 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the limits set via {@link Docopt#withInputLimits},
+ * {@link Docopt#withStepLimit} and {@link Docopt#withTimeLimit}.
+ */
+public final class LimitsTest extends TestCase {
+
+	private static final String DOC = "Naval Fate.\n\n"
+			+ "Usage:\n"
+			+ "  naval_fate ship new <name>...\n"
+			+ "  naval_fate ship <name> move <x> <y> [--speed=<kn>]\n"
+			+ "  naval_fate mine (set|remove) <x> <y> [--moored|--drifting]\n\n"
+			+ "Options:\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n"
+			+ "  --moored      Moored (anchored) mine.\n"
+			+ "  --drifting    Drifting mine.\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static String exceeded(final Docopt docopt, final String... argv) {
+		try {
+			docopt.parse(argv);
+			fail();
+			return null;
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED, e.getKind());
+			assertEquals(1, e.getExitCode());
+			return e.getMessage();
+		}
+	}
+
+	public void testStepLimit() {
+		final String[] argv = { "ship", "Guardian", "move", "1", "2" };
+
+		assertEquals("matching exceeded 1 steps",
+				exceeded(docopt().withStepLimit(1), argv));
+
+		// A limit that is not reached does not change the result.
+		final Map<String, Object> u = docopt().withStepLimit(1000).parse(argv);
+		assertEquals(docopt().parse(argv), u);
+		assertEquals("1", u.get("<x>"));
+	}
+
+	public void testStepLimitIsPerCommandLine() {
+		// Steps are counted again for each command line.
+		final Docopt docopt = docopt().withStepLimit(1000);
+
+		for (int i = 0; i < 100; i++) {
+			docopt.parse("mine", "set", "1", "2");
+		}
+	}
+
+	public void testTimeLimit() {
+		// The clock is only read every so many steps, so match many.
+		final List<String> argv = new ArrayList<String>();
+
+		for (int i = 0; i < 5000; i++) {
+			argv.add(String.valueOf(i));
+		}
+
+		final Docopt docopt = new Docopt("Usage: prog (<a> <b>)...\n")
+				.withStdOut(null).withStdErr(null).withExit(false)
+				.withTimeLimit(1, TimeUnit.NANOSECONDS);
+
+		assertEquals("matching exceeded time limit", exceeded(docopt,
+				argv.toArray(new String[0])));
+
+		assertEquals(2500, ((List<?>) docopt.withTimeLimit(1,
+				TimeUnit.MINUTES).parse(argv).get("<a>")).size());
+	}
+
+	public void testInputLimits() {
+		final Docopt docopt = docopt().withInputLimits(4, 5);
+
+		assertEquals("more than 4 arguments", exceeded(docopt, "mine", "set",
+				"1", "2", "--moored"));
+		assertEquals("argument longer than 5 characters", exceeded(docopt,
+				"ship", "new", "Guardian"));
+
+		// Both limits are inclusive.
+		assertEquals(Arrays.asList("Sea"), docopt.parse("ship", "new", "Sea")
+				.get("<name>"));
+		assertEquals(Boolean.TRUE, docopt.parse("mine", "set", "1", "2")
+				.get("set"));
+
+		assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED,
+				docopt.validate(Arrays.asList("ship", "new", "Guardian")));
+	}
+
+	public void testOutcomeIsNotCached() {
+		final Docopt docopt = docopt().withCache(10).withStepLimit(1);
+
+		exceeded(docopt, "mine", "set", "1", "2");
+		exceeded(docopt, "mine", "set", "1", "2");
+
+		final DocoptCacheStats stats = docopt.getCacheStats();
+		assertEquals(0, stats.getHits());
+		assertEquals(0, stats.getSize());
+	}
+
+	public void testDisabled() {
+		final Docopt docopt = docopt().withInputLimits(1, 1).withStepLimit(1)
+				.withTimeLimit(1, TimeUnit.NANOSECONDS)
+				.withInputLimits(0, 0).withStepLimit(0)
+				.withTimeLimit(0, TimeUnit.SECONDS);
+
+		assertEquals("1", docopt.parse("ship", "Guardian", "move", "1", "2")
+				.get("<x>"));
+	}
+
+	public void testNegativeLimits() {
+		try {
+			docopt().withInputLimits(-1, 0);
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+
+		try {
+			docopt().withStepLimit(-1);
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+
+		try {
+			docopt().withTimeLimit(-1, TimeUnit.SECONDS);
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the adaptive order of usage lines enabled by
+ * {@link Docopt#withAdaptiveOrdering}.
+ */
+public final class LineOrderTest extends TestCase {
+
+	/**
+	 * Both lines match two arguments, and only the second matches
+	 * {@code -v}.
+	 */
+	private static final String DOC = "Usage:\n"
+			+ "  prog <a> [<b>]\n"
+			+ "  prog <c> <d> [-v]\n\n"
+			+ "Options:\n"
+			+ "  -v  Verbose.\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false).withAdaptiveOrdering(true);
+	}
+
+	public void testReorders() {
+		final LineOrder order = new LineOrder(3);
+
+		for (int i = 0; i < LineOrder.INTERVAL - 1; i++) {
+			order.won(2);
+		}
+
+		assertEquals("[0, 1, 2]", Arrays.toString(order.getOrder()));
+
+		// Lines that won equally often stay in the order of the help message.
+		order.won(2);
+		assertEquals("[2, 0, 1]", Arrays.toString(order.getOrder()));
+	}
+
+	/**
+	 * Returns the fewest steps in which {@code docopt} matches
+	 * {@code argv}.
+	 */
+	private static long steps(final Docopt docopt, final String... argv) {
+		for (long u = 1;; u++) {
+			try {
+				docopt.withStepLimit(u).parse(argv);
+				return u;
+			}
+			catch (final DocoptExitException e) {
+				assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED, e.getKind());
+			}
+			finally {
+				docopt.withStepLimit(0);
+			}
+		}
+	}
+
+	private static void checkEarlierLineWins(final Docopt docopt) {
+		final long steps = steps(docopt, "1", "2");
+
+		// Train the second line to the front.
+		for (int i = 0; i < 2 * LineOrder.INTERVAL; i++) {
+			assertEquals(Boolean.TRUE, docopt.parse("1", "2", "-v").get("-v"));
+		}
+
+		// Both lines are now matched, the second one first, so more steps
+		// are needed.
+		assertTrue(steps(docopt, "1", "2") > steps);
+
+		// The first line still wins.
+		final Map<String, Object> u = docopt.parse("1", "2");
+		assertEquals("1", u.get("<a>"));
+		assertEquals("2", u.get("<b>"));
+		assertNull(u.get("<c>"));
+		assertNull(u.get("<d>"));
+	}
+
+	public void testEarlierLineWins() {
+		checkEarlierLineWins(docopt());
+	}
+
+	public void testCompactGrammar() {
+		checkEarlierLineWins(new Docopt(DOC).withStdOut(null)
+				.withStdErr(null).withExit(false).withCompactGrammar(true)
+				.withAdaptiveOrdering(true));
+	}
+
+	public void testSingleLine() {
+		// There is nothing to reorder.
+		assertEquals("1", new Docopt("Usage: prog <a>\n").withStdOut(null)
+				.withStdErr(null).withExit(false).withAdaptiveOrdering(true)
+				.parse("1").get("<a>"));
+	}
+}
@@ -0,0 +1,130 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the working storage of a thread is shared only by parses that
+ * do not overlap, and is returned however matching ends.
+ */
+public final class MatchContextTest extends TestCase {
+
+	private static final List<LeafPattern> ARGV = Arrays
+			.<LeafPattern> asList(new Argument(null, "a"));
+
+	private static MatchContext context() {
+		return new MatchContext(ARGV, 10, null, 0, null);
+	}
+
+	public void testReused() {
+		final MatchContext first = context();
+		final long[] u = first.buffer(0, 1);
+		first.release();
+
+		final MatchContext second = context();
+
+		try {
+			assertSame(u, second.buffer(0, 1));
+		}
+		finally {
+			second.release();
+		}
+	}
+
+	public void testReentrant() {
+		final MatchContext outer = context();
+		final long[] u = outer.buffer(0, 1);
+		u[0] = 42;
+
+		// A context created while another one is in use has storage of its
+		// own, and the storage of the first one is returned once.
+		final MatchContext inner = context();
+		assertNotSame(u, inner.buffer(0, 1));
+		inner.release();
+		assertEquals(42, u[0]);
+		outer.release();
+
+		final MatchContext next = context();
+
+		try {
+			assertSame(u, next.buffer(0, 1));
+		}
+		finally {
+			next.release();
+		}
+	}
+
+	public void testNestedParse() {
+		final Docopt nested = new Docopt("Usage: prog <x>\n").withStdOut(null)
+				.withStdErr(null).withExit(false).withMemoization(100);
+		final String[] seen = new String[1];
+
+		// Runs the tasks of the outer parse after a parse of its own, on the
+		// same thread, while the outer parse is matching.
+		final Executor executor = new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				seen[0] = (String) nested.parse("b").get("<x>");
+				command.run();
+			}
+		};
+
+		final Map<String, Object> u = new Docopt("Usage:\n"
+				+ "  prog <a>\n"
+				+ "  prog <a> <b>\n"
+				+ "  prog <a> <b> <c>\n").withStdOut(null).withStdErr(null)
+				.withExit(false).withMemoization(100).withExecutor(executor, 1)
+				.parse("1", "2");
+
+		assertEquals("b", seen[0]);
+		assertEquals("1", u.get("<a>"));
+		assertEquals("2", u.get("<b>"));
+		assertNull(u.get("<c>"));
+	}
+
+	public void testReleasedOnException() {
+		final MatchContext first = context();
+		final long[] u = first.buffer(0, 1);
+		first.release();
+
+		try {
+			new Docopt("Usage:\n  prog <a>\n  prog <a> <b>\n")
+					.withStdOut(null).withStdErr(null).withExit(false)
+					.withMemoization(100).withStepLimit(1).parse("1", "2");
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED, e.getKind());
+		}
+
+		// The failed parse returned the storage of the thread.
+		final MatchContext next = context();
+
+		try {
+			assertSame(u, next.buffer(0, 1));
+		}
+		finally {
+			next.release();
+		}
+	}
+
+	public void testLargeBuffersAreDropped() {
+		final MatchContext first = context();
+		final long[] u = first.buffer(0, 100000);
+		first.release();
+
+		final MatchContext next = context();
+
+		try {
+			assertTrue(next.buffer(0, 1).length < u.length);
+		}
+		finally {
+			next.release();
+		}
+	}
+}
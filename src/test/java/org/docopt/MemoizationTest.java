@@ -0,0 +1,116 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link Docopt#withMemoization} reuses the outcomes of shared
+ * sub-patterns without changing the result.
+ */
+public final class MemoizationTest extends TestCase {
+
+	/**
+	 * Every line shares the same {@code [options]} and the same group, which
+	 * are matched again for each line without memoization. No line requires
+	 * anything the others do not, so none of them is skipped.
+	 */
+	private static final String SHARED = "Usage:\n"
+			+ "  prog [options] (<a> <b> | <c>) [x]\n"
+			+ "  prog [options] (<a> <b> | <c>) [y]\n"
+			+ "  prog [options] (<a> <b> | <c>) [z]\n\n"
+			+ "Options:\n"
+			+ "  -f <file>  File.\n"
+			+ "  -q         Quiet.\n";
+
+	/**
+	 * Leaves that count or collect values, which cannot be memoized, inside
+	 * sub-patterns that can.
+	 */
+	private static final String REPEATING = "Usage:\n"
+			+ "  prog [-v...] (add | rm) <x>...\n"
+			+ "  prog [-v...] (add | rm) --all\n\n"
+			+ "Options:\n"
+			+ "  -v     Verbose.\n"
+			+ "  --all  All.\n";
+
+	private static Docopt docopt(final String doc) {
+		return new Docopt(doc).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static Object parsed(final Docopt docopt, final String... argv) {
+		try {
+			return docopt.parse(argv);
+		}
+		catch (final DocoptExitException e) {
+			return e.getKind();
+		}
+	}
+
+	private static void assertSameResults(final String doc,
+			final int maxEntries, final List<String[]> argvs) {
+		final Docopt plain = docopt(doc);
+		final Docopt memoized = docopt(doc).withMemoization(maxEntries);
+
+		for (final String[] argv : argvs) {
+			assertEquals(Arrays.toString(argv), parsed(plain, argv), parsed(
+					memoized, argv));
+		}
+	}
+
+	public void testSharedSubPatterns() {
+		assertSameResults(SHARED, 1000, Arrays.asList(
+				new String[] { "1", "2", "x" }, new String[] { "-q", "3", "z" },
+				new String[] { "1", "-f", "a", "2", "y" },
+				new String[] { "1", "2", "3" }, new String[] { "x", "y" }));
+	}
+
+	public void testRepeatingLeaves() {
+		assertSameResults(REPEATING, 1000, Arrays.asList(
+				new String[] { "-vv", "add", "a", "b" },
+				new String[] { "rm", "-v", "a" },
+				new String[] { "add", "--all", "-v" },
+				new String[] { "add" }));
+	}
+
+	public void testFewEntries() {
+		// Outcomes that are not remembered are matched again.
+		assertSameResults(SHARED, 1, Arrays.asList(
+				new String[] { "1", "2", "z" }, new String[] { "-q", "3", "y" }));
+	}
+
+	/**
+	 * Returns the fewest steps in which {@code docopt} matches
+	 * {@code argv}.
+	 */
+	private static long steps(final Docopt docopt, final String... argv) {
+		for (long u = 1;; u++) {
+			try {
+				docopt.withStepLimit(u).parse(argv);
+				return u;
+			}
+			catch (final DocoptExitException e) {
+				assertEquals(DocoptOutcome.Kind.LIMIT_EXCEEDED, e.getKind());
+			}
+		}
+	}
+
+	public void testFewerSteps() {
+		final String[] argv = { "-q", "-f", "a", "1", "2", "z" };
+
+		assertTrue(steps(docopt(SHARED).withMemoization(1000), argv) < steps(
+				docopt(SHARED), argv));
+	}
+
+	public void testNegativeEntries() {
+		try {
+			docopt(SHARED).withMemoization(-1);
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+}
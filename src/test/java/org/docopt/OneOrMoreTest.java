@@ -0,0 +1,76 @@
+package org.docopt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the matching of a repeated positional argument, which consumes every
+ * positional argument that is left in one pass.
+ */
+public final class OneOrMoreTest extends TestCase {
+
+	private static Docopt docopt(final String doc) {
+		return new Docopt(doc).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	public void testConsumesArgumentsAroundOptions() {
+		final Map<String, Object> u = docopt(
+				"Usage: prog [-v] <file>...\n\nOptions: -v  Verbose.\n")
+				.parse("a", "-v", "b", "c");
+
+		assertEquals(Boolean.TRUE, u.get("-v"));
+		assertEquals(Arrays.asList("a", "b", "c"), u.get("<file>"));
+	}
+
+	public void testAppendsToCollectedArgument() {
+		final Map<String, Object> u = docopt("Usage: prog <a> <a>...\n")
+				.parse("x", "y", "z");
+
+		assertEquals(Arrays.asList("x", "y", "z"), u.get("<a>"));
+	}
+
+	public void testLeavesNothingForLaterArguments() {
+		// Matching is greedy, so <g> is never matched.
+		try {
+			docopt("Usage: prog <f>... <g>\n").parse("a", "b");
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.USAGE_ERROR, e.getKind());
+		}
+	}
+
+	public void testOptionalWithoutArguments() {
+		final Map<String, Object> u = docopt("Usage: prog [<f>...]\n")
+				.parse();
+
+		assertEquals(Arrays.asList(), u.get("<f>"));
+	}
+
+	public void testUncollectedArgumentIsConsumed() {
+		final Map<String, Object> u = docopt(
+				"Usage: prog [-v] <file>...\n\nOptions: -v  Verbose.\n")
+				.parse(Arrays.asList("a", "-v", "b"), "-v");
+
+		assertEquals(1, u.size());
+		assertEquals(Boolean.TRUE, u.get("-v"));
+	}
+
+	public void testManyArguments() {
+		final List<String> argv = new ArrayList<String>();
+
+		for (int i = 0; i < 100000; i++) {
+			argv.add(String.valueOf(i));
+		}
+
+		final Map<String, Object> u = docopt("Usage: prog <file>...\n")
+				.parse(argv);
+
+		assertEquals(argv, u.get("<file>"));
+	}
+}
@@ -0,0 +1,107 @@
+package org.docopt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the results of {@link Docopt#parse}, which share the defaults
+ * of the grammar, behave like independent maps.
+ */
+public final class OverlayResultTest extends TestCase {
+
+	private static final String DOC = "Usage: prog [-v...] [--tag=<t>]... "
+			+ "[<name>...]\n\n"
+			+ "Options:\n"
+			+ "  -v         Verbose.\n"
+			+ "  --tag=<t>  Tags [default: a b].\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static Map<String, Object> expected(final int v,
+			final List<String> tags, final List<String> names) {
+		final Map<String, Object> u = new HashMap<String, Object>();
+		u.put("-v", v);
+		u.put("--tag", tags);
+		u.put("<name>", names);
+		return u;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testModificationsDoNotLeak() {
+		final Docopt docopt = docopt();
+		final Map<String, Object> u = docopt.parse("-vv", "x");
+
+		assertEquals(expected(2, Arrays.asList("a", "b"), Arrays.asList("x")),
+				u);
+
+		// Both a collected list and a list default.
+		((List<Object>) u.get("<name>")).add("y");
+		((List<Object>) u.get("--tag")).add("c");
+		u.put("-v", 5);
+		u.put("<extra>", "z");
+
+		final Map<String, Object> next = docopt.parse("-vv", "x");
+		assertEquals(expected(2, Arrays.asList("a", "b"), Arrays.asList("x")),
+				next);
+
+		u.clear();
+		assertTrue(u.isEmpty());
+		assertEquals(3, docopt.parse().size());
+	}
+
+	public void testModifiedMapKeepsValues() {
+		final Map<String, Object> u = docopt().parse("--tag=c", "x");
+
+		u.remove("-v");
+		assertEquals(2, u.size());
+		assertEquals(Arrays.asList("c"), u.get("--tag"));
+		assertEquals(Arrays.asList("x"), u.get("<name>"));
+		assertFalse(u.containsKey("-v"));
+	}
+
+	public void testIteration() {
+		final Map<String, Object> u = docopt().parse("-v");
+
+		// In the order of the help message.
+		final Iterator<Map.Entry<String, Object>> i = u.entrySet().iterator();
+		assertEquals("-v", i.next().getKey());
+
+		final Map.Entry<String, Object> tag = i.next();
+		assertEquals("--tag", tag.getKey());
+		tag.setValue("t");
+		i.remove();
+
+		assertEquals("<name>", i.next().getKey());
+		assertFalse(i.hasNext());
+		assertFalse(u.containsKey("--tag"));
+		assertEquals(2, u.size());
+	}
+
+	public void testSerializable() throws IOException, ClassNotFoundException {
+		final Map<String, Object> u = docopt().parse("-v", "x");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+		out.writeObject(u);
+		out.close();
+
+		final Object copy = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+
+		assertEquals(HashMap.class, copy.getClass());
+		assertEquals(u, copy);
+	}
+}
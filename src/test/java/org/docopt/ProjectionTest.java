@@ -0,0 +1,97 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link Docopt#parse(List, String...)}, which returns only the values
+ * of the named elements.
+ */
+public final class ProjectionTest extends TestCase {
+
+	private static final String DOC = "Usage:\n"
+			+ "  prog ship new <name>...\n"
+			+ "  prog ship <name> move <x> <y> [--speed=<kn>] [-v...]\n"
+			+ "  prog mine [--tag=<t>]...\n\n"
+			+ "Options:\n"
+			+ "  -v            Verbose.\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n"
+			+ "  --tag=<t>     Tags [default: a b].\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static void assertProjection(final String... argv) {
+		final Docopt docopt = docopt();
+		final Map<String, Object> full = docopt.parse(argv);
+
+		// Each key alone, and all of them in reverse order.
+		for (final String key : full.keySet()) {
+			final Map<String, Object> u = docopt.parse(Arrays.asList(argv),
+					key);
+
+			assertEquals(key, 1, u.size());
+			assertEquals(key, full.get(key), u.get(key));
+		}
+
+		final List<String> keys = Arrays.asList(full.keySet().toArray(
+				new String[0]));
+		final String[] reversed = new String[keys.size()];
+
+		for (int i = 0; i < reversed.length; i++) {
+			reversed[i] = keys.get(keys.size() - 1 - i);
+		}
+
+		final Map<String, Object> u = docopt.parse(Arrays.asList(argv),
+				reversed);
+
+		assertEquals(Arrays.asList(reversed), Arrays.asList(u.keySet()
+				.toArray()));
+		assertEquals(full, u);
+	}
+
+	public void testAgreesWithParse() {
+		assertProjection("ship", "new", "a", "b");
+		assertProjection("ship", "a", "move", "1", "2", "-vv", "--speed=5");
+		assertProjection("mine", "--tag=c", "--tag=d");
+		assertProjection("mine");
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testListDefaultsAreCopied() {
+		final Docopt docopt = docopt();
+		final List<String> argv = Arrays.asList("mine");
+
+		((List<Object>) docopt.parse(argv, "--tag").get("--tag")).add("c");
+
+		assertEquals(Arrays.asList("a", "b"), docopt.parse(argv, "--tag").get(
+				"--tag"));
+		assertEquals(Arrays.asList("a", "b"), docopt.parse(argv).get("--tag"));
+	}
+
+	public void testUsageError() {
+		try {
+			// The other elements are still matched.
+			docopt().parse(Arrays.asList("ship", "a", "move", "1"), "<name>");
+			fail();
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.USAGE_ERROR, e.getKind());
+		}
+	}
+
+	public void testUnknownKey() {
+		try {
+			docopt().parse(Arrays.asList("mine"), "--tag", "<nope>");
+			fail();
+		}
+		catch (final IllegalArgumentException e) {
+			assertEquals("unknown key: <nope>", e.getMessage());
+		}
+	}
+}
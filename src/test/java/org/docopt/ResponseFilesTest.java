@@ -0,0 +1,230 @@
+package org.docopt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the expansion of {@code @file} arguments.
+ */
+public final class ResponseFilesTest extends TestCase {
+
+	private final List<File> files = new ArrayList<File>();
+
+	@Override
+	protected void tearDown() {
+		// Files before the directories that contain them.
+		for (int i = files.size() - 1; i >= 0; i--) {
+			files.get(i).delete();
+		}
+	}
+
+	/**
+	 * Creates a new empty directory in {@code parent}.
+	 */
+	private File directory(final File parent) throws IOException {
+		final File u = File.createTempFile("docopt", ".dir", parent);
+
+		if (!u.delete() || !u.mkdir()) {
+			throw new IOException("cannot create " + u);
+		}
+
+		files.add(u);
+		return u;
+	}
+
+	/**
+	 * Writes {@code s} to a new file and returns the argument naming it.
+	 */
+	private String file(final String s) throws IOException {
+		return file(null, s);
+	}
+
+	/**
+	 * Writes {@code s} to a new file in {@code directory} and returns the
+	 * argument naming it.
+	 */
+	private String file(final File directory, final String s)
+			throws IOException {
+		final File file = File.createTempFile("docopt", ".args", directory);
+		files.add(file);
+
+		final OutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(s.getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+
+		return "@" + file.getPath();
+	}
+
+	private static List<String> expand(final ResponseFiles responseFiles,
+			final String... argv) {
+		return responseFiles.expand(Arrays.asList(argv));
+	}
+
+	private static String failure(final ResponseFiles responseFiles,
+			final String... argv) {
+		try {
+			expand(responseFiles, argv);
+			fail();
+			return null;
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(1, e.getExitCode());
+			return e.getMessage();
+		}
+	}
+
+	private static String repeat(final char c, final int n) {
+		final char[] u = new char[n];
+		Arrays.fill(u, c);
+		return new String(u);
+	}
+
+	public void testExpands() throws IOException {
+		final String f = file("a 'b c'\n\"d\" \\e\n");
+
+		assertEquals(Arrays.asList("x", "a", "b c", "d", "e", "y"), expand(
+				new ResponseFiles(1, 100, null), "x", f, "y"));
+	}
+
+	public void testWithoutResponseFiles() {
+		final List<String> argv = Arrays.asList("a", "@", "b");
+
+		assertSame(argv, new ResponseFiles(1, 100, null).expand(argv));
+	}
+
+	public void testNestingLimit() throws IOException {
+		final String inner = file("z");
+		final String outer = file("y " + inner);
+
+		assertEquals(Arrays.asList("x", "y", "z"), expand(new ResponseFiles(
+				2, 100, null), "x", outer));
+
+		final String message = failure(new ResponseFiles(1, 100, null), "x",
+				outer);
+		assertTrue(message, message.startsWith(inner + " is nested more than 1"));
+	}
+
+	public void testByteLimit() throws IOException {
+		final String f = file("0123456789");
+
+		assertEquals(Arrays.asList("0123456789"), expand(new ResponseFiles(1,
+				10, null), f));
+
+		String message = failure(new ResponseFiles(1, 9, null), f);
+		assertTrue(message, message.contains("longer than 9 bytes"));
+
+		// The limit applies to all the files of a command line.
+		message = failure(new ResponseFiles(1, 15, null), f, f);
+		assertTrue(message, message.contains("longer than 15 bytes"));
+	}
+
+	public void testUnreadableFile() throws IOException {
+		final File missing = new File(System.getProperty("java.io.tmpdir"),
+				"docopt-missing.args");
+		missing.delete();
+
+		String message = failure(new ResponseFiles(1, 100, null), "@"
+				+ missing.getPath());
+		assertTrue(message, message.startsWith("cannot read response file "
+				+ missing.getPath()));
+
+		final String directory = System.getProperty("java.io.tmpdir");
+		message = failure(new ResponseFiles(1, 100, null), "@" + directory);
+		assertTrue(message, message.startsWith("cannot read response file "
+				+ directory));
+	}
+
+	public void testArgumentsAcrossBufferBoundary() throws IOException {
+		// The file is read 8 KiB at a time. The second argument spans the
+		// boundary, and the third has a character split by it.
+		final String a = repeat('a', 8000);
+		final String b = repeat('b', 189);
+		final String c = repeat('c', 1000) + "\u00e4";
+		final String d = "\u00e4" + repeat('d', 10000);
+
+		assertEquals(Arrays.asList(a, b, c, d), expand(new ResponseFiles(1,
+				100000, null), file(a + " " + b + "\n" + c + " " + d)));
+	}
+
+	public void testNoExpansionAfterDoubleDash() throws IOException {
+		final String e = file("b");
+		final String f = file("a -- " + e);
+		final String g = file("c");
+
+		final List<String> argv = Arrays.asList("x", "--", f);
+		assertSame(argv, new ResponseFiles(1, 100, null).expand(argv));
+
+		// A double dash in a file ends expansion too.
+		assertEquals(Arrays.asList("a", "--", e, g), expand(new ResponseFiles(
+				2, 100, null), f, g));
+	}
+
+	public void testBaseDirectory() throws IOException {
+		final File base = directory(null);
+		final File nested = directory(base);
+		final String inner = file(nested, "z");
+		final String outer = file(base, "y " + inner);
+		final ResponseFiles responseFiles = new ResponseFiles(2, 1000, base);
+
+		assertEquals(Arrays.asList("x", "y", "z"), expand(responseFiles, "x",
+				outer));
+
+		// A path that leaves and reenters the directory.
+		final File up = new File(nested, "..");
+		assertEquals(Arrays.asList("z"), expand(responseFiles, "@"
+				+ new File(new File(up, nested.getName()), new File(inner
+						.substring(1)).getName())));
+	}
+
+	public void testOutsideBaseDirectory() throws IOException {
+		final File base = directory(null);
+		final File nested = directory(base);
+		final String outside = file("z");
+		final ResponseFiles responseFiles = new ResponseFiles(2, 1000, nested);
+
+		String message = failure(responseFiles, "x", outside);
+		assertEquals("response file " + outside.substring(1) + " is outside "
+				+ nested, message);
+
+		// Also when named by a file inside the directory, or through "..".
+		message = failure(responseFiles, file(nested, "y " + outside));
+		assertTrue(message, message.endsWith(" is outside " + nested));
+
+		final String sibling = file(base, "z");
+		message = failure(responseFiles, "@"
+				+ new File(new File(nested, ".."), new File(sibling
+						.substring(1)).getName()));
+		assertTrue(message, message.endsWith(" is outside " + nested));
+
+		// A directory whose name starts with the name of the base.
+		final File prefixed = new File(nested.getPath() + "x");
+		assertTrue(prefixed.mkdir());
+		files.add(prefixed);
+		message = failure(responseFiles, file(prefixed, "z"));
+		assertTrue(message, message.endsWith(" is outside " + nested));
+	}
+
+	public void testParse() throws IOException {
+		final Docopt docopt = new Docopt("Usage: prog [-v] <name>...\n\n"
+				+ "Options: -v  Verbose.\n").withStdOut(null).withStdErr(null)
+				.withExit(false).withResponseFiles(1, 100);
+
+		final Map<String, Object> u = docopt.parse("a", file("-v 'b c'"));
+
+		assertEquals(Boolean.TRUE, u.get("-v"));
+		assertEquals(Arrays.asList("a", "b c"), u.get("<name>"));
+	}
+}
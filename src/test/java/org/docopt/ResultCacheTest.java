@@ -0,0 +1,122 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the cache of parse outcomes enabled by {@link Docopt#withCache}.
+ */
+public final class ResultCacheTest extends TestCase {
+
+	private static final String DOC = "Usage: prog [-v] <name>...\n\n"
+			+ "Options: -v  Verbose.\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	public void testHit() {
+		final Docopt docopt = docopt().withCache(10);
+		final Map<String, Object> u = docopt.parse("-v", "a");
+
+		assertSame(u, docopt.parse("-v", "a"));
+		assertEquals(Boolean.TRUE, u.get("-v"));
+
+		final DocoptCacheStats stats = docopt.getCacheStats();
+		assertEquals(1, stats.getHits());
+		assertEquals(1, stats.getMisses());
+		assertEquals(1, stats.getSize());
+		assertEquals(5, stats.getWeight());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testSharedResultIsUnmodifiable() {
+		final Map<String, Object> u = docopt().withCache(10).parse("a");
+
+		try {
+			u.put("-v", Boolean.TRUE);
+			fail();
+		}
+		catch (final UnsupportedOperationException e) {
+			// Expected.
+		}
+
+		try {
+			((List<Object>) u.get("<name>")).add("b");
+			fail();
+		}
+		catch (final UnsupportedOperationException e) {
+			// Expected.
+		}
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		final Docopt docopt = docopt().withCache(2);
+		final Map<String, Object> a = docopt.parse("a");
+		final Map<String, Object> b = docopt.parse("b");
+
+		// Using a makes b the least recently used.
+		assertSame(a, docopt.parse("a"));
+		docopt.parse("c");
+
+		assertEquals(1, docopt.getCacheStats().getEvictions());
+		assertSame(a, docopt.parse("a"));
+		assertNotSame(b, docopt.parse("b"));
+		assertEquals(2, docopt.getCacheStats().getSize());
+	}
+
+	public void testEvictsByWeight() {
+		// The weight of an entry is its characters plus one per argument.
+		final Docopt docopt = docopt().withCache(10, 6);
+
+		docopt.parse("abc");
+		docopt.parse("de");
+
+		DocoptCacheStats stats = docopt.getCacheStats();
+		assertEquals(1, stats.getSize());
+		assertEquals(3, stats.getWeight());
+		assertEquals(1, stats.getEvictions());
+
+		// An entry heavier than the cache is not cached.
+		docopt.parse("abcdefg");
+		stats = docopt.getCacheStats();
+		assertEquals(1, stats.getSize());
+		assertEquals(1, stats.getEvictions());
+	}
+
+	public void testCachesExit() {
+		final Docopt docopt = docopt().withCache(10);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				docopt.parse("-x");
+				fail();
+			}
+			catch (final DocoptExitException e) {
+				assertEquals(DocoptOutcome.Kind.USAGE_ERROR, e.getKind());
+				assertEquals(1, e.getExitCode());
+			}
+		}
+
+		assertEquals(1, docopt.getCacheStats().getHits());
+	}
+
+	public void testClearedByReconfiguration() {
+		final Docopt docopt = docopt().withCache(10);
+		final Map<String, Object> u = docopt.parse(Arrays.asList("a"));
+
+		docopt.withOptionsFirst(true);
+		assertEquals(0, docopt.getCacheStats().getSize());
+		assertNotSame(u, docopt.parse(Arrays.asList("a")));
+	}
+
+	public void testDisabled() {
+		assertNull(docopt().getCacheStats());
+		assertNull(docopt().withCache(10).withCache(0).getCacheStats());
+		assertNull(docopt().withCache(10, 0).getCacheStats());
+	}
+}
@@ -0,0 +1,90 @@
+package org.docopt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the "did you mean" suggestions of a usage error.
+ */
+public final class SuggestionsTest extends TestCase {
+
+	private static final String DOC = "Naval Fate.\n\n"
+			+ "Usage:\n"
+			+ "  naval_fate ship new <name>...\n"
+			+ "  naval_fate ship <name> move <x> <y> [--speed=<kn>]\n"
+			+ "  naval_fate mine (set|remove) <x> <y> [--moored|--drifting]\n"
+			+ "  naval_fate get <x>\n\n"
+			+ "Options:\n"
+			+ "  --speed=<kn>  Speed in knots [default: 10].\n"
+			+ "  --moored      Moored (anchored) mine.\n"
+			+ "  --drifting    Drifting mine.\n";
+
+	private static Docopt docopt() {
+		return new Docopt(DOC).withStdOut(null).withStdErr(null)
+				.withExit(false);
+	}
+
+	private static Map<String, List<String>> suggestions(final Docopt docopt,
+			final String... argv) {
+		try {
+			docopt.parse(argv);
+			fail();
+			return null;
+		}
+		catch (final DocoptExitException e) {
+			assertEquals(DocoptOutcome.Kind.USAGE_ERROR, e.getKind());
+			return e.getSuggestions();
+		}
+	}
+
+	private static Map<String, List<String>> suggestions(final String... argv) {
+		return suggestions(docopt(), argv);
+	}
+
+	public void testLongOption() {
+		assertEquals(Collections.singletonMap("--speeed",
+				Arrays.asList("--speed")), suggestions("ship", "Guardian",
+				"move", "1", "2", "--speeed=20"));
+	}
+
+	public void testCommand() {
+		assertEquals(Collections.singletonMap("shp", Arrays.asList("ship")),
+				suggestions("shp", "new", "Guardian"));
+	}
+
+	public void testTies() {
+		// Both are one edit away, and are suggested in alphabetical order.
+		assertEquals(Collections.singletonMap("met",
+				Arrays.asList("get", "set")), suggestions("mine", "met", "1",
+				"2"));
+	}
+
+	public void testEditLimit() {
+		// Up to four letters, only one edit is allowed.
+		assertEquals(Collections.emptyMap(), suggestions("mine", "stx", "1",
+				"2", "--spxd"));
+
+		// Longer words allow two.
+		assertEquals(Collections.singletonMap("--moorde",
+				Arrays.asList("--moored")), suggestions("mine", "set", "1",
+				"2", "--moorde"));
+	}
+
+	public void testKnownWordsAreLeftOut() {
+		// Every word is known, but the line is incomplete.
+		assertEquals(Collections.emptyMap(), suggestions("ship", "move"));
+	}
+
+	public void testCachedOutcome() {
+		final Docopt docopt = docopt().withCache(10);
+		final Map<String, List<String>> u = suggestions(docopt, "shp", "new",
+				"Guardian");
+
+		assertEquals(u, suggestions(docopt, "shp", "new", "Guardian"));
+		assertEquals(1, docopt.getCacheStats().getHits());
+	}
+}